@@ -0,0 +1,95 @@
+package com.touchkiss.mindme.vector;
+
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository;
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository.Quantization;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory saved against recall lost for the pgvector quantization modes. Setup builds the
+ * mode's HNSW index and prints its size and recall@10 (after exact rerank) next to the
+ * full-precision baseline; JMH reports the query latency of the rerank path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class QuantizationBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Param({ "100000" })
+    public int segments;
+
+    @Param({ "1024" })
+    public int dimension;
+
+    @Param({ "none", "halfvec", "binary" })
+    public String quantization;
+
+    @Param({ "4" })
+    public int rerankFactor;
+
+    private float[][] queries;
+    private PgVectorSegmentRepository repository;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(segments, dimension);
+        queries = corpus.queries(QUERIES);
+
+        DriverManagerDataSource dataSource = SyntheticCorpus.pgDataSource();
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        String table = corpus.populatePgvector(jdbc);
+        long indexBytes = corpus.ensurePgIndex(jdbc, table, Quantization.parse(quantization));
+        Long tableBytes = jdbc.queryForObject("SELECT pg_table_size(?::regclass)", Long.class, table);
+        repository = new PgVectorSegmentRepository(jdbc,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), table, dimension,
+                quantization, rerankFactor);
+
+        List<Set<String>> found = new ArrayList<>();
+        for (float[] query : queries) {
+            found.add(searchTexts(query));
+        }
+        double recall = SyntheticCorpus.recall(corpus.exactTopK(queries, K), found);
+        System.out.printf("%n[%s, %d segments, rerank x%d] index = %.1f MB, table = %.1f MB, recall@%d = %.4f%n",
+                quantization, segments, rerankFactor, indexBytes / 1048576.0,
+                (tableBytes != null ? tableBytes : 0) / 1048576.0, K, recall);
+    }
+
+    @Benchmark
+    public Object search() {
+        return searchTexts(queries[next++ % QUERIES]);
+    }
+
+    private Set<String> searchTexts(float[] query) {
+        Set<String> texts = new HashSet<>();
+        repository.search(new PgVectorSegmentRepository.SegmentQuery(query, K, 0, null, null, null, null, null))
+                .forEach(row -> texts.add(row.text()));
+        return texts;
+    }
+}
@@ -0,0 +1,206 @@
+package com.touchkiss.mindme.vector;
+
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository.Quantization;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Deterministic clustered-gaussian corpus shared by the vector benchmarks. Vectors are
+ * re-derived from their index instead of being held on heap, and segment {@code i} is
+ * stored with the text {@code segment-i} so results can be matched to exact neighbours.
+ */
+final class SyntheticCorpus {
+
+    private static final int CLUSTERS = 1000;
+
+    final int size;
+    final int dimension;
+    private final float[][] centroids;
+
+    SyntheticCorpus(int size, int dimension) {
+        this.size = size;
+        this.dimension = dimension;
+        SplittableRandom random = new SplittableRandom(2024);
+        centroids = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centroids[c] = gaussian(random, 1.0f);
+        }
+    }
+
+    float[] vector(int index) {
+        SplittableRandom random = new SplittableRandom(index * 0x9E3779B97F4A7C15L);
+        float[] centroid = centroids[random.nextInt(CLUSTERS)];
+        float[] noise = gaussian(random, 0.35f);
+        for (int d = 0; d < dimension; d++) {
+            noise[d] += centroid[d];
+        }
+        return noise;
+    }
+
+    /** Query vectors drawn from the same distribution but outside the corpus. */
+    float[][] queries(int count) {
+        float[][] queries = new float[count][];
+        for (int q = 0; q < count; q++) {
+            queries[q] = vector(size + q);
+        }
+        return queries;
+    }
+
+    /**
+     * Exact top-K texts per query by a single streaming pass over the corpus.
+     */
+    List<Set<String>> exactTopK(float[][] queries, int k) {
+        float[][] normalized = new float[queries.length][];
+        List<PriorityQueue<double[]>> top = new ArrayList<>();
+        for (int q = 0; q < queries.length; q++) {
+            normalized[q] = normalize(queries[q]);
+            top.add(new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0])));
+        }
+        for (int i = 0; i < size; i++) {
+            float[] v = normalize(vector(i));
+            for (int q = 0; q < queries.length; q++) {
+                double sim = dot(v, normalized[q]);
+                PriorityQueue<double[]> heap = top.get(q);
+                if (heap.size() < k) {
+                    heap.add(new double[] { sim, i });
+                } else if (sim > heap.peek()[0]) {
+                    heap.poll();
+                    heap.add(new double[] { sim, i });
+                }
+            }
+        }
+        List<Set<String>> exact = new ArrayList<>(queries.length);
+        for (PriorityQueue<double[]> heap : top) {
+            Set<String> texts = new HashSet<>();
+            heap.forEach(entry -> texts.add("segment-" + (int) entry[1]));
+            exact.add(texts);
+        }
+        return exact;
+    }
+
+    static double recall(List<Set<String>> exact, List<Set<String>> found) {
+        long hits = 0;
+        long total = 0;
+        for (int q = 0; q < exact.size(); q++) {
+            for (String text : exact.get(q)) {
+                if (found.get(q).contains(text)) {
+                    hits++;
+                }
+            }
+            total += exact.get(q).size();
+        }
+        return hits / (double) total;
+    }
+
+    static DriverManagerDataSource pgDataSource() {
+        return new DriverManagerDataSource(
+                env("BENCH_JDBC_URL", "jdbc:postgresql://localhost:5432/mindme"),
+                env("BENCH_DB_USER", "postgres"),
+                env("BENCH_DB_PASSWORD", "postgres"));
+    }
+
+    /**
+     * Create and fill {@code bench_vectors_<size>_<dimension>} unless it already holds the corpus.
+     *
+     * @return the table name
+     */
+    String populatePgvector(JdbcTemplate jdbc) {
+        String table = "bench_vectors_" + size + "_" + dimension;
+        jdbc.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + table + " (embedding_id UUID PRIMARY KEY, embedding vector("
+                + dimension + "), text TEXT NULL, metadata JSON NULL)");
+        Long count = jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        if (count != null && count == size) {
+            return table;
+        }
+        jdbc.execute("TRUNCATE " + table);
+        for (int from = 0; from < size; from += 1000) {
+            int to = Math.min(from + 1000, size);
+            List<Object[]> rows = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                rows.add(new Object[] { UUID.randomUUID(), toLiteral(normalize(vector(i))), "segment-" + i });
+            }
+            jdbc.batchUpdate("INSERT INTO " + table
+                    + " (embedding_id, embedding, text, metadata) VALUES (?, CAST(? AS vector), ?, '{}')", rows);
+        }
+        jdbc.execute("ANALYZE " + table);
+        return table;
+    }
+
+    /**
+     * Build the HNSW index the application would use for {@code mode} (same expressions
+     * and build parameters as the in-process graph), dropping the other modes' indexes.
+     *
+     * @return index size in bytes
+     */
+    long ensurePgIndex(JdbcTemplate jdbc, String table, Quantization mode) {
+        for (Quantization other : Quantization.values()) {
+            if (other != mode) {
+                jdbc.execute("DROP INDEX IF EXISTS " + indexName(table, other));
+            }
+        }
+        String expression = switch (mode) {
+            case NONE -> "embedding vector_cosine_ops";
+            case HALFVEC -> "(embedding::halfvec(" + dimension + ")) halfvec_cosine_ops";
+            case BINARY -> "(binary_quantize(embedding)::bit(" + dimension + ")) bit_hamming_ops";
+        };
+        String index = indexName(table, mode);
+        jdbc.execute("CREATE INDEX IF NOT EXISTS " + index + " ON " + table + " USING hnsw (" + expression
+                + ") WITH (m = 16, ef_construction = 200)");
+        Long bytes = jdbc.queryForObject("SELECT pg_relation_size(?::regclass)", Long.class, index);
+        return bytes != null ? bytes : 0;
+    }
+
+    private static String indexName(String table, Quantization mode) {
+        return table + "_hnsw_" + mode.name().toLowerCase();
+    }
+
+    private float[] gaussian(SplittableRandom random, float scale) {
+        float[] v = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            // Box-Muller; SplittableRandom has no nextGaussian on Java 17
+            double u1 = 1 - random.nextDouble();
+            double u2 = random.nextDouble();
+            v[d] = (float) (Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2)) * scale;
+        }
+        return v;
+    }
+
+    static float[] normalize(float[] v) {
+        double norm = Math.sqrt(dot(v, v));
+        float[] out = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (float) (v[i] / norm);
+        }
+        return out;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static String toLiteral(float[] v) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < v.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(v[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String env(String name, String fallback) {
+        String value = System.getenv(name);
+        return value != null ? value : fallback;
+    }
+}
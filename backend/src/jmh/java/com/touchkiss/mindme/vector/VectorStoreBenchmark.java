@@ -0,0 +1,140 @@
+package com.touchkiss.mindme.vector;
+
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-10 query latency of the in-process HNSW store against pgvector's HNSW index on the
+ * same synthetic corpus. Run with {@code mode=sample} to get p99 in the JMH report;
+ * recall@10 against exact search is printed during setup.
+ * <p>
+ * The HNSW directory ({@code target/bench-hnsw-*}) and the pgvector table
+ * ({@code bench_vectors_*}) are reused across runs once populated; building the
+ * 1M-segment corpus takes a while. The pgvector store is reached through
+ * {@code BENCH_JDBC_URL}, {@code BENCH_DB_USER} and {@code BENCH_DB_PASSWORD}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class VectorStoreBenchmark {
+
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Param({ "100000", "1000000" })
+    public int segments;
+
+    @Param({ "hnsw", "pgvector" })
+    public String store;
+
+    @Param({ "1024" })
+    public int dimension;
+
+    @Param({ "64" })
+    public int efSearch;
+
+    private float[][] queries;
+    private HnswEmbeddingStore hnsw;
+    private PgVectorSegmentRepository pgvector;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(segments, dimension);
+        queries = corpus.queries(QUERIES);
+
+        if (store.equals("hnsw")) {
+            hnsw = new HnswEmbeddingStore(Path.of("target", "bench-hnsw-" + segments + "-" + dimension), dimension,
+                    16, 200, efSearch, 0);
+            if (hnsw.stats().liveSegments() != segments) {
+                hnsw.removeAll();
+                hnsw.compact();
+                populateHnsw(corpus);
+                hnsw.snapshot();
+            }
+        } else {
+            DriverManagerDataSource dataSource = SyntheticCorpus.pgDataSource();
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+            String table = corpus.populatePgvector(jdbc);
+            corpus.ensurePgIndex(jdbc, table, PgVectorSegmentRepository.Quantization.NONE);
+            pgvector = new PgVectorSegmentRepository(jdbc,
+                    new TransactionTemplate(new DataSourceTransactionManager(dataSource)), table, dimension, "none", 1);
+        }
+
+        List<Set<String>> found = new ArrayList<>();
+        for (float[] query : queries) {
+            found.add(searchTexts(query));
+        }
+        double recall = SyntheticCorpus.recall(corpus.exactTopK(queries, K), found);
+        System.out.printf("%n[%s, %d segments, ef_search=%d] recall@%d = %.4f%n", store, segments, efSearch, K,
+                recall);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (hnsw != null) {
+            hnsw.close();
+        }
+    }
+
+    @Benchmark
+    public Object search() {
+        return searchTexts(queries[next++ % QUERIES]);
+    }
+
+    private Set<String> searchTexts(float[] query) {
+        Set<String> texts = new HashSet<>();
+        if (hnsw != null) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(query)).maxResults(K).build();
+            hnsw.search(request, efSearch).matches().forEach(m -> texts.add(m.embedded().text()));
+        } else {
+            pgvector.search(new PgVectorSegmentRepository.SegmentQuery(query, K, 0, efSearch, null, null, null, null))
+                    .forEach(row -> texts.add(row.text()));
+        }
+        return texts;
+    }
+
+    private void populateHnsw(SyntheticCorpus corpus) {
+        for (int from = 0; from < segments; from += 1000) {
+            int to = Math.min(from + 1000, segments);
+            List<Embedding> embeddings = new ArrayList<>(to - from);
+            List<TextSegment> texts = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                embeddings.add(Embedding.from(corpus.vector(i)));
+                texts.add(TextSegment.from("segment-" + i, new Metadata()));
+            }
+            hnsw.addAll(embeddings, texts);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.touchkiss.mindme.config;
+
+import com.touchkiss.mindme.vector.HnswEmbeddingStore;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+@Configuration
+public class VectorStoreConfig {
+
+    /**
+     * pgvector-backed store sharing the application's connection pool. The table and its
+     * HNSW index are managed by Flyway, so the store never builds its own IVFFlat index.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "mindme.vector.store", havingValue = "pgvector", matchIfMissing = true)
+    public EmbeddingStore<TextSegment> embeddingStore(
+            DataSource dataSource,
+            @Value("${langchain4j.pgvector.table:vector_store}") String table,
+            @Value("${langchain4j.pgvector.dimension:1024}") int dimension,
+            @Value("${langchain4j.pgvector.create-table-if-not-exists:true}") boolean createTable,
+            @Value("${langchain4j.pgvector.drop-table-first:false}") boolean dropTableFirst) {
+        return PgVectorEmbeddingStore.datasourceBuilder()
+                .datasource(dataSource)
+                .table(table)
+                .dimension(dimension)
+                .createTable(createTable)
+                .dropTableFirst(dropTableFirst)
+                .useIndex(false)
+                .build();
+    }
+
+    /**
+     * In-process HNSW index for single-node deployments; vectors are memory-mapped from
+     * {@code mindme.vector.hnsw.directory} and the graph is restored from its snapshot on start.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "mindme.vector.store", havingValue = "hnsw")
+    public HnswEmbeddingStore hnswEmbeddingStore(
+            @Value("${mindme.vector.hnsw.directory:${user.home}/.mindme/hnsw}") String directory,
+            @Value("${langchain4j.pgvector.dimension:1024}") int dimension,
+            @Value("${mindme.vector.hnsw.m:16}") int m,
+            @Value("${mindme.vector.hnsw.ef-construction:200}") int efConstruction,
+            @Value("${mindme.vector.hnsw.ef-search:64}") int efSearch,
+            @Value("${mindme.vector.hnsw.snapshot-every:10000}") int snapshotEvery) {
+        return new HnswEmbeddingStore(Path.of(directory), dimension, m, efConstruction, efSearch, snapshotEvery);
+    }
+}
@@ -2,6 +2,10 @@ package com.touchkiss.mindme.controller;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
 import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository;
+import com.touchkiss.mindme.service.KnowledgeService;
+import com.touchkiss.mindme.service.VectorSearchService;
+import com.touchkiss.mindme.service.VectorStoreMaintenanceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -20,6 +24,10 @@ import java.util.UUID;
 public class ActivityController {
 
     private final ActivityRecordRepository repository;
+    private final AnalysisQueueRepository analysisQueue;
+    private final KnowledgeService knowledgeService;
+    private final VectorSearchService vectorSearchService;
+    private final VectorStoreMaintenanceService maintenanceService;
 
     @GetMapping
     public Page<ActivityRecord> list(
@@ -51,24 +59,33 @@ public class ActivityController {
         if (!repository.existsById(id)) {
             return ResponseEntity.notFound().build();
         }
-        repository.deleteById(id);
+        knowledgeService.deleteActivities(java.util.List.of(id));
+        removeVectors(java.util.List.of(id));
         log.info("Deleted activity record: {}", id);
         return ResponseEntity.noContent().build();
     }
 
     @PostMapping("/batch/delete")
     public ResponseEntity<Void> batchDelete(@RequestBody java.util.List<UUID> ids) {
-        repository.deleteAllById(ids);
+        knowledgeService.deleteActivities(ids);
+        removeVectors(ids);
         log.info("Batch deleted {} activities", ids.size());
         return ResponseEntity.noContent().build();
     }
 
+    private void removeVectors(java.util.List<UUID> ids) {
+        try {
+            vectorSearchService.removeRecords(ids);
+        } catch (Exception e) {
+            // Leftover segments are reclaimed by the vector store GC job
+            log.warn("Failed to remove vectors for {} deleted activities: {}", ids.size(), e.getMessage());
+        }
+    }
+
     @PostMapping("/batch/analyze")
     public ResponseEntity<Void> batchAnalyze(@RequestBody java.util.List<UUID> ids) {
-        java.util.List<ActivityRecord> records = repository.findAllById(ids);
-        records.forEach(r -> r.setAnalyzed(false)); // Reset to allow re-analysis
-        repository.saveAll(records);
-        log.info("Marked {} activities for re-analysis", records.size());
+        int requeued = analysisQueue.requeue(ids); // Reset to allow re-analysis
+        log.info("Marked {} activities for re-analysis", requeued);
         return ResponseEntity.ok().build();
     }
 
@@ -83,6 +100,30 @@ public class ActivityController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/vectors/gc")
+    public ResponseEntity<VectorStoreMaintenanceService.GcResult> collectVectorGarbage() {
+        return ResponseEntity.ok(maintenanceService.collectGarbage());
+    }
+
+    @GetMapping("/vectors/gc")
+    public ResponseEntity<VectorStoreMaintenanceService.GcResult> lastVectorGc() {
+        VectorStoreMaintenanceService.GcResult result = maintenanceService.getLastResult();
+        return result != null ? ResponseEntity.ok(result) : ResponseEntity.noContent().build();
+    }
+
+    /**
+     * ANN index sizes per quantization mode, next to the vector table size.
+     */
+    @GetMapping("/vectors/index")
+    public ResponseEntity<VectorStoreMaintenanceService.AnnIndexStatus> vectorIndex() {
+        return ResponseEntity.ok(maintenanceService.indexStatus());
+    }
+
+    @PostMapping("/vectors/index")
+    public ResponseEntity<VectorStoreMaintenanceService.AnnIndexStatus> rebuildVectorIndex() {
+        return ResponseEntity.ok(maintenanceService.ensureAnnIndex());
+    }
+
     @GetMapping("/stats")
     public ActivityStats stats() {
         long total = repository.count();
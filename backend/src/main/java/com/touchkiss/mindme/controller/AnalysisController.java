@@ -1,14 +1,20 @@
 package com.touchkiss.mindme.controller;
 
-import com.touchkiss.mindme.service.AiAnalysisService;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository;
+import com.touchkiss.mindme.service.LlmResponseCache;
+import com.touchkiss.mindme.service.PromptPacker;
+import com.touchkiss.mindme.service.ReportService;
 import com.touchkiss.mindme.service.ScheduledAnalysisService;
+import com.touchkiss.mindme.service.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 @RestController
@@ -18,7 +24,11 @@ import java.util.Map;
 public class AnalysisController {
 
     private final ScheduledAnalysisService scheduledAnalysisService;
-    private final AiAnalysisService aiAnalysisService;
+    private final ReportService reportService;
+    private final LlmResponseCache responseCache;
+    private final PromptPacker promptPacker;
+    private final SingleFlight singleFlight;
+    private final AnalysisQueueRepository analysisQueue;
 
     @PostMapping("/trigger")
     public ResponseEntity<Map<String, Object>> triggerAnalysis() {
@@ -30,6 +40,44 @@ public class AnalysisController {
                 "message", "Analyzed " + processed + " records"));
     }
 
+    @GetMapping("/stats")
+    public ResponseEntity<ScheduledAnalysisService.AnalysisStats> stats() {
+        return ResponseEntity.ok(scheduledAnalysisService.stats());
+    }
+
+    @GetMapping("/dead")
+    public ResponseEntity<List<AnalysisQueueRepository.DeadRecord>> deadLetters(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        int limit = Math.max(1, Math.min(size, 500));
+        return ResponseEntity.ok(analysisQueue.findDead(limit, Math.max(0, page) * limit));
+    }
+
+    /**
+     * Requeue dead-lettered records with a fresh attempt budget; without a body, all of them.
+     */
+    @PostMapping("/dead/requeue")
+    public ResponseEntity<Map<String, Object>> requeueDeadLetters(@RequestBody(required = false) List<UUID> ids) {
+        int requeued = analysisQueue.requeueDead(ids);
+        log.info("Requeued {} dead-lettered records for analysis", requeued);
+        return ResponseEntity.ok(Map.of("requeued", requeued));
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<LlmResponseCache.CacheStats> cacheStats() {
+        return ResponseEntity.ok(responseCache.stats());
+    }
+
+    @GetMapping("/prompt/stats")
+    public ResponseEntity<PromptPacker.PromptStats> promptStats() {
+        return ResponseEntity.ok(promptPacker.stats());
+    }
+
+    @GetMapping("/single-flight/stats")
+    public ResponseEntity<SingleFlight.SingleFlightStats> singleFlightStats() {
+        return ResponseEntity.ok(singleFlight.stats());
+    }
+
     @GetMapping("/report")
     public ResponseEntity<Map<String, String>> generateReport(
             @RequestParam(required = false) LocalDate date) {
@@ -37,7 +85,7 @@ public class AnalysisController {
         log.info("Generating report for: {}", reportDate);
 
         try {
-            String report = aiAnalysisService.generateDailyReport(reportDate);
+            String report = reportService.generateDailyReport(reportDate);
             return ResponseEntity.ok(Map.of(
                     "date", reportDate.toString(),
                     "report", report));
@@ -2,7 +2,9 @@ package com.touchkiss.mindme.controller;
 
 import com.touchkiss.mindme.service.AiAnalysisService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
@@ -12,6 +14,7 @@ import java.util.Map;
 public class ChatController {
 
     private final AiAnalysisService aiService;
+    private final SseStreamer sseStreamer;
 
     @PostMapping
     public Map<String, String> chat(@RequestBody Map<String, String> request) {
@@ -22,4 +25,15 @@ public class ChatController {
         String answer = aiService.askQuestion(question);
         return Map.of("answer", answer);
     }
+
+    /**
+     * Streamed answer as server-sent events; see {@link SseStreamer} for the event format.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestParam String question) {
+        if (question.isBlank()) {
+            throw new IllegalArgumentException("Question cannot be empty");
+        }
+        return sseStreamer.stream("answer", onToken -> aiService.streamQuestion(question, onToken));
+    }
 }
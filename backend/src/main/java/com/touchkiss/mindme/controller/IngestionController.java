@@ -1,13 +1,25 @@
 package com.touchkiss.mindme.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.domain.ImportCheckpoint;
 import com.touchkiss.mindme.domain.WatchedPage;
+import com.touchkiss.mindme.service.BulkImportService;
+import com.touchkiss.mindme.service.EmbeddingCache;
+import com.touchkiss.mindme.service.IndexingPipelineService;
+import com.touchkiss.mindme.service.IngestBufferService;
 import com.touchkiss.mindme.service.PageWatchService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -20,12 +32,82 @@ public class IngestionController {
 
     private final com.touchkiss.mindme.service.KnowledgeService knowledgeService;
     private final PageWatchService pageWatchService;
+    private final IngestBufferService ingestBufferService;
+    private final BulkImportService bulkImportService;
+    private final IndexingPipelineService indexingPipelineService;
+    private final EmbeddingCache embeddingCache;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/activity")
-    public ResponseEntity<Void> ingestActivity(@RequestBody List<ActivityRecord> records) {
+    public ResponseEntity<Map<String, Object>> ingestActivity(@RequestBody List<ActivityRecord> records) {
         log.info("Received {} activity records", records.size());
-        knowledgeService.saveActivities(records);
-        return ResponseEntity.ok().build();
+        if (ingestBufferService.isEnabled()) {
+            if (!ingestBufferService.offer(records)) {
+                long retryAfter = ingestBufferService.retryAfterSeconds();
+                log.warn("Ingest buffer full, rejecting {} records (retry after {}s)", records.size(), retryAfter);
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                        .body(Map.of("success", false, "error", "Ingest buffer is full"));
+            }
+            return ResponseEntity.accepted().body(Map.of(
+                    "success", true,
+                    "queued", records.size(),
+                    "queueDepth", ingestBufferService.stats().depth()));
+        }
+        var result = knowledgeService.saveActivities(records);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "inserted", result.inserted(),
+                "updated", result.updated()));
+    }
+
+    /**
+     * Streaming NDJSON backfill. Progress is written back as one JSON line per committed
+     * chunk; re-posting the same file with the same importId resumes after the last chunk.
+     */
+    @PostMapping("/import")
+    public void importActivities(
+            @RequestParam String importId,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        boolean compressed = gzip || "gzip".equalsIgnoreCase(contentEncoding);
+        log.info("Starting NDJSON import {} (gzip: {})", importId, compressed);
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter writer = response.getWriter();
+        bulkImportService.importNdjson(importId, request.getInputStream(), compressed, progress -> {
+            try {
+                writer.println(objectMapper.writeValueAsString(progress));
+                writer.flush();
+            } catch (IOException e) {
+                log.warn("Failed to write import progress for {}: {}", importId, e.getMessage());
+            }
+        });
+    }
+
+    @GetMapping("/import/{importId}")
+    public ResponseEntity<ImportCheckpoint> getImportStatus(@PathVariable String importId) {
+        return bulkImportService.getCheckpoint(importId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/buffer/stats")
+    public ResponseEntity<IngestBufferService.BufferStats> getBufferStats() {
+        return ResponseEntity.ok(ingestBufferService.stats());
+    }
+
+    @GetMapping("/index/stats")
+    public ResponseEntity<IndexingPipelineService.PipelineStats> getIndexingStats() {
+        return ResponseEntity.ok(indexingPipelineService.stats());
+    }
+
+    @GetMapping("/index/cache/stats")
+    public ResponseEntity<EmbeddingCache.CacheStats> getEmbeddingCacheStats() {
+        return ResponseEntity.ok(embeddingCache.stats());
     }
 
     // ============== Browser Agent Endpoints ==============
@@ -1,16 +1,28 @@
 package com.touchkiss.mindme.controller;
 
-import com.touchkiss.mindme.service.AiAnalysisService;
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import com.touchkiss.mindme.repository.ReportJobRepository.ReportJob;
+import com.touchkiss.mindme.repository.ReportJobRepository.Submission;
+import com.touchkiss.mindme.service.ReportJobService;
+import com.touchkiss.mindme.service.ReportService;
+import com.touchkiss.mindme.service.ReportService.Period;
+import com.touchkiss.mindme.service.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
@@ -19,7 +31,13 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class ReportController {
 
-    private final AiAnalysisService aiAnalysisService;
+    private static final List<ReportType> REPORT_TYPES =
+            List.of(ReportType.DAILY, ReportType.WEEKLY, ReportType.MONTHLY);
+
+    private final ReportService reportService;
+    private final ReportJobService reportJobService;
+    private final SseStreamer sseStreamer;
+    private final SingleFlight singleFlight;
 
     @GetMapping("/daily")
     public ResponseEntity<Map<String, String>> getDailyReport(
@@ -27,7 +45,8 @@ public class ReportController {
         if (date == null) {
             date = LocalDate.now();
         }
-        String report = aiAnalysisService.generateDailyReport(date);
+        Period period = Period.of(ReportType.DAILY, date);
+        String report = coalesced(period, () -> reportService.generateDailyReport(period.start()));
         return ResponseEntity.ok(Map.of("report", report, "period", date.toString()));
     }
 
@@ -37,12 +56,11 @@ public class ReportController {
         if (date == null) {
             date = LocalDate.now();
         }
-        // Calculate start (Monday) and end (Sunday) of the week
-        LocalDate start = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
-        LocalDate end = date.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY));
+        Period period = Period.of(ReportType.WEEKLY, date);
 
-        String report = aiAnalysisService.generatePeriodReport(start, end, "Weekly");
-        return ResponseEntity.ok(Map.of("report", report, "period", start + " to " + end));
+        String report = coalesced(period,
+                () -> reportService.generatePeriodReport(period.start(), period.end(), "Weekly"));
+        return ResponseEntity.ok(Map.of("report", report, "period", period.start() + " to " + period.end()));
     }
 
     @GetMapping("/monthly")
@@ -51,11 +69,94 @@ public class ReportController {
         if (date == null) {
             date = LocalDate.now();
         }
-        // Calculate start and end of the month
-        LocalDate start = date.with(TemporalAdjusters.firstDayOfMonth());
-        LocalDate end = date.with(TemporalAdjusters.lastDayOfMonth());
+        Period period = Period.of(ReportType.MONTHLY, date);
+
+        String report = coalesced(period,
+                () -> reportService.generatePeriodReport(period.start(), period.end(), "Monthly"));
+        return ResponseEntity.ok(Map.of("report", report, "period", period.start() + " to " + period.end()));
+    }
+
+    /**
+     * Streamed variants of the reports above as server-sent events; see {@link SseStreamer}
+     * for the event format.
+     */
+    @GetMapping(value = "/daily/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDailyReport(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        LocalDate day = date != null ? date : LocalDate.now();
+        return sseStreamer.stream("daily " + day, onToken -> reportService.streamDailyReport(day, onToken));
+    }
+
+    @GetMapping(value = "/weekly/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamWeeklyReport(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        Period period = Period.of(ReportType.WEEKLY, date != null ? date : LocalDate.now());
+        return sseStreamer.stream("weekly " + period.start(),
+                onToken -> reportService.streamPeriodReport(period.start(), period.end(), "Weekly", onToken));
+    }
+
+    @GetMapping(value = "/monthly/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMonthlyReport(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        Period period = Period.of(ReportType.MONTHLY, date != null ? date : LocalDate.now());
+        return sseStreamer.stream("monthly " + period.start(),
+                onToken -> reportService.streamPeriodReport(period.start(), period.end(), "Monthly", onToken));
+    }
+
+    /**
+     * Queue a report of {@code type} daily, weekly or monthly. Identical submissions while
+     * one is in flight return its job, and a fresh stored report a job that is already done.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(
+            @RequestParam String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        ReportType reportType = REPORT_TYPES.stream()
+                .filter(t -> t.name().equals(type.toUpperCase(Locale.ROOT)))
+                .findFirst()
+                .orElse(null);
+        if (reportType == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Unknown report type: " + type));
+        }
+        try {
+            Submission submission = reportJobService.submit(reportType, date != null ? date : LocalDate.now());
+            ReportJob job = reportJobService.find(submission.id()).orElseThrow();
+            return ResponseEntity.accepted().body(Map.of(
+                    "jobId", job.id(),
+                    "status", job.status(),
+                    "deduplicated", !submission.created(),
+                    "period", job.periodStart() + " to " + job.periodEnd()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("error", "Too many report jobs queued, try again shortly"));
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ReportJob> getJob(@PathVariable UUID id) {
+        return reportJobService.find(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Follow a job as server-sent events: {@code progress} on every stage change, the
+     * report as {@code token} events and {@code done} at the end.
+     */
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable UUID id) {
+        if (reportJobService.find(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(sseStreamer.relay("job " + id,
+                (onToken, onProgress) -> reportJobService.follow(id, onToken, onProgress::accept)));
+    }
 
-        String report = aiAnalysisService.generatePeriodReport(start, end, "Monthly");
-        return ResponseEntity.ok(Map.of("report", report, "period", start + " to " + end));
+    /**
+     * Concurrent identical report requests share one generation, and a successful report
+     * is kept briefly (flight {@code report} of {@code mindme.single-flight}).
+     */
+    private String coalesced(Period period, Supplier<String> generate) {
+        return singleFlight.get(SingleFlight.Flight.REPORT, period, generate, report -> !ReportService.isError(report));
     }
 }
@@ -1,7 +1,8 @@
 package com.touchkiss.mindme.controller;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
-import com.touchkiss.mindme.service.KnowledgeService;
+import com.touchkiss.mindme.service.HybridSearchService;
+import com.touchkiss.mindme.service.VectorSearchService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,10 +13,34 @@ import java.util.List;
 @RequiredArgsConstructor
 public class SearchController {
 
-    private final KnowledgeService knowledgeService;
+    private final HybridSearchService hybridSearchService;
+    private final VectorSearchService vectorSearchService;
 
     @GetMapping
-    public List<ActivityRecord> search(@RequestParam String q) {
-        return knowledgeService.search(q);
+    public List<ActivityRecord> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        HybridSearchService.HybridSearchResult result = hybridSearchService.search(q, page, size);
+        return hybridSearchService.loadRecords(result.hits());
+    }
+
+    /**
+     * Scored, deduplicated activity IDs with per-stage latency, for tuning.
+     */
+    @GetMapping("/hybrid")
+    public HybridSearchService.HybridSearchResult hybrid(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return hybridSearchService.search(q, page, size);
+    }
+
+    /**
+     * Semantic search with metadata filters and per-request recall/latency knobs.
+     */
+    @PostMapping("/vector")
+    public List<VectorSearchService.SegmentMatch> vector(@RequestBody VectorSearchService.VectorQuery query) {
+        return vectorSearchService.search(query);
     }
 }
@@ -0,0 +1,168 @@
+package com.touchkiss.mindme.controller;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a streamed generation off the request thread and relays it as server-sent events:
+ * <ul>
+ * <li>{@code start} right away, before the model is even called, so clients can show
+ * progress while a reasoning model thinks;</li>
+ * <li>{@code token} with {@code {"text": ...}} for each piece of visible text;</li>
+ * <li>{@code progress} with an object describing the stage, for generations that report
+ * one (see {@link #streamWithProgress});</li>
+ * <li>{@code done} with the complete text, or {@code error} with a message.</li>
+ * </ul>
+ * Text travels as JSON so leading spaces and newlines survive SSE framing. Streams run on a
+ * bounded pool ({@code mindme.streaming.max-concurrent}); when it and its queue are full the
+ * stream fails fast with an {@code error} event instead of piling up. A generation that
+ * runs elsewhere and only needs relaying takes no slot (see {@link #relay}).
+ */
+@Slf4j
+@Component
+public class SseStreamer {
+
+    private final ThreadPoolExecutor streams;
+    private final long timeoutMs;
+
+    public SseStreamer(
+            @Value("${mindme.streaming.max-concurrent:8}") int maxConcurrent,
+            @Value("${mindme.streaming.queue-capacity:16}") int queueCapacity,
+            @Value("${mindme.streaming.timeout-ms:300000}") long timeoutMs) {
+        int threads = Math.max(1, maxConcurrent);
+        this.streams = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+        this.streams.allowCoreThreadTimeOut(true);
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        streams.shutdownNow();
+    }
+
+    /**
+     * @param generation produces the complete text while passing its pieces to the consumer
+     */
+    public SseEmitter stream(String name, Function<Consumer<String>, String> generation) {
+        return streamWithProgress(name, (onToken, onProgress) -> generation.apply(onToken));
+    }
+
+    /**
+     * @param generation produces the complete text while passing its pieces to the first
+     *                   consumer and its progress to the second
+     */
+    public SseEmitter streamWithProgress(String name,
+            BiFunction<Consumer<String>, Consumer<Object>, String> generation) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        send(emitter, "start", Map.of("stream", name));
+        try {
+            streams.execute(() -> {
+                try {
+                    String text = generation.apply(token -> send(emitter, "token", Map.of("text", token)),
+                            progress -> send(emitter, "progress", progress));
+                    send(emitter, "done", Map.of("text", text));
+                    emitter.complete();
+                } catch (ClientGoneException e) {
+                    // Client went away or the emitter timed out; nothing left to tell it
+                    emitter.complete();
+                } catch (Exception e) {
+                    log.error("Streamed {} failed", name, e);
+                    fail(emitter, message(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected streamed {}: {} streams running", name, streams.getActiveCount());
+            fail(emitter, "Too many concurrent streams, try again shortly");
+        }
+        return emitter;
+    }
+
+    /**
+     * Relay a generation that runs elsewhere, e.g. a report job, with the same events.
+     * {@code subscription} is called on the request thread and passes pieces to the
+     * consumers from whichever thread produces them; the stream ends when its future does,
+     * and a client that goes away cancels it.
+     */
+    public SseEmitter relay(String name,
+            BiFunction<Consumer<String>, Consumer<Object>, CompletableFuture<String>> subscription) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        send(emitter, "start", Map.of("stream", name));
+        CompletableFuture<String> text;
+        try {
+            text = subscription.apply(token -> send(emitter, "token", Map.of("text", token)),
+                    progress -> send(emitter, "progress", progress));
+        } catch (RuntimeException e) {
+            log.error("Relayed {} failed", name, e);
+            fail(emitter, message(e));
+            return emitter;
+        }
+        emitter.onCompletion(() -> text.cancel(false));
+        emitter.onTimeout(() -> text.cancel(false));
+        text.whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause == null) {
+                try {
+                    send(emitter, "done", Map.of("text", result));
+                    emitter.complete();
+                } catch (ClientGoneException e) {
+                    emitter.complete();
+                }
+            } else if (cause instanceof CancellationException || cause instanceof ClientGoneException) {
+                emitter.complete();
+            } else {
+                log.error("Relayed {} failed", name, cause);
+                fail(emitter, message(cause));
+            }
+        });
+        return emitter;
+    }
+
+    private static String message(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            throw new ClientGoneException(e);
+        }
+    }
+
+    private static void fail(SseEmitter emitter, String message) {
+        try {
+            send(emitter, "error", Map.of("message", message));
+            emitter.complete();
+        } catch (ClientGoneException e) {
+            emitter.complete();
+        }
+    }
+
+    private static final class ClientGoneException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ClientGoneException(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
@@ -13,13 +13,19 @@ import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
 public interface ActivityRecordRepository
-        extends JpaRepository<ActivityRecord, UUID>, JpaSpecificationExecutor<ActivityRecord> {
-
-    List<ActivityRecord> findByAnalyzedFalse();
+        extends JpaRepository<ActivityRecord, UUID>, JpaSpecificationExecutor<ActivityRecord>,
+        ActivityRecordRepositoryCustom {
 
     @Query(value = "SELECT * FROM activity_records WHERE to_tsvector('english', title || ' ' || COALESCE(content_summary, '')) @@ websearch_to_tsquery('english', :query)", nativeQuery = true)
     List<ActivityRecord> search(@Param("query") String query);
 
+    // Lexical leg of hybrid search: IDs ordered by full-text rank
+    @Query(value = "SELECT id FROM activity_records, websearch_to_tsquery('english', :query) q "
+            + "WHERE to_tsvector('english', COALESCE(title, '') || ' ' || COALESCE(content_summary, '')) @@ q "
+            + "ORDER BY ts_rank(to_tsvector('english', COALESCE(title, '') || ' ' || COALESCE(content_summary, '')), q) DESC "
+            + "LIMIT :limit", nativeQuery = true)
+    List<UUID> searchRankedIds(@Param("query") String query, @Param("limit") int limit);
+
     List<ActivityRecord> findByVisitTimeBetween(java.time.ZonedDateTime start, java.time.ZonedDateTime end);
 
     // For AI conversation deduplication
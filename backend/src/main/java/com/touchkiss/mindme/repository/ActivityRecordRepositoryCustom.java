@@ -0,0 +1,47 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.domain.ActivityRecord;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JDBC-backed bulk operations for activity records that bypass per-entity JPA round trips.
+ */
+public interface ActivityRecordRepositoryCustom {
+
+    /**
+     * Resolve every external ID in a single query.
+     *
+     * @return map of external ID to the existing record ID
+     */
+    Map<String, UUID> findIdsByExternalIds(Collection<String> externalIds);
+
+    /**
+     * Insert or merge records with multi-row {@code INSERT ... ON CONFLICT (external_id) DO
+     * UPDATE} statements. Records must already carry an ID, and no two may share an external
+     * ID: one statement cannot update the same row twice.
+     *
+     * @return every row written, with the ID it actually has, which for a merged record is
+     * the existing row's
+     */
+    List<UpsertedRow> batchUpsert(List<ActivityRecord> records);
+
+    /**
+     * Visit time, title and summary of the records visited in {@code [start, end)}, in visit
+     * order. Reads only the columns reports need, never {@code page_content}.
+     */
+    List<ActivityLine> findActivityLines(ZonedDateTime start, ZonedDateTime end);
+
+    record ActivityLine(ZonedDateTime visitTime, String title, String contentSummary) {
+    }
+
+    /**
+     * @param inserted false if the record was merged into an existing row
+     */
+    record UpsertedRow(UUID id, String externalId, boolean inserted) {
+    }
+}
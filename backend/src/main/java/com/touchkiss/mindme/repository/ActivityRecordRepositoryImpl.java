@@ -0,0 +1,150 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.domain.ActivityRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class ActivityRecordRepositoryImpl implements ActivityRecordRepositoryCustom {
+
+    // 20 parameters per row stays well below the 32767 bind parameters of one statement
+    private static final int BATCH_SIZE = 500;
+
+    private static final String UPSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, FALSE, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Merge semantics mirror the previous per-record update: only the fields the
+    // extension refreshes are overwritten, and the record is queued for re-analysis.
+    private static final String UPSERT_SQL = """
+            INSERT INTO activity_records (
+                id, url, title, visit_time, duration_seconds, content_summary, page_content, analyzed,
+                active_seconds, scroll_depth, interaction_count, interest_score, referrer,
+                related_record_url, relationship_type, transition_type, search_query, tags,
+                external_id, created_at, analysis_priority)
+            VALUES %s
+            ON CONFLICT (external_id) DO UPDATE SET
+                content_summary = EXCLUDED.content_summary,
+                title = EXCLUDED.title,
+                interaction_count = EXCLUDED.interaction_count,
+                visit_time = EXCLUDED.visit_time,
+                search_query = EXCLUDED.search_query,
+                analyzed = FALSE,
+                analysis_status = 'PENDING',
+                analysis_claimed_at = NULL,
+                analysis_attempts = 0,
+                analysis_next_attempt_at = NULL,
+                analysis_priority = EXCLUDED.analysis_priority
+            RETURNING id, external_id, (xmax = 0) AS inserted
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Map<String, UUID> findIdsByExternalIds(Collection<String> externalIds) {
+        Map<String, UUID> ids = new HashMap<>();
+        if (externalIds.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.query(
+                "SELECT external_id, id FROM activity_records WHERE external_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", externalIds.toArray())),
+                rs -> {
+                    ids.put(rs.getString("external_id"), rs.getObject("id", UUID.class));
+                });
+        return ids;
+    }
+
+    @Override
+    @Transactional
+    public List<UpsertedRow> batchUpsert(List<ActivityRecord> records) {
+        List<UpsertedRow> written = new ArrayList<>(records.size());
+        ZonedDateTime now = ZonedDateTime.now();
+        for (int from = 0; from < records.size(); from += BATCH_SIZE) {
+            List<ActivityRecord> chunk = records.subList(from, Math.min(records.size(), from + BATCH_SIZE));
+            String sql = UPSERT_SQL.formatted(String.join(", ", Collections.nCopies(chunk.size(), UPSERT_ROW)));
+            written.addAll(jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                for (ActivityRecord r : chunk) {
+                    i = bind(ps, i, r, now);
+                }
+            }, (rs, n) -> new UpsertedRow(rs.getObject("id", UUID.class), rs.getString("external_id"),
+                    rs.getBoolean("inserted"))));
+        }
+        return written;
+    }
+
+    /**
+     * Bind one row of {@link #UPSERT_ROW} starting at parameter {@code i}.
+     *
+     * @return the index of the next row's first parameter
+     */
+    private static int bind(PreparedStatement ps, int i, ActivityRecord r, ZonedDateTime now) throws SQLException {
+        ps.setObject(i++, r.getId());
+        ps.setString(i++, r.getUrl());
+        ps.setString(i++, r.getTitle());
+        setTimestamp(ps, i++, r.getVisitTime());
+        setInteger(ps, i++, r.getDurationSeconds());
+        ps.setString(i++, r.getContentSummary());
+        ps.setString(i++, r.getPageContent());
+        setInteger(ps, i++, r.getActiveSeconds());
+        setInteger(ps, i++, r.getScrollDepth());
+        setInteger(ps, i++, r.getInteractionCount());
+        setInteger(ps, i++, r.getInterestScore());
+        ps.setString(i++, r.getReferrer());
+        ps.setString(i++, r.getRelatedRecordUrl());
+        ps.setString(i++, r.getRelationshipType());
+        ps.setString(i++, r.getTransitionType());
+        ps.setString(i++, r.getSearchQuery());
+        ps.setString(i++, r.getTags());
+        ps.setString(i++, r.getExternalId());
+        ZonedDateTime createdAt = r.getCreatedAt() != null ? r.getCreatedAt() : now;
+        setTimestamp(ps, i++, createdAt);
+        ps.setDouble(i++, AnalysisPriority.of(createdAt, AnalysisPriority.engagementScore(r.getActiveSeconds(),
+                r.getDurationSeconds(), r.getScrollDepth(), r.getInteractionCount(), r.getContentSummary()),
+                r.getExternalId() != null));
+        return i;
+    }
+
+    @Override
+    public List<ActivityLine> findActivityLines(ZonedDateTime start, ZonedDateTime end) {
+        return jdbcTemplate.query("""
+                SELECT visit_time, title, content_summary FROM activity_records
+                WHERE visit_time >= ? AND visit_time < ?
+                ORDER BY visit_time
+                """,
+                (rs, i) -> new ActivityLine(
+                        rs.getObject("visit_time", OffsetDateTime.class).atZoneSameInstant(start.getZone()),
+                        rs.getString("title"),
+                        rs.getString("content_summary")),
+                start.toOffsetDateTime(), end.toOffsetDateTime());
+    }
+
+    private static void setTimestamp(PreparedStatement ps, int index, ZonedDateTime value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.TIMESTAMP_WITH_TIMEZONE);
+        } else {
+            ps.setObject(index, value.toOffsetDateTime());
+        }
+    }
+
+    private static void setInteger(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, value);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.touchkiss.mindme.repository;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Sort key of the analysis queue ({@code activity_records.analysis_priority}), stored at
+ * ingest so the claim can walk a partial index instead of sorting the backlog.
+ * <p>
+ * The key is a virtual time in hours: the record's creation time moved forward by its
+ * engagement, plus a fixed lift for imported AI conversations. Higher keys are claimed
+ * first, so among equally engaged records the newest wins, and a deep read is analyzed
+ * ahead of up to two days of newer throwaway tabs. V23 backfills existing rows with the
+ * same formula in SQL; keep the two in step.
+ */
+public final class AnalysisPriority {
+
+    /** Lift of a record with full engagement (score 100). */
+    static final double ENGAGEMENT_BOOST_HOURS = 48;
+    /** AI conversations carry no browsing metrics but are almost always worth extracting. */
+    static final double AI_CONVERSATION_BOOST_HOURS = 24;
+
+    private AnalysisPriority() {
+    }
+
+    public static double of(ZonedDateTime createdAt, int engagementScore, boolean aiConversation) {
+        double hours = createdAt.toEpochSecond() / 3600.0;
+        return hours + ENGAGEMENT_BOOST_HOURS * Math.min(100, Math.max(0, engagementScore)) / 100.0
+                + (aiConversation ? AI_CONVERSATION_BOOST_HOURS : 0);
+    }
+
+    /**
+     * Engagement score (0-100): up to 50 for attention time (log-scaled, ten minutes
+     * saturates; active time, falling back to the visit duration), 25 for scroll depth,
+     * 15 for interactions and 10 for summary length.
+     */
+    public static int engagementScore(Integer activeSeconds, Integer durationSeconds, Integer scrollDepth,
+            Integer interactionCount, String contentSummary) {
+        int seconds = value(activeSeconds) > 0 ? value(activeSeconds) : value(durationSeconds);
+        double time = 50 * Math.min(1.0, Math.log1p(seconds) / Math.log1p(600));
+        double scroll = Math.min(25, value(scrollDepth) / 4.0);
+        double interactions = Math.min(15, value(interactionCount) * 1.5);
+        double summary = Math.min(10, (contentSummary != null ? contentSummary.length() : 0) / 100.0);
+        return (int) Math.round(time + scroll + interactions + summary);
+    }
+
+    private static int value(Integer metric) {
+        return metric != null ? Math.max(0, metric) : 0;
+    }
+}
@@ -0,0 +1,246 @@
+package com.touchkiss.mindme.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Work queue over {@code activity_records.analysis_status}. Batches are claimed with
+ * {@code FOR UPDATE SKIP LOCKED}, so the scheduler, manual triggers and other instances
+ * never receive the same record. Claimed rows carry only the columns the prompt needs;
+ * {@code page_content} is never read.
+ * <p>
+ * Every transition out of RUNNING is fenced on the claim timestamp: once a lease has
+ * expired and the record was re-claimed (or re-queued by ingest), the stale worker's
+ * writes match no row.
+ * <p>
+ * Every claim counts as an attempt. Failed records wait out an exponential backoff in
+ * PENDING and are parked as DEAD once they run out of attempts; retries are claimed
+ * separately from fresh records so they can be capped to a share of each batch.
+ */
+@Repository
+public class AnalysisQueueRepository {
+
+    private static final String REQUEUE_SQL = """
+            UPDATE activity_records SET analysis_status = 'PENDING', analyzed = FALSE, analysis_claimed_at = NULL,
+                analysis_forced = TRUE, analysis_attempts = 0, analysis_next_attempt_at = NULL,
+                analysis_last_error = NULL""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AnalysisQueueRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Claim up to {@code freshLimit} records never attempted before, highest
+     * {@link AnalysisPriority} first, plus up to {@code retryLimit} failed records whose
+     * backoff has elapsed.
+     */
+    public List<AnalysisTask> claim(int freshLimit, int retryLimit) {
+        return jdbcTemplate.query("""
+                WITH fresh AS (
+                    SELECT id FROM activity_records
+                    WHERE analysis_status = 'PENDING' AND analysis_attempts = 0
+                    ORDER BY analysis_priority DESC
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED),
+                retry AS (
+                    SELECT id FROM activity_records
+                    WHERE analysis_status = 'PENDING' AND analysis_attempts > 0
+                        AND analysis_next_attempt_at <= CURRENT_TIMESTAMP
+                    ORDER BY analysis_next_attempt_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED)
+                UPDATE activity_records SET analysis_status = 'RUNNING', analysis_claimed_at = CURRENT_TIMESTAMP,
+                    analysis_attempts = analysis_attempts + 1
+                WHERE id IN (SELECT id FROM fresh UNION ALL SELECT id FROM retry)
+                RETURNING id, url, title, content_summary, duration_seconds, active_seconds, scroll_depth,
+                    interaction_count, external_id IS NOT NULL AS ai_conversation, analysis_forced,
+                    analysis_attempts, analysis_claimed_at
+                """,
+                (rs, i) -> new AnalysisTask(
+                        rs.getObject("id", UUID.class),
+                        rs.getString("url"),
+                        rs.getString("title"),
+                        rs.getString("content_summary"),
+                        (Integer) rs.getObject("duration_seconds"),
+                        (Integer) rs.getObject("active_seconds"),
+                        (Integer) rs.getObject("scroll_depth"),
+                        (Integer) rs.getObject("interaction_count"),
+                        rs.getBoolean("ai_conversation"),
+                        rs.getBoolean("analysis_forced"),
+                        rs.getInt("analysis_attempts"),
+                        rs.getTimestamp("analysis_claimed_at")),
+                freshLimit, retryLimit);
+    }
+
+    /**
+     * Store the analysis outcome and mark the record done.
+     *
+     * @return false if the lease was lost and nothing was written
+     */
+    public boolean complete(AnalysisTask task, Integer interestScore, String tags) {
+        return jdbcTemplate.update("""
+                UPDATE activity_records SET analysis_status = 'DONE', analyzed = TRUE, analysis_claimed_at = NULL,
+                    analysis_forced = FALSE, analysis_last_error = NULL,
+                    interest_score = COALESCE(?, interest_score), tags = COALESCE(?, tags)
+                WHERE id = ? AND analysis_status = 'RUNNING' AND analysis_claimed_at = ?
+                """, interestScore, tags, task.id(), task.claimedAt()) > 0;
+    }
+
+    /**
+     * Finish records the pre-classifier judged not worth a model call, storing their
+     * provisional interest score. Leases already lost are left alone.
+     */
+    public void skip(Map<AnalysisTask, Integer> scores) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(scores.size());
+        scores.forEach((task, score) -> rows.add(new Object[] { score, task.id(), task.claimedAt() }));
+        jdbcTemplate.batchUpdate("""
+                UPDATE activity_records SET analysis_status = 'SKIPPED', analyzed = TRUE, analysis_claimed_at = NULL,
+                    interest_score = ?
+                WHERE id = ? AND analysis_status = 'RUNNING' AND analysis_claimed_at = ?
+                """, rows);
+    }
+
+    /**
+     * Give claimed records a provisional interest score until the model's score arrives.
+     * Records that already carry a score (re-analysis) keep it.
+     */
+    public void setProvisionalScores(Map<AnalysisTask, Integer> scores) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(scores.size());
+        scores.forEach((task, score) -> rows.add(new Object[] { score, task.id(), task.claimedAt() }));
+        jdbcTemplate.batchUpdate("""
+                UPDATE activity_records SET interest_score = ?
+                WHERE id = ? AND analysis_status = 'RUNNING' AND analysis_claimed_at = ?
+                    AND COALESCE(interest_score, 0) = 0
+                """, rows);
+    }
+
+    /**
+     * Hand a failed record back to the queue, to be claimed again no earlier than
+     * {@code delayMs} from now by the database clock.
+     */
+    public void retryLater(AnalysisTask task, String error, long delayMs) {
+        jdbcTemplate.update("""
+                UPDATE activity_records SET analysis_status = 'PENDING', analysis_claimed_at = NULL,
+                    analysis_next_attempt_at = CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond',
+                    analysis_last_error = ?
+                WHERE id = ? AND analysis_status = 'RUNNING' AND analysis_claimed_at = ?
+                """, delayMs, error, task.id(), task.claimedAt());
+    }
+
+    /**
+     * Park a record that ran out of attempts.
+     */
+    public void deadLetter(AnalysisTask task, String error) {
+        jdbcTemplate.update("""
+                UPDATE activity_records SET analysis_status = 'DEAD', analysis_claimed_at = NULL,
+                    analysis_last_error = ?
+                WHERE id = ? AND analysis_status = 'RUNNING' AND analysis_claimed_at = ?
+                """, error, task.id(), task.claimedAt());
+    }
+
+    /**
+     * Queue records for (re-)analysis with a fresh attempt budget, dropping any lease
+     * currently held on them. The records are forced past the pre-classifier.
+     */
+    public int requeue(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(REQUEUE_SQL + " WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids.toArray())));
+    }
+
+    /**
+     * Requeue dead-lettered records; ids that are not DEAD are ignored.
+     *
+     * @param ids the records to requeue, or null for all of them
+     */
+    public int requeueDead(Collection<UUID> ids) {
+        if (ids == null) {
+            return jdbcTemplate.update(REQUEUE_SQL + " WHERE analysis_status = 'DEAD'");
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(REQUEUE_SQL + " WHERE analysis_status = 'DEAD' AND id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids.toArray())));
+    }
+
+    /**
+     * Dead-lettered records, newest first.
+     */
+    public List<DeadRecord> findDead(int limit, int offset) {
+        return jdbcTemplate.query("""
+                SELECT id, url, title, analysis_attempts, analysis_last_error, created_at FROM activity_records
+                WHERE analysis_status = 'DEAD'
+                ORDER BY created_at DESC
+                LIMIT ? OFFSET ?
+                """,
+                (rs, i) -> new DeadRecord(
+                        rs.getObject("id", UUID.class),
+                        rs.getString("url"),
+                        rs.getString("title"),
+                        rs.getInt("analysis_attempts"),
+                        rs.getString("analysis_last_error"),
+                        rs.getTimestamp("created_at").toInstant()),
+                limit, offset);
+    }
+
+    public int releaseExpiredLeases(long leaseMs) {
+        return jdbcTemplate.update("""
+                UPDATE activity_records SET analysis_status = 'PENDING', analysis_claimed_at = NULL,
+                    analysis_next_attempt_at = CURRENT_TIMESTAMP
+                WHERE analysis_status = 'RUNNING'
+                    AND analysis_claimed_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 millisecond'
+                """, leaseMs);
+    }
+
+    /**
+     * Record counts per queue state; the DONE and SKIPPED buckets are left out since they
+     * are not served by a partial index.
+     */
+    public Map<String, Long> countActive() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query("""
+                SELECT analysis_status, COUNT(*) AS total FROM activity_records
+                WHERE analysis_status IN ('PENDING', 'RUNNING', 'DEAD') GROUP BY analysis_status
+                """,
+                rs -> {
+                    counts.put(rs.getString("analysis_status"), rs.getLong("total"));
+                });
+        return counts;
+    }
+
+    /**
+     * A claimed record: the prompt inputs, the engagement signals the pre-classifier reads,
+     * and the lease it was claimed under.
+     *
+     * @param aiConversation the record has an {@code external_id} (imported AI conversation)
+     * @param forced         explicitly re-queued; must reach the model
+     * @param attempts       claims so far, including this one
+     */
+    public record AnalysisTask(UUID id, String url, String title, String contentSummary, Integer durationSeconds,
+            Integer activeSeconds, Integer scrollDepth, Integer interactionCount, boolean aiConversation,
+            boolean forced, int attempts, Timestamp claimedAt) {
+    }
+
+    public record DeadRecord(UUID id, String url, String title, int attempts, String lastError, Instant createdAt) {
+    }
+}
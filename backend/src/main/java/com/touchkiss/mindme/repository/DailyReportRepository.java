@@ -0,0 +1,199 @@
+package com.touchkiss.mindme.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Generated reports and digests in {@code daily_reports}, one row per date and
+ * {@link ReportType}. Lookups and range scans go through the unique (date, type) index.
+ * <p>
+ * Freshness is tracked in {@code report_dirty_dates}: writers of activity data mark the
+ * visit dates they touch in the same transaction, and every mark takes a new version from
+ * {@code report_mark_version_seq}. A stored row keeps the sum of the mark versions of its
+ * dates, read before its source data; it is stale once that sum has grown. Versions rather
+ * than timestamps keep a report generated while an ingest was still uncommitted stale,
+ * and per date they only grow, so any mark committed later raises the sum.
+ */
+@Repository
+public class DailyReportRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DailyReportRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<StoredReport> find(LocalDate date, ReportType type) {
+        List<StoredReport> rows = jdbcTemplate.query("""
+                SELECT report_date, report_type, summary_content, record_count, source_version FROM daily_reports
+                WHERE report_date = ? AND report_type = ?
+                """,
+                (rs, i) -> map(rs),
+                Date.valueOf(date), type.name());
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * Stored rows of one type between {@code start} and {@code end}, both inclusive.
+     */
+    public Map<LocalDate, StoredReport> findRange(LocalDate start, LocalDate end, ReportType type) {
+        Map<LocalDate, StoredReport> reports = new LinkedHashMap<>();
+        jdbcTemplate.query("""
+                SELECT report_date, report_type, summary_content, record_count, source_version FROM daily_reports
+                WHERE report_type = ? AND report_date BETWEEN ? AND ?
+                ORDER BY report_date
+                """,
+                rs -> {
+                    StoredReport report = map(rs);
+                    reports.put(report.date(), report);
+                },
+                type.name(), Date.valueOf(start), Date.valueOf(end));
+        return reports;
+    }
+
+    /**
+     * @param sourceVersion sum of the {@link #findMarkVersions mark versions} of the row's
+     *                      dates, read before its source data
+     */
+    public void save(LocalDate date, ReportType type, String content, int recordCount, long sourceVersion) {
+        jdbcTemplate.update("""
+                INSERT INTO daily_reports (report_date, report_type, summary_content, record_count, source_version,
+                    updated_at)
+                VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+                ON CONFLICT (report_date, report_type) DO UPDATE SET
+                    summary_content = EXCLUDED.summary_content, record_count = EXCLUDED.record_count,
+                    source_version = EXCLUDED.source_version, updated_at = EXCLUDED.updated_at
+                """, Date.valueOf(date), type.name(), content, recordCount, sourceVersion);
+    }
+
+    /**
+     * Mark dates whose activity changed. Dates are written in sorted order so concurrent
+     * ingest flushes lock the rows in the same order.
+     */
+    public void markDirty(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new TreeSet<>(dates).stream().map(d -> new Object[] { Date.valueOf(d) }).toList();
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO report_dirty_dates (report_date, marked_at, mark_version)
+                VALUES (?, CURRENT_TIMESTAMP, nextval('report_mark_version_seq'))
+                ON CONFLICT (report_date) DO UPDATE SET
+                    marked_at = CURRENT_TIMESTAMP, mark_version = nextval('report_mark_version_seq')
+                """, rows);
+    }
+
+    /**
+     * Mark the visit dates of existing records, e.g. before they are deleted.
+     */
+    public void markDirtyForRecords(Collection<UUID> ids, ZoneId zone) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO report_dirty_dates (report_date, marked_at, mark_version)
+                SELECT d, CURRENT_TIMESTAMP, nextval('report_mark_version_seq') FROM (
+                    SELECT DISTINCT (visit_time AT TIME ZONE ?)::date AS d FROM activity_records
+                    WHERE id = ANY(?) AND visit_time IS NOT NULL
+                    ORDER BY 1
+                ) dates
+                ON CONFLICT (report_date) DO UPDATE SET
+                    marked_at = CURRENT_TIMESTAMP, mark_version = nextval('report_mark_version_seq')
+                """, ps -> {
+                    ps.setString(1, zone.getId());
+                    ps.setArray(2, ps.getConnection().createArrayOf("uuid", ids.toArray()));
+                });
+    }
+
+    /**
+     * Visit dates of existing records, e.g. the old dates of records about to be updated.
+     */
+    public Set<LocalDate> findVisitDates(Collection<UUID> ids, ZoneId zone) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        return new TreeSet<>(jdbcTemplate.query("""
+                SELECT DISTINCT (visit_time AT TIME ZONE ?)::date AS visit_date FROM activity_records
+                WHERE id = ANY(?) AND visit_time IS NOT NULL
+                """, ps -> {
+                    ps.setString(1, zone.getId());
+                    ps.setArray(2, ps.getConnection().createArrayOf("uuid", ids.toArray()));
+                }, (rs, i) -> rs.getDate("visit_date").toLocalDate()));
+    }
+
+    /**
+     * Latest mark version of every marked date between {@code start} and {@code end}.
+     */
+    public Map<LocalDate, Long> findMarkVersions(LocalDate start, LocalDate end) {
+        Map<LocalDate, Long> versions = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT report_date, mark_version FROM report_dirty_dates WHERE report_date BETWEEN ? AND ?",
+                rs -> {
+                    versions.put(rs.getDate("report_date").toLocalDate(), rs.getLong("mark_version"));
+                },
+                Date.valueOf(start), Date.valueOf(end));
+        return versions;
+    }
+
+    /**
+     * Dates before {@code before} whose daily report or digest is missing or was read
+     * before their latest mark, newest first.
+     */
+    public List<LocalDate> findStaleDates(LocalDate before, int limit) {
+        return jdbcTemplate.query("""
+                SELECT d.report_date FROM report_dirty_dates d
+                LEFT JOIN daily_reports r ON r.report_date = d.report_date AND r.report_type = 'DAILY'
+                LEFT JOIN daily_reports g ON g.report_date = d.report_date AND g.report_type = 'DIGEST'
+                WHERE d.report_date < ?
+                    AND (r.source_version IS NULL OR r.source_version < d.mark_version
+                        OR g.source_version IS NULL OR g.source_version < d.mark_version)
+                ORDER BY d.report_date DESC
+                LIMIT ?
+                """,
+                (rs, i) -> rs.getDate("report_date").toLocalDate(),
+                Date.valueOf(before), limit);
+    }
+
+    private static StoredReport map(ResultSet rs) throws SQLException {
+        return new StoredReport(
+                rs.getDate("report_date").toLocalDate(),
+                ReportType.valueOf(rs.getString("report_type")),
+                rs.getString("summary_content"),
+                rs.getInt("record_count"),
+                rs.getObject("source_version", Long.class));
+    }
+
+    public enum ReportType {
+        /** The daily report served by {@code /api/reports/daily}. */
+        DAILY,
+        /** Compact summary of one day; the map output of period reports. */
+        DIGEST,
+        /** Merge of up to seven consecutive day digests, keyed by its first day. */
+        GROUP_DIGEST,
+        /** Monday-to-Sunday report, keyed by its Monday. */
+        WEEKLY,
+        /** Calendar month report, keyed by its first day. */
+        MONTHLY
+    }
+
+    /**
+     * @param sourceVersion mark versions the row was generated against, null for rows
+     *                      stored before marks were versioned
+     */
+    public record StoredReport(LocalDate date, ReportType type, String content, int recordCount,
+            Long sourceVersion) {
+    }
+}
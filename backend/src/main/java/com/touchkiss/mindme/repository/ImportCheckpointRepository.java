@@ -0,0 +1,7 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.domain.ImportCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ImportCheckpointRepository extends JpaRepository<ImportCheckpoint, String> {
+}
@@ -0,0 +1,244 @@
+package com.touchkiss.mindme.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Direct SQL search over the pgvector segment table.
+ * <p>
+ * The stock store ranks by a computed score column, which Postgres cannot serve from the
+ * HNSW index. Here the inner query orders by the distance operator itself so the index
+ * is used, metadata filters run in the same statement against the expression indexes
+ * from V18, and {@code hnsw.ef_search} is set per call with {@code SET LOCAL}.
+ * <p>
+ * With {@code langchain4j.pgvector.quantization} set to {@code halfvec} or {@code binary},
+ * the ANN pass runs over a quantized expression index and fetches
+ * {@code rerank-factor} times more candidates, which are then re-scored exactly against
+ * the full-precision {@code embedding} column.
+ * <p>
+ * HNSW applies filters to the candidates it found, so a selective filter would leave far
+ * fewer than the requested rows. Filtered queries therefore scan on with
+ * {@code hnsw.iterative_scan} where pgvector supports it (0.8+) and otherwise widen
+ * {@code ef_search} by {@link #FILTERED_EF_FACTOR}. A record id filter selects few enough
+ * segments to be ranked exactly instead, through the {@code recordId} index.
+ */
+@Repository
+public class PgVectorSegmentRepository {
+
+    public static final int MAX_EF_SEARCH = 1000;
+    /** pgvector's default {@code hnsw.ef_search}. */
+    static final int DEFAULT_EF_SEARCH = 40;
+    /** How much wider a filtered query searches when iterative scans are not available. */
+    static final int FILTERED_EF_FACTOR = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String table;
+    private final int dimension;
+    private final Quantization quantization;
+    private final int rerankFactor;
+    private volatile Boolean iterativeScan;
+
+    public PgVectorSegmentRepository(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${langchain4j.pgvector.table:vector_store}") String table,
+            @Value("${langchain4j.pgvector.dimension:1024}") int dimension,
+            @Value("${langchain4j.pgvector.quantization:none}") String quantization,
+            @Value("${langchain4j.pgvector.rerank-factor:4}") int rerankFactor) {
+        if (!table.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid vector table name: " + table);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.table = table;
+        this.dimension = dimension;
+        this.quantization = Quantization.parse(quantization);
+        this.rerankFactor = Math.max(1, rerankFactor);
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public Quantization quantization() {
+        return quantization;
+    }
+
+    public List<SegmentRow> search(SegmentQuery query) {
+        List<String> conditions = new ArrayList<>();
+        if (query.hosts() != null && !query.hosts().isEmpty()) {
+            conditions.add("metadata->>'host' = ANY(?)");
+        }
+        if (query.recordIds() != null && !query.recordIds().isEmpty()) {
+            conditions.add("metadata->>'recordId' = ANY(?)");
+        }
+        if (query.fromEpoch() != null) {
+            conditions.add("(metadata->>'visitEpoch')::bigint >= ?");
+        }
+        if (query.toEpoch() != null) {
+            conditions.add("(metadata->>'visitEpoch')::bigint <= ?");
+        }
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+        boolean exact = query.recordIds() != null && !query.recordIds().isEmpty();
+
+        int candidates = quantization == Quantization.NONE || exact
+                ? query.maxResults()
+                : Math.min(MAX_EF_SEARCH, query.maxResults() * rerankFactor);
+
+        // The inner query is the ANN pass; the outer one scores candidates at full precision
+        String sql = """
+                SELECT * FROM (
+                    SELECT text, metadata->>'recordId' AS record_id, metadata->>'url' AS url,
+                           metadata->>'title' AS title, (2 - (embedding <=> CAST(? AS vector))) / 2 AS score
+                    FROM (
+                        SELECT * FROM %s
+                        %s
+                        ORDER BY %s
+                        LIMIT ?) candidates) ranked
+                WHERE score >= ?
+                ORDER BY score DESC
+                LIMIT ?
+                """.formatted(table, where, exact ? "(embedding <=> CAST(? AS vector)) + 0" : annOrder());
+
+        String vector = toVectorLiteral(query.vector());
+        if (exact) {
+            // The expression matches no HNSW index, so the filtered rows are ranked exactly
+            return run(sql, vector, query, candidates);
+        }
+        Integer efSearch = query.efSearch();
+        if (quantization != Quantization.NONE) {
+            // HNSW returns at most ef_search rows, so it must cover the rerank pool
+            efSearch = Math.max(efSearch != null ? efSearch : DEFAULT_EF_SEARCH, candidates);
+        }
+        boolean iterative = !conditions.isEmpty() && supportsIterativeScan();
+        if (!conditions.isEmpty() && !iterative) {
+            efSearch = Math.max(efSearch != null ? efSearch : DEFAULT_EF_SEARCH, candidates * FILTERED_EF_FACTOR);
+        }
+        if (efSearch == null && !iterative) {
+            return run(sql, vector, query, candidates);
+        }
+        Integer ef = efSearch != null ? Math.max(1, Math.min(MAX_EF_SEARCH, efSearch)) : null;
+        return transactionTemplate.execute(status -> {
+            // SET LOCAL is scoped to this transaction, so pooled connections keep the default
+            if (iterative) {
+                // Relaxed order is enough, the outer query sorts by exact score
+                jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+            }
+            if (ef != null) {
+                jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + ef);
+            }
+            return run(sql, vector, query, candidates);
+        });
+    }
+
+    /**
+     * Whether the installed pgvector (0.8+) can continue an HNSW scan until enough rows
+     * pass the filters. Checked once.
+     */
+    private boolean supportsIterativeScan() {
+        Boolean supported = iterativeScan;
+        if (supported == null) {
+            List<String> versions = jdbcTemplate.queryForList(
+                    "SELECT extversion FROM pg_extension WHERE extname = 'vector'", String.class);
+            String[] parts = versions.isEmpty() || versions.get(0) == null ? new String[0]
+                    : versions.get(0).split("\\.");
+            supported = parts.length >= 2
+                    && (Integer.parseInt(parts[0]) > 0 || Integer.parseInt(parts[1]) >= 8);
+            iterativeScan = supported;
+        }
+        return supported;
+    }
+
+    /**
+     * Distance expression of the ANN pass; must match the expression index built by
+     * {@code VectorStoreMaintenanceService#ensureAnnIndex} for the configured mode.
+     */
+    private String annOrder() {
+        return switch (quantization) {
+            case NONE -> "embedding <=> CAST(? AS vector)";
+            case HALFVEC -> "(embedding::halfvec(%d)) <=> CAST(? AS halfvec(%d))".formatted(dimension, dimension);
+            case BINARY -> "(binary_quantize(embedding)::bit(%d)) <~> binary_quantize(CAST(? AS vector(%d)))"
+                    .formatted(dimension, dimension);
+        };
+    }
+
+    private List<SegmentRow> run(String sql, String vector, SegmentQuery query, int candidates) {
+        return jdbcTemplate.query(sql, ps -> bind(ps, vector, query, candidates),
+                (rs, i) -> new SegmentRow(rs.getString("record_id"), rs.getString("url"), rs.getString("title"),
+                        rs.getString("text"), rs.getDouble("score")));
+    }
+
+    private static void bind(PreparedStatement ps, String vector, SegmentQuery query, int candidates)
+            throws SQLException {
+        int i = 1;
+        ps.setString(i++, vector);
+        if (query.hosts() != null && !query.hosts().isEmpty()) {
+            ps.setArray(i++, ps.getConnection().createArrayOf("text", query.hosts().toArray()));
+        }
+        if (query.recordIds() != null && !query.recordIds().isEmpty()) {
+            ps.setArray(i++, ps.getConnection().createArrayOf("text", query.recordIds().toArray()));
+        }
+        if (query.fromEpoch() != null) {
+            ps.setLong(i++, query.fromEpoch());
+        }
+        if (query.toEpoch() != null) {
+            ps.setLong(i++, query.toEpoch());
+        }
+        ps.setString(i++, vector);
+        ps.setInt(i++, candidates);
+        ps.setDouble(i++, query.minScore());
+        ps.setInt(i, query.maxResults());
+    }
+
+    static String toVectorLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @param efSearch HNSW candidate list size for this query, or null for the server default
+     */
+    public record SegmentQuery(float[] vector, int maxResults, double minScore, Integer efSearch,
+            List<String> hosts, Long fromEpoch, Long toEpoch, List<String> recordIds) {
+    }
+
+    public enum Quantization {
+        /** Full-precision {@code vector} index. */
+        NONE,
+        /** 16-bit scalar quantization via a {@code halfvec} expression index (half the index size). */
+        HALFVEC,
+        /** Sign bits via a {@code binary_quantize} expression index (1/32 of the index size). */
+        BINARY;
+
+        public static Quantization parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown pgvector quantization '" + value
+                        + "', expected none, halfvec or binary");
+            }
+        }
+    }
+
+    public record SegmentRow(String recordId, String url, String title, String text, double score) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.touchkiss.mindme.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Batched increments of the interest profile counters ({@code user_interests.weight},
+ * {@code user_tags.frequency}). Each flush is one multi-row upsert statement per table,
+ * reading keys and deltas from two arrays with {@code unnest}, that adds the deltas in the
+ * database, so concurrent writers never lose increments or trip the unique constraints.
+ * Rows are inserted in key order so two overlapping flushes lock rows in the same order
+ * and cannot deadlock.
+ */
+@Repository
+public class ProfileCounterRepository {
+
+    // Width of user_interests.category and user_tags.tag
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProfileCounterRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void addInterestWeights(Map<String, Double> deltas) {
+        upsert("""
+                INSERT INTO user_interests (category, weight, last_updated, created_at)
+                SELECT d.category, d.weight, ?, ? FROM unnest(?::text[], ?::float8[]) AS d(category, weight)
+                ORDER BY d.category
+                ON CONFLICT (category) DO UPDATE SET
+                    weight = user_interests.weight + EXCLUDED.weight,
+                    last_updated = EXCLUDED.last_updated
+                """, "float8", deltas);
+    }
+
+    public void addTagFrequencies(Map<String, Integer> deltas) {
+        upsert("""
+                INSERT INTO user_tags (tag, frequency, last_seen, created_at)
+                SELECT d.tag, d.frequency, ?, ? FROM unnest(?::text[], ?::int4[]) AS d(tag, frequency)
+                ORDER BY d.tag
+                ON CONFLICT (tag) DO UPDATE SET
+                    frequency = user_tags.frequency + EXCLUDED.frequency,
+                    last_seen = EXCLUDED.last_seen
+                """, "int4", deltas);
+    }
+
+    private <N extends Number> void upsert(String sql, String deltaType, Map<String, N> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<String, N> rows = sorted(deltas);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(sql, ps -> {
+            ps.setTimestamp(1, now);
+            ps.setTimestamp(2, now);
+            ps.setArray(3, ps.getConnection().createArrayOf("text", rows.keySet().toArray()));
+            ps.setArray(4, ps.getConnection().createArrayOf(deltaType, rows.values().toArray()));
+        });
+    }
+
+    /**
+     * Sort and truncate keys to the column width, merging keys that collide after truncation
+     * (one upsert statement cannot touch the same row twice).
+     */
+    private static <N extends Number> Map<String, N> sorted(Map<String, N> deltas) {
+        Map<String, N> sorted = new TreeMap<>();
+        deltas.forEach((key, delta) -> {
+            String column = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+            sorted.merge(column, delta, ProfileCounterRepository::sum);
+        });
+        return sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <N extends Number> N sum(N a, N b) {
+        if (a instanceof Integer) {
+            return (N) Integer.valueOf(a.intValue() + b.intValue());
+        }
+        return (N) Double.valueOf(a.doubleValue() + b.doubleValue());
+    }
+}
@@ -0,0 +1,204 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Report generation jobs in {@code report_jobs}. At most one job per report type and
+ * period is QUEUED or RUNNING at a time (partial unique index), which is what collapses
+ * identical submissions, also across instances. In-flight jobs are kept alive through
+ * {@code updated_at}; one silent for longer than the lease is failed as abandoned by the
+ * next submission of the same report or by a poll of the job. Lease cutoffs are computed
+ * from the database clock, the one that wrote {@code updated_at}. Finishing and failing
+ * only apply to jobs still in flight, so a job failed as abandoned stays failed.
+ */
+@Repository
+public class ReportJobRepository {
+
+    private static final String COLUMNS = """
+            id, report_type, period_start, period_end, status, stage, steps_done, steps_total, result, error,
+            created_at, started_at, finished_at, updated_at""";
+
+    private static final String ABANDON = """
+            UPDATE report_jobs SET status = 'FAILED', error = 'Abandoned: no heartbeat within lease',
+                finished_at = CURRENT_TIMESTAMP, updated_at = CURRENT_TIMESTAMP
+            WHERE status IN ('QUEUED', 'RUNNING') AND updated_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 millisecond'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReportJobRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<ReportJob> find(UUID id) {
+        return jdbcTemplate.query("SELECT " + COLUMNS + " FROM report_jobs WHERE id = ?", (rs, i) -> map(rs), id)
+                .stream().findFirst();
+    }
+
+    /**
+     * Queue a job for the report, or join the one already in flight.
+     */
+    public Submission submit(ReportType type, LocalDate start, LocalDate end, long leaseMs) {
+        jdbcTemplate.update(ABANDON + " AND report_type = ? AND period_start = ? AND period_end = ?",
+                leaseMs, type.name(), Date.valueOf(start), Date.valueOf(end));
+        // The in-flight job may finish between a lost insert and the lookup; try again then
+        for (int attempt = 0; attempt < 3; attempt++) {
+            List<UUID> created = jdbcTemplate.queryForList("""
+                    INSERT INTO report_jobs (report_type, period_start, period_end) VALUES (?, ?, ?)
+                    ON CONFLICT (report_type, period_start, period_end) WHERE status IN ('QUEUED', 'RUNNING')
+                    DO NOTHING
+                    RETURNING id
+                    """, UUID.class, type.name(), Date.valueOf(start), Date.valueOf(end));
+            if (!created.isEmpty()) {
+                return new Submission(created.get(0), true);
+            }
+            List<UUID> inFlight = jdbcTemplate.queryForList("""
+                    SELECT id FROM report_jobs
+                    WHERE report_type = ? AND period_start = ? AND period_end = ? AND status IN ('QUEUED', 'RUNNING')
+                    """, UUID.class, type.name(), Date.valueOf(start), Date.valueOf(end));
+            if (!inFlight.isEmpty()) {
+                return new Submission(inFlight.get(0), false);
+            }
+        }
+        throw new IllegalStateException("Could not queue " + type + " report job for " + start);
+    }
+
+    /**
+     * Record a job answered from a stored report without running.
+     */
+    public UUID insertDone(ReportType type, LocalDate start, LocalDate end, String result) {
+        return jdbcTemplate.queryForObject("""
+                INSERT INTO report_jobs (report_type, period_start, period_end, status, result, started_at, finished_at)
+                VALUES (?, ?, ?, 'DONE', ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+                RETURNING id
+                """, UUID.class, type.name(), Date.valueOf(start), Date.valueOf(end), result);
+    }
+
+    /**
+     * @return false if the job is no longer queued, e.g. failed as abandoned meanwhile
+     */
+    public boolean start(UUID id) {
+        return jdbcTemplate.update("""
+                UPDATE report_jobs SET status = 'RUNNING', started_at = CURRENT_TIMESTAMP, updated_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND status = 'QUEUED'
+                """, id) == 1;
+    }
+
+    public void progress(UUID id, String stage, int done, int total) {
+        jdbcTemplate.update("""
+                UPDATE report_jobs SET stage = ?, steps_done = ?, steps_total = ?, updated_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND status = 'RUNNING'
+                """, stage, done, total, id);
+    }
+
+    /**
+     * @return false if the job is no longer running, e.g. failed as abandoned meanwhile
+     */
+    public boolean finish(UUID id, String result) {
+        return jdbcTemplate.update("""
+                UPDATE report_jobs SET status = 'DONE', result = ?, error = NULL, finished_at = CURRENT_TIMESTAMP,
+                    updated_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND status = 'RUNNING'
+                """, result, id) == 1;
+    }
+
+    /**
+     * Fail a job that is queued, e.g. rejected by a full pool, or running.
+     *
+     * @return false if the job had already finished
+     */
+    public boolean fail(UUID id, String error) {
+        return jdbcTemplate.update("""
+                UPDATE report_jobs SET status = 'FAILED', error = ?, finished_at = CURRENT_TIMESTAMP,
+                    updated_at = CURRENT_TIMESTAMP
+                WHERE id = ? AND status IN ('QUEUED', 'RUNNING')
+                """, error, id) == 1;
+    }
+
+    /**
+     * Fail the job as abandoned if it went without a heartbeat for longer than the lease.
+     */
+    public void expire(UUID id, long leaseMs) {
+        jdbcTemplate.update(ABANDON + " AND id = ?", leaseMs, id);
+    }
+
+    /**
+     * Heartbeat of jobs this instance has queued or is running.
+     */
+    public void touch(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update("""
+                UPDATE report_jobs SET updated_at = CURRENT_TIMESTAMP
+                WHERE id = ANY(?) AND status IN ('QUEUED', 'RUNNING')
+                """, ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids.toArray())));
+    }
+
+    /**
+     * Delete jobs that finished before {@code cutoff}; their reports stay in {@code daily_reports}.
+     */
+    public int purgeFinished(Instant cutoff) {
+        return jdbcTemplate.update("DELETE FROM report_jobs WHERE finished_at < ?", Timestamp.from(cutoff));
+    }
+
+    private static ReportJob map(ResultSet rs) throws SQLException {
+        return new ReportJob(
+                rs.getObject("id", UUID.class),
+                ReportType.valueOf(rs.getString("report_type")),
+                rs.getDate("period_start").toLocalDate(),
+                rs.getDate("period_end").toLocalDate(),
+                JobStatus.valueOf(rs.getString("status")),
+                rs.getString("stage"),
+                rs.getInt("steps_done"),
+                rs.getInt("steps_total"),
+                rs.getString("result"),
+                rs.getString("error"),
+                instant(rs, "created_at"),
+                instant(rs, "started_at"),
+                instant(rs, "finished_at"),
+                instant(rs, "updated_at"));
+    }
+
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        Timestamp ts = rs.getTimestamp(column);
+        return ts != null ? ts.toInstant() : null;
+    }
+
+    public enum JobStatus {
+        QUEUED, RUNNING, DONE, FAILED;
+
+        public boolean finished() {
+            return this == DONE || this == FAILED;
+        }
+    }
+
+    /**
+     * @param created false if the submission joined a job already in flight
+     */
+    public record Submission(UUID id, boolean created) {
+    }
+
+    /**
+     * @param stage      current step of a running job: {@code digest}, {@code merge} or {@code report}
+     * @param stepsDone  steps finished within the stage
+     * @param stepsTotal steps of the stage, 0 if unknown
+     */
+    public record ReportJob(UUID id, ReportType type, LocalDate periodStart, LocalDate periodEnd, JobStatus status,
+            String stage, int stepsDone, int stepsTotal, String result, String error, Instant createdAt,
+            Instant startedAt, Instant finishedAt, Instant updatedAt) {
+    }
+}
@@ -2,10 +2,10 @@ package com.touchkiss.mindme.service;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
 import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.AnalysisPriority;
 import com.touchkiss.mindme.repository.UserInterestRepository;
 import com.touchkiss.mindme.domain.UserInterest;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.PromptTemplate;
 import lombok.RequiredArgsConstructor;
@@ -13,9 +13,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,149 +28,89 @@ public class AiAnalysisService {
 
     private final ActivityRecordRepository repository;
     private final UserInterestRepository interestsRepository;
-    private final ChatLanguageModel chatModel;
-    private final VectorSearchService vectorSearchService;
-
-    public String generateDailyReport(LocalDate date) {
-        List<ActivityRecord> records = repository.findAll();
-
-        String activitiesText = records.stream()
-                .filter(r -> r.getVisitTime() != null && r.getVisitTime().toLocalDate().equals(date))
-                .map(r -> String.format("- %s [%s] (Summary: %s)",
-                        r.getVisitTime().toLocalTime(),
-                        r.getTitle(),
-                        r.getContentSummary()))
-                .collect(Collectors.joining("\n"));
-
-        if (activitiesText.isEmpty()) {
-            return "No activities found for " + date;
-        }
-
-        String template = """
-                You are a helpful personal assistant. Your goal is to analyze the user's daily web browsing history and generate a structured daily work report.
-                Focus on:
-                1. Identifying the main tasks worked on (e.g. Coding, Research, Meetings).
-                2. Summarizing key learnings or consumed content.
-                3. Highlighting any specific "Deep Work" sessions based on continuity of topics.
+    private final PromptPacker promptPacker;
+    private final HybridSearchService hybridSearchService;
+    private final LlmResponseCache responseCache;
+    private final SingleFlight singleFlight;
 
-                Input format: List of timestamps, page titles, and short summaries.
-                Output format: Markdown.
-
-                IMPORTANT: Always respond in Chinese (Simplified).
-
-                Here is my activity log for {{date}}:
-                {{activities}}
-                """;
-
-        PromptTemplate promptTemplate = PromptTemplate.from(template);
-        Map<String, Object> variables = new HashMap<>();
-        variables.put("date", date.toString());
-        variables.put("activities", activitiesText);
-
-        Prompt prompt = promptTemplate.apply(variables);
-
-        try {
-            return chatModel.generate(prompt.text());
-        } catch (Exception e) {
-            log.error("Failed to generate report", e);
-            return "Error generating report: " + e.getMessage();
-        }
-    }
+    private static final String INSIGHT_FAILED = "{\"error\": \"Failed to generate insight\"}";
+    private static final int RAG_RECORDS = 5;
+    private static final int RAG_CHARS_PER_RECORD = 2000;
+    private static final int EXPECTED_ANSWER_TOKENS = 800;
+    private static final int EXPECTED_INSIGHT_TOKENS = 300;
 
     public String askQuestion(String question) {
         try {
-            // 1. Retrieve relevant knowledge
-            List<String> relevantDocs = vectorSearchService.searchSimilar(question, 5);
-            String context = String.join("\n\n", relevantDocs);
-
-            if (context.isEmpty()) {
-                return chatModel.generate("Question: " + question + "\n(No context found)");
-            }
-
-            // 2. RAG Prompt
-            String template = """
-                    You are a knowledgeable assistant. Answer the question based on the provided context only.
-                    If the answer is not in the context, say "I don't have enough information in my knowledge base".
-
-                    Context:
-                    {{context}}
-
-                    Question:
-                    {{question}}
-
-                    Answer in Chinese:
-                    """;
-
-            PromptTemplate promptTemplate = PromptTemplate.from(template);
-            Map<String, Object> variables = new HashMap<>();
-            variables.put("context", context);
-            variables.put("question", question);
-
-            Prompt prompt = promptTemplate.apply(variables);
-
-            return chatModel.generate(prompt.text());
-
+            return promptPacker.generate(PromptPacker.Site.ASK, questionPrompt(question), EXPECTED_ANSWER_TOKENS);
         } catch (Exception e) {
             log.error("Failed to answer question", e);
             return "Error: " + e.getMessage();
         }
     }
 
-    public String generatePeriodReport(LocalDate start, LocalDate end, String type) {
-        // Convert LocalDate to ZonedDateTime range
-        var startDateTime = start.atStartOfDay(java.time.ZoneId.systemDefault());
-        var endDateTime = end.plusDays(1).atStartOfDay(java.time.ZoneId.systemDefault());
-
-        List<ActivityRecord> records = repository.findByVisitTimeBetween(startDateTime, endDateTime);
+    /**
+     * {@link #askQuestion} with the answer pushed to {@code onToken} as it is generated.
+     * Failures are thrown rather than returned as text.
+     */
+    public String streamQuestion(String question, Consumer<String> onToken) {
+        return promptPacker.stream(PromptPacker.Site.ASK, questionPrompt(question), EXPECTED_ANSWER_TOKENS, onToken);
+    }
 
-        String activitiesText = records.stream()
-                .map(r -> String.format("- %s [%s] (Summary: %s)",
-                        r.getVisitTime().format(java.time.format.DateTimeFormatter.ofPattern("MM-dd HH:mm")),
-                        r.getTitle(),
-                        r.getContentSummary()))
-                .collect(Collectors.joining("\n"));
+    private String questionPrompt(String question) {
+        // 1. Retrieve relevant knowledge (full-text + vector, fused)
+        var hits = hybridSearchService.search(question, 0, RAG_RECORDS).hits();
+        List<ActivityRecord> records = hybridSearchService.loadRecords(hits);
+        List<PromptPacker.Item> items = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            // Search order is relevance order
+            items.add(new PromptPacker.Item(records.get(i).getUrl(), toContext(records.get(i)), records.size() - i));
+        }
+        String context = promptPacker.pack(PromptPacker.Site.ASK, items, "\n\n").text();
 
-        if (activitiesText.isEmpty()) {
-            return "No activities found for this period.";
+        if (context.isEmpty()) {
+            return "Question: " + question + "\n(No context found)";
         }
 
+        // 2. RAG Prompt
         String template = """
-                You are a helpful personal assistant. Your goal is to generate a structured {{type}} work report based on the user's web browsing history.
+                You are a knowledgeable assistant. Answer the question based on the provided context only.
+                If the answer is not in the context, say "I don't have enough information in my knowledge base".
 
-                Focus on:
-                1. **Key Accomplishments**: What main topics or projects did the user work on?
-                2. **Knowledge Gained**: Summarize the most important articles or pages read.
-                3. **Deep Work Analysis**: Identify periods of focused work vs distraction.
-                4. **Suggestions**: Provide 1-2 suggestions for improving improved productivity or knowledge management.
+                Context:
+                {{context}}
 
-                Input format: List of timestamps, page titles, and short summaries.
-                Output format: Markdown.
+                Question:
+                {{question}}
 
-                IMPORTANT: Always respond in Chinese (Simplified).
-
-                Period: {{start}} to {{end}}
-                Activity Log:
-                {{activities}}
+                Answer in Chinese:
                 """;
 
         PromptTemplate promptTemplate = PromptTemplate.from(template);
         Map<String, Object> variables = new HashMap<>();
-        variables.put("type", type);
-        variables.put("start", start.toString());
-        variables.put("end", end.toString());
-        variables.put("activities", activitiesText);
+        variables.put("context", context);
+        variables.put("question", question);
 
         Prompt prompt = promptTemplate.apply(variables);
+        return prompt.text();
+    }
 
-        try {
-            return chatModel.generate(prompt.text());
-        } catch (Exception e) {
-            log.error("Failed to generate period report", e);
-            return "Error generating report: " + e.getMessage();
-        }
+    private String toContext(ActivityRecord record) {
+        String text = "Title: " + record.getTitle() + "\nURL: " + record.getUrl() + "\n"
+                + (record.getContentSummary() != null ? record.getContentSummary() : "");
+        return text.length() > RAG_CHARS_PER_RECORD ? text.substring(0, RAG_CHARS_PER_RECORD) : text;
     }
 
+    /**
+     * Today's insight as a JSON string. Concurrent requests, e.g. from several new tabs,
+     * share one model call, and the answer is kept briefly per {@code mindme.single-flight}
+     * (flight {@code insight}); a failed answer is not kept.
+     */
     public String generateDailyInsight() {
+        return singleFlight.get(SingleFlight.Flight.INSIGHT, LocalDate.now(), this::dailyInsight,
+                insight -> !INSIGHT_FAILED.equals(insight));
+    }
+
+    private String dailyInsight() {
         // Get today's activities
         var start = LocalDate.now().atStartOfDay(java.time.ZoneId.systemDefault());
         var end = java.time.LocalDateTime.now().atZone(java.time.ZoneId.systemDefault());
@@ -178,13 +121,15 @@ public class AiAnalysisService {
             return "{\"summary\": \"No activity today\", \"suggestions\": []}";
         }
 
-        // Limit to last 20 relevant items to save context/tokens
-        String activitiesText = records.stream()
+        // Repeated titles fold into one line; the most engaging pages fill the budget, newest first
+        List<PromptPacker.Item> items = records.stream()
                 .filter(r -> r.getTitle() != null && !r.getTitle().isBlank())
-                .sorted((a, b) -> b.getVisitTime().compareTo(a.getVisitTime()))
-                .limit(20)
-                .map(r -> String.format("- %s", r.getTitle()))
-                .collect(Collectors.joining("\n"));
+                .sorted(Comparator.comparing(ActivityRecord::getVisitTime).reversed())
+                .map(r -> new PromptPacker.Item(r.getTitle(), String.format("- %s", r.getTitle()),
+                        1 + AnalysisPriority.engagementScore(r.getActiveSeconds(), r.getDurationSeconds(),
+                                r.getScrollDepth(), r.getInteractionCount(), r.getContentSummary()) / 100.0))
+                .toList();
+        String activitiesText = promptPacker.pack(PromptPacker.Site.INSIGHT, items, "\n").text();
 
         String template = """
                 Analyze the user's browsing history for today and provide predictions on what they might want to explore next.
@@ -216,11 +161,12 @@ public class AiAnalysisService {
         Prompt prompt = promptTemplate.apply(variables);
 
         try {
-            String rawResponse = chatModel.generate(prompt.text());
+            String rawResponse = promptPacker.generate(PromptPacker.Site.INSIGHT, prompt.text(),
+                    EXPECTED_INSIGHT_TOKENS);
             return cleanJson(rawResponse);
         } catch (Exception e) {
             log.error("Failed to generate insight", e);
-            return "{\"error\": \"Failed to generate insight\"}";
+            return INSIGHT_FAILED;
         }
     }
 
@@ -241,6 +187,10 @@ public class AiAnalysisService {
         return response.trim();
     }
 
+    /**
+     * Score one batch of titles; callers split larger lists with
+     * {@link PromptPacker#split} under {@link PromptPacker.Site#RELEVANCE}.
+     */
     public Map<String, Integer> scoreRelevance(List<String> titles) {
         List<UserInterest> interests = interestsRepository.findAllByOrderByWeightDesc();
         if (interests.isEmpty()) {
@@ -274,10 +224,18 @@ public class AiAnalysisService {
         Prompt prompt = promptTemplate.apply(variables);
 
         try {
-            String json = cleanJson(chatModel.generate(prompt.text()));
+            String cached = responseCache.get(LlmResponseCache.CallSite.RELEVANCE, prompt.text());
+            String json = cleanJson(cached != null ? cached
+                    : promptPacker.generate(PromptPacker.Site.RELEVANCE, prompt.text(), 20 * titles.size()));
             ObjectMapper mapper = new ObjectMapper();
-            return mapper.readValue(json, new com.fasterxml.jackson.core.type.TypeReference<Map<String, Integer>>() {
-            });
+            Map<String, Integer> scores = mapper.readValue(json,
+                    new com.fasterxml.jackson.core.type.TypeReference<Map<String, Integer>>() {
+                    });
+            if (cached == null) {
+                // Only answers that parsed are worth replaying
+                responseCache.put(LlmResponseCache.CallSite.RELEVANCE, prompt.text(), json, -1);
+            }
+            return scores;
         } catch (Exception e) {
             log.error("Failed to score relevance", e);
             return new HashMap<>();
@@ -0,0 +1,157 @@
+package com.touchkiss.mindme.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.domain.ImportCheckpoint;
+import com.touchkiss.mindme.repository.ImportCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming NDJSON importer for historical activity backfills.
+ * <p>
+ * Records are parsed one at a time with the Jackson streaming parser and committed in
+ * fixed-size chunks together with a checkpoint row, so memory stays bounded by the
+ * chunk size and a failed import can be re-posted with the same import ID to resume
+ * after the last committed chunk.
+ */
+@Slf4j
+@Service
+public class BulkImportService {
+
+    private final KnowledgeService knowledgeService;
+    private final ImportCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    public BulkImportService(
+            KnowledgeService knowledgeService,
+            ImportCheckpointRepository checkpointRepository,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            @Value("${mindme.ingest.import.chunk-size:500}") int chunkSize) {
+        this.knowledgeService = knowledgeService;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    public Optional<ImportCheckpoint> getCheckpoint(String importId) {
+        return checkpointRepository.findById(importId);
+    }
+
+    /**
+     * Import an NDJSON stream, reporting progress after every committed chunk.
+     *
+     * @param gzip whether the stream is gzip-compressed; also auto-detected from the magic bytes
+     */
+    public ImportProgress importNdjson(String importId, InputStream body, boolean gzip,
+            Consumer<ImportProgress> progress) {
+        ImportCheckpoint checkpoint = checkpointRepository.findById(importId).orElseGet(() -> {
+            ImportCheckpoint created = new ImportCheckpoint();
+            created.setImportId(importId);
+            return created;
+        });
+        if (checkpoint.getStatus() == ImportCheckpoint.Status.COMPLETED) {
+            ImportProgress done = ImportProgress.of(checkpoint, 0);
+            progress.accept(done);
+            return done;
+        }
+        long resumeFrom = checkpoint.getCommittedRecords();
+        checkpoint.setStatus(ImportCheckpoint.Status.RUNNING);
+        checkpoint.setLastError(null);
+        checkpoint = checkpointRepository.save(checkpoint);
+
+        if (resumeFrom > 0) {
+            log.info("Resuming import {} after {} committed records", importId, resumeFrom);
+        }
+
+        long position = 0;
+        long skipped = 0;
+        List<ActivityRecord> chunk = new ArrayList<>(chunkSize);
+
+        try (InputStream in = decode(body, gzip);
+                JsonParser parser = objectMapper.getFactory().createParser(in);
+                MappingIterator<ActivityRecord> records = objectMapper.readValues(parser, ActivityRecord.class)) {
+            while (records.hasNextValue()) {
+                ActivityRecord record = records.nextValue();
+                position++;
+                if (position <= resumeFrom) {
+                    skipped++;
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() >= chunkSize) {
+                    checkpoint = commitChunk(checkpoint, chunk);
+                    progress.accept(ImportProgress.of(checkpoint, skipped));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                checkpoint = commitChunk(checkpoint, chunk);
+            }
+            checkpoint.setStatus(ImportCheckpoint.Status.COMPLETED);
+            checkpoint = checkpointRepository.save(checkpoint);
+            log.info("Import {} completed: {} records committed", importId, checkpoint.getCommittedRecords());
+        } catch (Exception e) {
+            log.error("Import {} failed after {} committed records: {}", importId,
+                    checkpoint.getCommittedRecords(), e.getMessage());
+            checkpoint.setStatus(ImportCheckpoint.Status.FAILED);
+            checkpoint.setLastError(e.getMessage());
+            checkpoint = checkpointRepository.save(checkpoint);
+        }
+
+        ImportProgress result = ImportProgress.of(checkpoint, skipped);
+        progress.accept(result);
+        return result;
+    }
+
+    private ImportCheckpoint commitChunk(ImportCheckpoint checkpoint, List<ActivityRecord> chunk) {
+        long before = checkpoint.getCommittedRecords();
+        ImportCheckpoint committed;
+        try {
+            committed = transactionTemplate.execute(status -> {
+                knowledgeService.saveActivities(chunk);
+                checkpoint.setCommittedRecords(before + chunk.size());
+                return checkpointRepository.save(checkpoint);
+            });
+        } catch (RuntimeException e) {
+            // Rolled back: keep the checkpoint at the last chunk that actually committed
+            checkpoint.setCommittedRecords(before);
+            throw e;
+        }
+        return committed;
+    }
+
+    private InputStream decode(InputStream body, boolean gzip) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(body);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        boolean magic = b1 == 0x1f && b2 == 0x8b;
+        return gzip || magic ? new GZIPInputStream(in) : in;
+    }
+
+    public record ImportProgress(String importId, long committed, long skipped, String status, String error) {
+        static ImportProgress of(ImportCheckpoint checkpoint, long skipped) {
+            return new ImportProgress(checkpoint.getImportId(), checkpoint.getCommittedRecords(), skipped,
+                    checkpoint.getStatus().name(), checkpoint.getLastError());
+        }
+    }
+}
@@ -3,12 +3,10 @@ package com.touchkiss.mindme.service;
 import com.touchkiss.mindme.controller.CognitionController.HorizonCard;
 import com.touchkiss.mindme.domain.UserInterest;
 import com.touchkiss.mindme.repository.UserInterestRepository;
-import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.input.Prompt;
 import dev.langchain4j.model.input.PromptTemplate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -16,9 +14,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -26,18 +24,40 @@ import java.util.stream.Collectors;
 public class CognitiveHorizonService {
 
     private final UserInterestRepository interestRepository;
-    private final ChatLanguageModel chatModel;
+    private final PromptPacker promptPacker;
+    private final LlmResponseCache responseCache;
+    private final SingleFlight singleFlight;
 
-    // Cache the result for 4 hours to avoid spamming the AI and keeps the "Daily
-    // Spark" feel
-    @Cacheable(value = "cognitiveHorizon", key = "'daily'")
+    private static final int EXPECTED_CARDS_TOKENS = 600;
+
+    /**
+     * Concurrent requests share one model call, and the cards are kept for a few hours
+     * ({@code mindme.single-flight}, flight {@code horizon}) to avoid spamming the AI and
+     * keep the "Daily Spark" feel. Fallback cards are never kept.
+     */
     public List<HorizonCard> generateHorizon() {
+        List<HorizonCard> cards = singleFlight.get(SingleFlight.Flight.HORIZON, "daily", this::horizonFromModel,
+                Objects::nonNull);
+        if (cards != null) {
+            return cards;
+        }
+        log.error("Failed to generate cognitive horizon, returning fallback cards.");
+        return getFallbackCards();
+    }
+
+    /**
+     * @return the parsed cards, or null if the model gave none after retries
+     */
+    private List<HorizonCard> horizonFromModel() {
         try {
             List<UserInterest> interests = interestRepository.findTop10ByOrderByWeightDesc();
 
             String interestStr = (interests == null || interests.isEmpty())
                     ? "通用知识, 个人成长"
-                    : interests.stream().map(UserInterest::getCategory).collect(Collectors.joining(", "));
+                    : promptPacker.pack(PromptPacker.Site.HORIZON, interests.stream()
+                            .map(i -> new PromptPacker.Item(i.getCategory(), i.getCategory(),
+                                    i.getWeight() != null ? i.getWeight() : 0))
+                            .toList(), ", ").text();
 
             log.info("Generating cognitive horizon for interests: {}", interestStr);
 
@@ -69,15 +89,25 @@ public class CognitiveHorizonService {
             variables.put("interests", interestStr);
             Prompt prompt = promptTemplate.apply(variables);
 
+            String cached = responseCache.get(LlmResponseCache.CallSite.HORIZON, prompt.text());
+            if (cached != null) {
+                List<HorizonCard> cards = parseCards(cached);
+                if (!cards.isEmpty()) {
+                    return cards;
+                }
+            }
+
             int maxRetries = 2;
             int retryCount = 0;
 
             while (retryCount <= maxRetries) {
                 try {
-                    String response = chatModel.generate(prompt.text());
+                    String response = promptPacker.generate(PromptPacker.Site.HORIZON, prompt.text(),
+                            EXPECTED_CARDS_TOKENS);
                     if (response != null && !response.isBlank()) {
                         List<HorizonCard> cards = parseCards(response);
                         if (!cards.isEmpty()) {
+                            responseCache.put(LlmResponseCache.CallSite.HORIZON, prompt.text(), response, -1);
                             return cards;
                         }
                     }
@@ -90,9 +120,7 @@ public class CognitiveHorizonService {
         } catch (Exception e) {
             log.error("Fatal error in generateHorizon: {}", e.getMessage(), e);
         }
-
-        log.error("Failed to generate cognitive horizon, returning fallback cards.");
-        return getFallbackCards();
+        return null;
     }
 
     private List<HorizonCard> parseCards(String response) {
@@ -0,0 +1,172 @@
+package com.touchkiss.mindme.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of embeddings keyed by model name plus the SHA-256 of the segment text.
+ * <p>
+ * The in-process tier is a size-bounded LRU of raw {@code float[]} vectors; the Redis
+ * tier stores the same vectors as base64 little-endian floats so they survive restarts
+ * and are shared between instances. Redis failures degrade to a miss.
+ */
+@Slf4j
+@Service
+public class EmbeddingCache {
+
+    private static final String KEY_PREFIX = "emb:";
+
+    private final RedisService redisService;
+    private final String modelName;
+    private final long redisTtlHours;
+    private final Map<String, float[]> local;
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedChars = new AtomicLong();
+
+    public EmbeddingCache(
+            RedisService redisService,
+            @Value("${langchain4j.open-ai.embedding-model.model-name:default}") String modelName,
+            @Value("${mindme.embedding-cache.local-max-entries:10000}") int localMaxEntries,
+            @Value("${mindme.embedding-cache.redis-ttl-hours:720}") long redisTtlHours) {
+        this.redisService = redisService;
+        this.modelName = modelName;
+        this.redisTtlHours = redisTtlHours;
+        this.local = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > localMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Look up embeddings for the given texts.
+     *
+     * @return a list aligned with {@code texts}, holding {@code null} for misses
+     */
+    public List<Embedding> getAll(List<String> texts) {
+        List<String> keys = texts.stream().map(this::key).toList();
+        List<Embedding> result = new ArrayList<>(texts.size());
+        List<Integer> remoteIdx = new ArrayList<>();
+
+        synchronized (local) {
+            for (int i = 0; i < keys.size(); i++) {
+                float[] vector = local.get(keys.get(i));
+                if (vector != null) {
+                    localHits.incrementAndGet();
+                    savedChars.addAndGet(texts.get(i).length());
+                    result.add(new Embedding(vector));
+                } else {
+                    result.add(null);
+                    remoteIdx.add(i);
+                }
+            }
+        }
+        if (remoteIdx.isEmpty()) {
+            return result;
+        }
+
+        try {
+            List<String> values = redisService.multiGet(remoteIdx.stream().map(keys::get).toList());
+            for (int j = 0; j < remoteIdx.size(); j++) {
+                String value = values.get(j);
+                if (value == null) {
+                    continue;
+                }
+                int i = remoteIdx.get(j);
+                float[] vector = decode(value);
+                result.set(i, new Embedding(vector));
+                redisHits.incrementAndGet();
+                savedChars.addAndGet(texts.get(i).length());
+                synchronized (local) {
+                    local.put(keys.get(i), vector);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Embedding cache Redis lookup failed: {}", e.getMessage());
+        }
+
+        misses.addAndGet(result.stream().filter(Objects::isNull).count());
+        return result;
+    }
+
+    public Embedding get(String text) {
+        return getAll(List.of(text)).get(0);
+    }
+
+    public void put(String text, Embedding embedding) {
+        String key = key(text);
+        float[] vector = embedding.vector();
+        synchronized (local) {
+            local.put(key, vector);
+        }
+        try {
+            redisService.set(key, encode(vector), redisTtlHours, TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.debug("Embedding cache Redis write failed: {}", e.getMessage());
+        }
+    }
+
+    public CacheStats stats() {
+        int size;
+        synchronized (local) {
+            size = local.size();
+        }
+        long hits = localHits.get() + redisHits.get();
+        long total = hits + misses.get();
+        return new CacheStats(size, localHits.get(), redisHits.get(), misses.get(),
+                total == 0 ? 0.0 : (double) hits / total,
+                // Rough token estimate at ~4 characters per token
+                savedChars.get() / 4);
+    }
+
+    String key(String text) {
+        return KEY_PREFIX + modelName + ":" + sha256(text);
+    }
+
+    static String encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    static float[] decode(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record CacheStats(int localEntries, long localHits, long redisHits, long misses, double hitRate,
+            long estimatedTokensSaved) {
+    }
+}
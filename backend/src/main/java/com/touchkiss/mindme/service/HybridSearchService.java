@@ -0,0 +1,167 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Hybrid retrieval: runs Postgres full-text search and vector ANN search in parallel
+ * and merges them with reciprocal rank fusion (score = sum of 1 / (k + rank)).
+ */
+@Slf4j
+@Service
+public class HybridSearchService {
+
+    // Candidates fetched per leg are capped so deep pages stay cheap
+    private static final int MAX_CANDIDATES = 200;
+    private static final int MAX_PAGE_SIZE = 100;
+    // Segments per record are collapsed, so over-fetch the vector leg
+    private static final int SEGMENTS_PER_RECORD = 3;
+
+    private final ActivityRecordRepository repository;
+    private final VectorSearchService vectorSearchService;
+    private final int rrfK;
+    private final ExecutorService executor;
+
+    public HybridSearchService(
+            ActivityRecordRepository repository,
+            VectorSearchService vectorSearchService,
+            @Value("${mindme.search.rrf-k:60}") int rrfK,
+            @Value("${mindme.search.concurrency:4}") int concurrency) {
+        this.repository = repository;
+        this.vectorSearchService = vectorSearchService;
+        this.rrfK = rrfK;
+        // Each search runs its two legs on this pool
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Each leg returns at most {@value #MAX_CANDIDATES} records, so results end after
+     * the fused candidates of both legs and later pages are empty. {@code page} and
+     * {@code size} are clamped to {@code >= 0} and {@code 1..100}.
+     */
+    public HybridSearchResult search(String query, int page, int size) {
+        page = Math.max(0, page);
+        size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int depth = (int) Math.min(MAX_CANDIDATES, (page + 1L) * size * 2);
+
+        CompletableFuture<Leg> lexical = CompletableFuture.supplyAsync(
+                () -> timed("lexical", () -> repository.searchRankedIds(query, depth)), executor);
+        CompletableFuture<Leg> vector = CompletableFuture.supplyAsync(
+                () -> timed("vector", () -> vectorRecordIds(query, depth)), executor);
+
+        Leg lexicalLeg = lexical.join();
+        Leg vectorLeg = vector.join();
+
+        long fusionStart = System.nanoTime();
+        List<Hit> fused = fuse(lexicalLeg.ids(), vectorLeg.ids(), rrfK);
+        int from = (int) Math.min((long) page * size, fused.size());
+        int to = Math.min(from + size, fused.size());
+        long fusionMs = (System.nanoTime() - fusionStart) / 1_000_000;
+
+        log.debug("Hybrid search '{}': lexical {} hits in {} ms, vector {} hits in {} ms", query,
+                lexicalLeg.ids().size(), lexicalLeg.ms(), vectorLeg.ids().size(), vectorLeg.ms());
+
+        return new HybridSearchResult(fused.subList(from, to), fused.size(), page, size,
+                new StageTimings(lexicalLeg.ms(), vectorLeg.ms(), fusionMs));
+    }
+
+    /**
+     * Load the records for a page of hits, preserving fused order.
+     */
+    public List<ActivityRecord> loadRecords(List<Hit> hits) {
+        Map<UUID, ActivityRecord> byId = repository.findAllById(hits.stream().map(Hit::recordId).toList())
+                .stream()
+                .collect(Collectors.toMap(ActivityRecord::getId, Function.identity()));
+        return hits.stream()
+                .map(hit -> byId.get(hit.recordId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    static List<Hit> fuse(List<UUID> lexicalIds, List<UUID> vectorIds, int k) {
+        Map<UUID, double[]> scores = new LinkedHashMap<>();
+        Map<UUID, int[]> ranks = new LinkedHashMap<>();
+        accumulate(lexicalIds, 0, k, scores, ranks);
+        accumulate(vectorIds, 1, k, scores, ranks);
+
+        List<Hit> hits = new ArrayList<>(scores.size());
+        scores.forEach((id, score) -> {
+            int[] r = ranks.get(id);
+            hits.add(new Hit(id, score[0], r[0] > 0 ? r[0] : null, r[1] > 0 ? r[1] : null));
+        });
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed());
+        return hits;
+    }
+
+    private static void accumulate(List<UUID> ids, int leg, int k, Map<UUID, double[]> scores,
+            Map<UUID, int[]> ranks) {
+        int rank = 0;
+        for (UUID id : ids) {
+            rank++;
+            scores.computeIfAbsent(id, x -> new double[1])[0] += 1.0 / (k + rank);
+            ranks.computeIfAbsent(id, x -> new int[2])[leg] = rank;
+        }
+    }
+
+    private List<UUID> vectorRecordIds(String query, int depth) {
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (VectorSearchService.SegmentMatch match : vectorSearchService.searchSegments(query,
+                depth * SEGMENTS_PER_RECORD)) {
+            if (match.recordId() != null) {
+                ids.add(match.recordId());
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private Leg timed(String name, Supplier<List<UUID>> leg) {
+        long start = System.nanoTime();
+        List<UUID> ids;
+        try {
+            ids = leg.get();
+        } catch (Exception e) {
+            // One leg failing (e.g. embedding provider down) degrades to the other
+            log.warn("Hybrid search {} leg failed: {}", name, e.getMessage());
+            ids = List.of();
+        }
+        return new Leg(ids, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private record Leg(List<UUID> ids, long ms) {
+    }
+
+    public record Hit(UUID recordId, double score, Integer lexicalRank, Integer vectorRank) {
+    }
+
+    public record StageTimings(long lexicalMs, long vectorMs, long fusionMs) {
+    }
+
+    public record HybridSearchResult(List<Hit> hits, int totalCandidates, int page, int size,
+            StageTimings timings) {
+    }
+}
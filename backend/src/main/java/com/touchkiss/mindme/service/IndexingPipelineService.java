@@ -0,0 +1,209 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous embedding pipeline.
+ * <p>
+ * Ingest only enqueues a row in {@code index_jobs}; a poller claims due jobs with
+ * {@code FOR UPDATE SKIP LOCKED} and hands them to a fixed worker pool whose size caps
+ * concurrent calls to the embedding provider. Failed batches are retried with
+ * exponential backoff until {@code max-attempts}, after which the job is parked as FAILED.
+ */
+@Slf4j
+@Service
+public class IndexingPipelineService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ActivityRecordRepository activityRepository;
+    private final VectorSearchService vectorSearchService;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final long leaseMs;
+
+    private final ExecutorService workers;
+    private final Semaphore slots;
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public IndexingPipelineService(
+            JdbcTemplate jdbcTemplate,
+            ActivityRecordRepository activityRepository,
+            VectorSearchService vectorSearchService,
+            @Value("${mindme.indexing.concurrency:2}") int concurrency,
+            @Value("${mindme.indexing.batch-size:16}") int batchSize,
+            @Value("${mindme.indexing.max-attempts:6}") int maxAttempts,
+            @Value("${mindme.indexing.backoff-base-ms:30000}") long backoffBaseMs,
+            @Value("${mindme.indexing.lease-ms:600000}") long leaseMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.activityRepository = activityRepository;
+        this.vectorSearchService = vectorSearchService;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.backoffBaseMs = backoffBaseMs;
+        this.leaseMs = leaseMs;
+        this.workers = Executors.newFixedThreadPool(concurrency);
+        this.slots = new Semaphore(concurrency);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Queue records for (re-)indexing. Joins the caller's transaction, so the job is
+     * committed atomically with the record itself.
+     */
+    public void enqueue(Collection<UUID> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = recordIds.stream().distinct().map(id -> new Object[] { id }).toList();
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO index_jobs (record_id) VALUES (?)
+                ON CONFLICT (record_id) DO UPDATE SET
+                    status = 'PENDING', attempts = 0, next_attempt_at = CURRENT_TIMESTAMP,
+                    claimed_at = NULL, last_error = NULL
+                """, rows);
+    }
+
+    @Scheduled(fixedDelayString = "${mindme.indexing.poll-interval-ms:1000}")
+    public void poll() {
+        releaseExpiredLeases();
+        while (slots.tryAcquire()) {
+            List<Job> jobs;
+            try {
+                jobs = claim();
+            } catch (Exception e) {
+                slots.release();
+                log.error("Failed to claim index jobs: {}", e.getMessage());
+                return;
+            }
+            if (jobs.isEmpty()) {
+                slots.release();
+                return;
+            }
+            workers.execute(() -> {
+                try {
+                    process(jobs);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    private List<Job> claim() {
+        return jdbcTemplate.query("""
+                UPDATE index_jobs SET status = 'RUNNING', claimed_at = CURRENT_TIMESTAMP, attempts = attempts + 1
+                WHERE id IN (
+                    SELECT id FROM index_jobs
+                    WHERE status = 'PENDING' AND next_attempt_at <= CURRENT_TIMESTAMP
+                    ORDER BY next_attempt_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING id, record_id, attempts, claimed_at
+                """,
+                (rs, i) -> new Job(rs.getLong("id"), rs.getObject("record_id", UUID.class), rs.getInt("attempts"),
+                        rs.getTimestamp("claimed_at")),
+                batchSize);
+    }
+
+    private void process(List<Job> jobs) {
+        Map<UUID, Job> byRecord = new LinkedHashMap<>();
+        jobs.forEach(job -> byRecord.put(job.recordId(), job));
+        try {
+            List<ActivityRecord> records = activityRepository.findAllById(byRecord.keySet());
+            vectorSearchService.indexActivities(records);
+            // Records deleted since enqueue simply drop out; completing their job is correct
+            for (Job job : jobs) {
+                complete(job);
+            }
+            indexed.addAndGet(records.size());
+        } catch (Exception e) {
+            log.warn("Indexing batch of {} failed: {}", jobs.size(), e.getMessage());
+            for (Job job : jobs) {
+                reschedule(job, e);
+            }
+        }
+    }
+
+    private void complete(Job job) {
+        // A job re-enqueued while running has claimed_at reset, so it survives this delete
+        jdbcTemplate.update("DELETE FROM index_jobs WHERE id = ? AND status = 'RUNNING' AND claimed_at = ?",
+                job.id(), job.claimedAt());
+    }
+
+    private void reschedule(Job job, Exception cause) {
+        String error = cause.getMessage();
+        if (job.attempts() >= maxAttempts) {
+            failed.incrementAndGet();
+            log.error("Giving up indexing record {} after {} attempts", job.recordId(), job.attempts());
+            jdbcTemplate.update("""
+                    UPDATE index_jobs SET status = 'FAILED', last_error = ?
+                    WHERE id = ? AND status = 'RUNNING' AND claimed_at = ?
+                    """, error, job.id(), job.claimedAt());
+            return;
+        }
+        retried.incrementAndGet();
+        long delay = backoffBaseMs * (1L << Math.min(job.attempts() - 1, 16));
+        jdbcTemplate.update("""
+                UPDATE index_jobs SET status = 'PENDING', last_error = ?,
+                    next_attempt_at = CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond'
+                WHERE id = ? AND status = 'RUNNING' AND claimed_at = ?
+                """, error, delay, job.id(), job.claimedAt());
+    }
+
+    private void releaseExpiredLeases() {
+        int released = jdbcTemplate.update("""
+                UPDATE index_jobs SET status = 'PENDING', claimed_at = NULL
+                WHERE status = 'RUNNING' AND claimed_at < CURRENT_TIMESTAMP - ? * INTERVAL '1 millisecond'
+                """, leaseMs);
+        if (released > 0) {
+            log.warn("Released {} index jobs with expired leases", released);
+        }
+    }
+
+    public PipelineStats stats() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT status, COUNT(*) AS total FROM index_jobs GROUP BY status",
+                rs -> {
+                    counts.put(rs.getString("status"), rs.getLong("total"));
+                });
+        return new PipelineStats(
+                counts.getOrDefault("PENDING", 0L),
+                counts.getOrDefault("RUNNING", 0L),
+                counts.getOrDefault("FAILED", 0L),
+                indexed.get(), retried.get(), failed.get());
+    }
+
+    private record Job(long id, UUID recordId, int attempts, Timestamp claimedAt) {
+    }
+
+    public record PipelineStats(long pending, long running, long failedJobs, long indexed, long retries,
+            long givenUp) {
+    }
+}
@@ -0,0 +1,270 @@
+package com.touchkiss.mindme.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.touchkiss.mindme.domain.ActivityRecord;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for activity ingestion.
+ * <p>
+ * Incoming records are appended to the {@code ingest_journal} staging table and
+ * acknowledged immediately; a scheduled drain moves them into
+ * {@code activity_records} in micro-batches. Journal rows are deleted in the same
+ * transaction as the upsert, so a crash never loses or double-applies a batch. When a
+ * batch fails, its entries are drained one by one and any entry that still fails is moved
+ * to {@code ingest_dead_letters} with its error, so one bad record cannot block the
+ * journal.
+ */
+@Slf4j
+@Service
+public class IngestBufferService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final KnowledgeService knowledgeService;
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+    private final long capacity;
+    private final int batchSize;
+    private final int maxBatchesPerFlush;
+    private final long flushIntervalMs;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private volatile ZonedDateTime lastFlush;
+
+    public IngestBufferService(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            KnowledgeService knowledgeService,
+            ObjectMapper objectMapper,
+            @Value("${mindme.ingest.buffer.enabled:true}") boolean enabled,
+            @Value("${mindme.ingest.buffer.capacity:20000}") long capacity,
+            @Value("${mindme.ingest.buffer.batch-size:200}") int batchSize,
+            @Value("${mindme.ingest.buffer.max-batches-per-flush:10}") int maxBatchesPerFlush,
+            @Value("${mindme.ingest.buffer.flush-interval-ms:2000}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.knowledgeService = knowledgeService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxBatchesPerFlush = maxBatchesPerFlush;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    void loadDepth() {
+        if (!enabled) {
+            return;
+        }
+        Long pending = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ingest_journal", Long.class);
+        depth.set(pending != null ? pending : 0);
+        if (depth.get() > 0) {
+            log.info("Ingest journal has {} pending records from a previous run", depth.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append records to the journal.
+     *
+     * @return false if the buffer is full and the caller should retry later
+     */
+    public boolean offer(List<ActivityRecord> records) {
+        int size = records.size();
+        long reserved = depth.addAndGet(size);
+        if (reserved > capacity) {
+            depth.addAndGet(-size);
+            rejected.addAndGet(size);
+            return false;
+        }
+
+        try {
+            List<Object[]> rows = new ArrayList<>(size);
+            for (ActivityRecord record : records) {
+                rows.add(new Object[] { objectMapper.writeValueAsString(record) });
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO ingest_journal (payload) VALUES (?::jsonb)", rows);
+        } catch (Exception e) {
+            depth.addAndGet(-size);
+            throw new IllegalStateException("Failed to append to ingest journal", e);
+        }
+
+        accepted.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * Seconds a rejected client should wait, based on how many flushes it takes to
+     * drain back below capacity.
+     */
+    public long retryAfterSeconds() {
+        long perFlush = (long) batchSize * maxBatchesPerFlush;
+        long flushes = Math.max(1, (depth.get() - capacity / 2 + perFlush - 1) / perFlush);
+        return Math.min(60, Math.max(1, flushes * flushIntervalMs / 1000));
+    }
+
+    @Scheduled(fixedDelayString = "${mindme.ingest.buffer.flush-interval-ms:2000}")
+    public void flush() {
+        if (!enabled || depth.get() <= 0) {
+            return;
+        }
+        for (int i = 0; i < maxBatchesPerFlush; i++) {
+            int count = drainBatch();
+            if (count < batchSize) {
+                break;
+            }
+        }
+        lastFlush = ZonedDateTime.now();
+    }
+
+    private int drainBatch() {
+        List<Long> ids = new ArrayList<>();
+        List<ActivityRecord> batch = new ArrayList<>();
+        Integer claimed;
+        try {
+            claimed = transactionTemplate.execute(status -> {
+                ids.clear();
+                batch.clear();
+                List<JournalEntry> entries = jdbcTemplate.query(
+                        "SELECT id, payload FROM ingest_journal ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED",
+                        (rs, i) -> new JournalEntry(rs.getLong("id"), rs.getString("payload")),
+                        batchSize);
+                if (entries.isEmpty()) {
+                    return 0;
+                }
+                for (JournalEntry entry : entries) {
+                    ids.add(entry.id());
+                    batch.add(read(entry));
+                }
+                knowledgeService.saveActivities(batch);
+                jdbcTemplate.update("DELETE FROM ingest_journal WHERE id = ANY(?)",
+                        ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+                return ids.size();
+            });
+        } catch (Exception e) {
+            if (ids.isEmpty() || isTransient(e)) {
+                log.error("Failed to drain ingest journal, will retry: {}", e.getMessage());
+                return 0;
+            }
+            log.warn("Failed to drain {} ingest journal entries as a batch, draining them one by one: {}",
+                    ids.size(), e.getMessage());
+            return drainEach(ids);
+        }
+        if (claimed == null || claimed == 0) {
+            return 0;
+        }
+        depth.addAndGet(-claimed);
+        drained.addAndGet(batch.size());
+        return claimed;
+    }
+
+    /**
+     * Drain entries of a failed batch in a transaction each; an entry that fails on its own
+     * is moved to the dead letters. Stops at a transient failure and leaves the rest for the
+     * next flush.
+     *
+     * @return entries taken off the journal
+     */
+    private int drainEach(List<Long> ids) {
+        int handled = 0;
+        for (Long id : ids) {
+            try {
+                Integer saved = transactionTemplate.execute(status -> {
+                    List<JournalEntry> entries = jdbcTemplate.query(
+                            "SELECT id, payload FROM ingest_journal WHERE id = ? FOR UPDATE SKIP LOCKED",
+                            (rs, i) -> new JournalEntry(rs.getLong("id"), rs.getString("payload")),
+                            id);
+                    if (entries.isEmpty()) {
+                        return 0;
+                    }
+                    knowledgeService.saveActivities(List.of(read(entries.get(0))));
+                    jdbcTemplate.update("DELETE FROM ingest_journal WHERE id = ?", id);
+                    return 1;
+                });
+                if (saved != null && saved > 0) {
+                    drained.incrementAndGet();
+                    handled++;
+                }
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    log.error("Failed to drain ingest journal entry {}, will retry: {}", id, e.getMessage());
+                    break;
+                }
+                handled += deadLetter(id, e);
+            }
+        }
+        depth.addAndGet(-handled);
+        return handled;
+    }
+
+    private int deadLetter(long id, Exception cause) {
+        String error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        int moved = jdbcTemplate.update("""
+                WITH moved AS (DELETE FROM ingest_journal WHERE id = ? RETURNING id, payload, created_at)
+                INSERT INTO ingest_dead_letters (journal_id, payload, error, journaled_at)
+                SELECT id, payload, ?, created_at FROM moved
+                """, id, error);
+        if (moved > 0) {
+            deadLettered.incrementAndGet();
+            log.error("Moved ingest journal entry {} to the dead letters: {}", id, error);
+        }
+        return moved;
+    }
+
+    private ActivityRecord read(JournalEntry entry) {
+        try {
+            return objectMapper.readValue(entry.payload(), ActivityRecord.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unreadable ingest journal entry " + entry.id() + ": " + e.getMessage(),
+                    e);
+        }
+    }
+
+    /**
+     * Failures worth retrying as they are, such as a lost connection or a deadlock, rather
+     * than blaming the records.
+     */
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientDataAccessException || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    public BufferStats stats() {
+        return new BufferStats(enabled, depth.get(), capacity, accepted.get(), drained.get(), rejected.get(),
+                deadLettered.get(), lastFlush);
+    }
+
+    private record JournalEntry(long id, String payload) {
+    }
+
+    /**
+     * @param deadLettered entries moved to {@code ingest_dead_letters} since startup
+     */
+    public record BufferStats(boolean enabled, long depth, long capacity, long accepted, long drained,
+            long rejected, long deadLettered, ZonedDateTime lastFlush) {
+    }
+}
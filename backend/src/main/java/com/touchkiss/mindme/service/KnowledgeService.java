@@ -2,11 +2,25 @@ package com.touchkiss.mindme.service;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
 import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.ActivityRecordRepositoryCustom.UpsertedRow;
+import com.touchkiss.mindme.repository.DailyReportRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -14,40 +28,91 @@ import java.util.List;
 public class KnowledgeService {
 
     private final ActivityRecordRepository repository;
-    private final VectorSearchService vectorSearchService;
+    private final IndexingPipelineService indexingPipelineService;
+    private final DailyReportRepository reportRepository;
 
-    public void saveActivities(List<ActivityRecord> records) {
-        List<ActivityRecord> toSave = new java.util.ArrayList<>();
+    /**
+     * Bulk ingest path: resolves all external IDs with one query, then writes every
+     * record through multi-row upserts instead of a find/save round trip per record.
+     * Records sharing an external ID within one call are the same page seen more than
+     * once; only the last of them is written. Vector indexing is only enqueued here; the
+     * pipeline embeds asynchronously.
+     */
+    @Transactional
+    public IngestResult saveActivities(List<ActivityRecord> records) {
+        if (records == null || records.isEmpty()) {
+            return new IngestResult(0, 0);
+        }
+
+        List<String> externalIds = records.stream()
+                .map(ActivityRecord::getExternalId)
+                .filter(Objects::nonNull)
+                .filter(id -> !id.isBlank())
+                .distinct()
+                .collect(Collectors.toList());
+
+        // An update may move a record to another day; its old date changes too
+        Map<String, UUID> existingIds = repository.findIdsByExternalIds(externalIds);
+        Set<LocalDate> touchedDates = new HashSet<>(
+                reportRepository.findVisitDates(List.copyOf(existingIds.values()), ZoneId.systemDefault()));
 
+        // Last record per external ID wins, at the position of its first occurrence
+        Map<String, ActivityRecord> byExternalId = new LinkedHashMap<>();
+        List<ActivityRecord> distinct = new ArrayList<>(records.size());
         for (ActivityRecord record : records) {
-            // If record has external ID, check for existing and update instead of insert
-            if (record.getExternalId() != null && !record.getExternalId().isBlank()) {
-                var existing = repository.findByExternalId(record.getExternalId());
-                if (existing.isPresent()) {
-                    // Merge: update existing record with new content
-                    ActivityRecord existingRecord = existing.get();
-                    existingRecord.setContentSummary(record.getContentSummary());
-                    existingRecord.setTitle(record.getTitle());
-                    existingRecord.setInteractionCount(record.getInteractionCount());
-                    existingRecord.setVisitTime(record.getVisitTime());
-                    existingRecord.setSearchQuery(record.getSearchQuery());
-                    existingRecord.setAnalyzed(false); // Mark for re-analysis
-                    toSave.add(existingRecord);
-                    log.info("Updated existing activity with external ID: {}", record.getExternalId());
-                    continue;
-                }
+            if (record.getExternalId() != null && record.getExternalId().isBlank()) {
+                record.setExternalId(null);
+            }
+            record.setId(UUID.randomUUID());
+            record.setAnalyzed(false);
+            if (record.getExternalId() == null) {
+                distinct.add(record);
+            } else {
+                byExternalId.put(record.getExternalId(), record);
             }
-            toSave.add(record);
         }
+        distinct.addAll(byExternalId.values());
+
+        // 1. Save to Postgres; merged records report the ID of the row they merged into
+        List<UpsertedRow> written = repository.batchUpsert(distinct);
+        Map<String, UUID> writtenIds = new HashMap<>();
+        written.stream().filter(row -> row.externalId() != null)
+                .forEach(row -> writtenIds.put(row.externalId(), row.id()));
+        records.stream().filter(r -> r.getExternalId() != null)
+                .forEach(r -> r.setId(writtenIds.getOrDefault(r.getExternalId(), r.getId())));
+        int inserted = (int) written.stream().filter(UpsertedRow::inserted).count();
+        int updated = written.size() - inserted;
+        log.info("Ingested {} activity records ({} inserted, {} updated)", records.size(), inserted, updated);
 
-        // 1. Save to Postgres
-        List<ActivityRecord> saved = repository.saveAll(toSave);
+        // 2. Queue for the vector store, committed together with the records
+        indexingPipelineService.enqueue(written.stream().map(UpsertedRow::id).toList());
 
-        // 2. Index to Vector Store (Async usually)
-        saved.forEach(vectorSearchService::indexActivity);
+        // 3. Invalidate the stored reports of every visit date touched, old and new
+        records.stream()
+                .map(r -> r.getVisitTime() != null ? r.getVisitTime() : r.getCreatedAt())
+                .filter(Objects::nonNull)
+                .map(t -> t.withZoneSameInstant(ZoneId.systemDefault()).toLocalDate())
+                .forEach(touchedDates::add);
+        reportRepository.markDirty(touchedDates);
+
+        return new IngestResult(inserted, updated);
+    }
+
+    /**
+     * Delete records and mark their visit dates dirty in one transaction, so a report
+     * cannot be regenerated between the two and kept as fresh. Their vectors are removed
+     * by the caller.
+     */
+    @Transactional
+    public void deleteActivities(List<UUID> ids) {
+        reportRepository.markDirtyForRecords(ids, ZoneId.systemDefault());
+        repository.deleteAllById(ids);
     }
 
     public List<ActivityRecord> search(String query) {
         return repository.search(query);
     }
+
+    public record IngestResult(int inserted, int updated) {
+    }
 }
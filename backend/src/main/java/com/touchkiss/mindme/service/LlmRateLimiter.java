@@ -0,0 +1,166 @@
+package com.touchkiss.mindme.service;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Client-side admission control for the chat provider, shared by every LLM call site.
+ * <p>
+ * Each call first takes a concurrency slot, then one request from the requests-per-minute
+ * bucket and its estimated tokens from the tokens-per-minute bucket; the token reservation
+ * is corrected with the provider-reported usage afterwards. The concurrency limit adapts
+ * AIMD-style: it grows by roughly one slot per window of successful calls and halves on a
+ * 429 or timeout, which also pauses new calls with exponential backoff.
+ */
+@Slf4j
+@Component
+public class LlmRateLimiter {
+
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    private final TokenBucket requests;
+    private final TokenBucket tokens;
+    private final int maxConcurrency;
+    private final int minConcurrency;
+    private final long backoffMs;
+
+    private double limit;
+    private int inFlight;
+    private int consecutiveFailures;
+    private long pausedUntil;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public LlmRateLimiter(
+            @Value("${mindme.llm.requests-per-minute:60}") long requestsPerMinute,
+            @Value("${mindme.llm.tokens-per-minute:100000}") long tokensPerMinute,
+            @Value("${mindme.llm.max-concurrency:4}") int maxConcurrency,
+            @Value("${mindme.llm.min-concurrency:1}") int minConcurrency,
+            @Value("${mindme.llm.backoff-ms:5000}") long backoffMs) {
+        this.requests = new TokenBucket(requestsPerMinute);
+        this.tokens = new TokenBucket(tokensPerMinute);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.minConcurrency = Math.max(1, Math.min(minConcurrency, this.maxConcurrency));
+        this.backoffMs = backoffMs;
+        this.limit = this.maxConcurrency;
+    }
+
+    /**
+     * Run one provider call under the limits.
+     *
+     * @param estimatedTokens prompt plus expected completion tokens, reserved up front
+     * @param tokensUsed      actual total tokens of the response, or a negative value if unknown
+     */
+    public <T> T execute(long estimatedTokens, Supplier<T> call, ToLongFunction<T> tokensUsed) {
+        try {
+            acquireSlot();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for an LLM slot", e);
+        }
+        Outcome outcome = Outcome.ERROR;
+        try {
+            requests.acquire(1);
+            tokens.acquire(estimatedTokens);
+            calls.incrementAndGet();
+            T result = call.get();
+            outcome = Outcome.SUCCESS;
+            long used = tokensUsed.applyAsLong(result);
+            if (used >= 0) {
+                tokens.adjust(used - estimatedTokens);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for LLM quota", e);
+        } catch (RuntimeException e) {
+            outcome = classify(e);
+            throw e;
+        } finally {
+            releaseSlot(outcome);
+        }
+    }
+
+    private synchronized void acquireSlot() throws InterruptedException {
+        while (true) {
+            long pause = pausedUntil - System.currentTimeMillis();
+            if (pause > 0) {
+                wait(pause);
+            } else if (inFlight >= (int) limit) {
+                wait(1000);
+            } else {
+                inFlight++;
+                return;
+            }
+        }
+    }
+
+    private synchronized void releaseSlot(Outcome outcome) {
+        inFlight--;
+        switch (outcome) {
+            case SUCCESS -> {
+                consecutiveFailures = 0;
+                limit = Math.min(maxConcurrency, limit + 1.0 / limit);
+            }
+            case THROTTLED, TIMEOUT -> {
+                if (outcome == Outcome.THROTTLED) {
+                    throttled.incrementAndGet();
+                } else {
+                    timeouts.incrementAndGet();
+                }
+                consecutiveFailures++;
+                limit = Math.max(minConcurrency, limit / 2);
+                long backoff = Math.min(MAX_BACKOFF_MS, backoffMs << Math.min(consecutiveFailures - 1, 10));
+                pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + backoff);
+                log.warn("LLM provider {}; concurrency limit now {}, pausing {} ms", outcome == Outcome.THROTTLED
+                        ? "throttled" : "timed out", (int) limit, backoff);
+            }
+            case ERROR -> {
+                // Not a capacity signal
+            }
+        }
+        notifyAll();
+    }
+
+    static Outcome classify(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof OpenAiHttpException http && (http.code() == 429 || http.code() == 503)) {
+                return Outcome.THROTTLED;
+            }
+            if (t instanceof InterruptedIOException || t instanceof TimeoutException) {
+                return Outcome.TIMEOUT;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return Outcome.ERROR;
+    }
+
+    public synchronized LimiterStats stats() {
+        return new LimiterStats((int) limit, inFlight, maxConcurrency, requests.available(), tokens.available(),
+                calls.get(), throttled.get(), timeouts.get());
+    }
+
+    enum Outcome {
+        SUCCESS, THROTTLED, TIMEOUT, ERROR
+    }
+
+    /**
+     * @param requestsAvailable remaining request quota this minute, -1 if unlimited
+     * @param tokensAvailable   remaining token quota this minute, -1 if unlimited
+     */
+    public record LimiterStats(int concurrencyLimit, int inFlight, int maxConcurrency, long requestsAvailable,
+            long tokensAvailable, long calls, long throttled, long timeouts) {
+    }
+}
@@ -0,0 +1,211 @@
+package com.touchkiss.mindme.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent cache of chat completions in {@code llm_response_cache}, keyed by chat model
+ * name plus the SHA-256 of the normalized prompt (line endings unified, whitespace runs
+ * collapsed, trimmed).
+ * <p>
+ * Caching is opt-in per {@link CallSite}: call sites look up before calling the model and
+ * store only answers they could actually use, so a garbled completion is never replayed.
+ * Entries expire after {@code ttl-hours}, horizon cards after {@code horizon-ttl-hours}
+ * since they are meant to be regenerated daily; an hourly sweep deletes expired rows and trims
+ * the least recently used ones above {@code max-entries}. Database failures degrade to a
+ * miss.
+ */
+@Slf4j
+@Service
+public class LlmResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("[ \\t\\x0B\\f]+");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n\\s*\\n+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String modelName;
+    private final Set<CallSite> enabledSites;
+    private final Map<CallSite, Long> ttlHours = new EnumMap<>(CallSite.class);
+    private final long maxEntries;
+
+    private final Map<CallSite, Counters> counters = new EnumMap<>(CallSite.class);
+
+    public LlmResponseCache(
+            JdbcTemplate jdbcTemplate,
+            @Value("${langchain4j.open-ai.chat-model.model-name:default}") String modelName,
+            @Value("${mindme.llm-cache.sites:analysis,relevance,horizon}") List<String> sites,
+            @Value("${mindme.llm-cache.ttl-hours:720}") long ttlHours,
+            @Value("${mindme.llm-cache.horizon-ttl-hours:24}") long horizonTtlHours,
+            @Value("${mindme.llm-cache.max-entries:50000}") long maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.modelName = modelName;
+        Arrays.stream(CallSite.values()).forEach(site -> this.ttlHours.put(site, ttlHours));
+        this.ttlHours.put(CallSite.HORIZON, horizonTtlHours);
+        this.maxEntries = maxEntries;
+        this.enabledSites = EnumSet.noneOf(CallSite.class);
+        for (String site : sites) {
+            if (!site.isBlank()) {
+                enabledSites.add(CallSite.valueOf(site.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        Arrays.stream(CallSite.values()).forEach(site -> counters.put(site, new Counters()));
+    }
+
+    public boolean isEnabled(CallSite site) {
+        return enabledSites.contains(site);
+    }
+
+    /**
+     * @return the cached completion, or null on a miss or when the call site has not opted in
+     */
+    public String get(CallSite site, String prompt) {
+        if (!isEnabled(site)) {
+            return null;
+        }
+        Counters c = counters.get(site);
+        try {
+            List<CachedResponse> rows = jdbcTemplate.query("""
+                    UPDATE llm_response_cache SET hit_count = hit_count + 1, last_used_at = CURRENT_TIMESTAMP
+                    WHERE cache_key = ? AND expires_at > CURRENT_TIMESTAMP
+                    RETURNING response, tokens
+                    """,
+                    (rs, i) -> new CachedResponse(rs.getString("response"), rs.getInt("tokens")),
+                    key(prompt));
+            if (!rows.isEmpty()) {
+                c.hits.incrementAndGet();
+                c.tokensSaved.addAndGet(rows.get(0).tokens());
+                return rows.get(0).response();
+            }
+        } catch (Exception e) {
+            log.debug("LLM cache lookup failed: {}", e.getMessage());
+        }
+        c.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a usable completion.
+     *
+     * @param tokens total tokens the call cost, or a negative value to estimate from the text
+     */
+    public void put(CallSite site, String prompt, String response, long tokens) {
+        if (!isEnabled(site) || response == null || response.isBlank()) {
+            return;
+        }
+        long cost = tokens >= 0 ? tokens : (prompt.length() + response.length()) / 4;
+        try {
+            jdbcTemplate.update("""
+                    INSERT INTO llm_response_cache (cache_key, model_name, call_site, response, tokens, expires_at)
+                    VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP + ? * INTERVAL '1 hour')
+                    ON CONFLICT (cache_key) DO UPDATE SET
+                        response = EXCLUDED.response, tokens = EXCLUDED.tokens, call_site = EXCLUDED.call_site,
+                        created_at = CURRENT_TIMESTAMP, last_used_at = CURRENT_TIMESTAMP,
+                        expires_at = EXCLUDED.expires_at
+                    """,
+                    key(prompt), modelName, site.name(), response, (int) Math.min(Integer.MAX_VALUE, cost),
+                    ttlHours.get(site));
+        } catch (Exception e) {
+            log.debug("LLM cache write failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${mindme.llm-cache.eviction-cron:0 15 * * * ?}")
+    public void evict() {
+        int expired = jdbcTemplate.update("DELETE FROM llm_response_cache WHERE expires_at <= CURRENT_TIMESTAMP");
+        int trimmed = jdbcTemplate.update("""
+                DELETE FROM llm_response_cache WHERE cache_key IN (
+                    SELECT cache_key FROM llm_response_cache ORDER BY last_used_at DESC OFFSET ?)
+                """, maxEntries);
+        if (expired + trimmed > 0) {
+            log.info("LLM response cache evicted {} expired and {} least recently used entries", expired, trimmed);
+        }
+    }
+
+    public CacheStats stats() {
+        Long entries = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM llm_response_cache", Long.class);
+        long hits = 0;
+        long misses = 0;
+        long saved = 0;
+        Map<CallSite, SiteStats> sites = new EnumMap<>(CallSite.class);
+        for (Map.Entry<CallSite, Counters> entry : counters.entrySet()) {
+            Counters c = entry.getValue();
+            SiteStats site = new SiteStats(isEnabled(entry.getKey()), c.hits.get(), c.misses.get(),
+                    hitRate(c.hits.get(), c.misses.get()), c.tokensSaved.get());
+            sites.put(entry.getKey(), site);
+            hits += site.hits();
+            misses += site.misses();
+            saved += site.tokensSaved();
+        }
+        return new CacheStats(entries != null ? entries : 0, hits, misses, hitRate(hits, misses), saved, sites);
+    }
+
+    String key(String prompt) {
+        return modelName + ":" + sha256(normalize(prompt));
+    }
+
+    static String normalize(String prompt) {
+        String text = prompt.replace("\r\n", "\n").replace('\r', '\n');
+        text = WHITESPACE.matcher(text).replaceAll(" ");
+        text = BLANK_LINES.matcher(text).replaceAll("\n\n");
+        return text.lines().map(String::strip).reduce((a, b) -> a + "\n" + b).orElse("").strip();
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Call sites that may opt in through {@code mindme.llm-cache.sites}.
+     */
+    public enum CallSite {
+        /** Knowledge extraction in {@link ScheduledAnalysisService}. */
+        ANALYSIS,
+        /** Trend relevance scoring in {@link AiAnalysisService#scoreRelevance}. */
+        RELEVANCE,
+        /** Cognitive horizon cards; kept for {@code horizon-ttl-hours} only. */
+        HORIZON
+    }
+
+    private static final class Counters {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong tokensSaved = new AtomicLong();
+    }
+
+    private record CachedResponse(String response, int tokens) {
+    }
+
+    public record SiteStats(boolean enabled, long hits, long misses, double hitRate, long tokensSaved) {
+    }
+
+    public record CacheStats(long entries, long hits, long misses, double hitRate, long tokensSaved,
+            Map<CallSite, SiteStats> sites) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.AnalysisPriority;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository.AnalysisTask;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap in-process triage that runs before any LLM call. It turns the engagement metrics,
+ * URL/title patterns and summary length of a claimed record into a provisional interest
+ * score (0-100) and one of three decisions:
+ * <ul>
+ * <li>{@link Decision#SKIP}: login/error pages, bounces and visits with nothing to
+ * extract; finished with the provisional score and no model call.</li>
+ * <li>{@link Decision#ANALYZE_FIRST}: deep engagement; dispatched ahead of the rest of
+ * the batch.</li>
+ * <li>{@link Decision#ANALYZE}: everything else.</li>
+ * </ul>
+ * Imported AI conversations carry no browsing metrics, so only the URL/title patterns can
+ * skip them; records re-queued explicitly are never skipped.
+ */
+@Component
+public class PreClassifier {
+
+    private final boolean enabled;
+    private final Pattern skipUrl;
+    private final Pattern skipTitle;
+    private final int bounceSeconds;
+    private final int minSummaryChars;
+    private final int minScore;
+    private final int priorityScore;
+
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong prioritized = new AtomicLong();
+
+    public PreClassifier(
+            @Value("${mindme.analysis.pre-classifier.enabled:true}") boolean enabled,
+            @Value("${mindme.analysis.pre-classifier.skip-url-pattern:}") String skipUrl,
+            @Value("${mindme.analysis.pre-classifier.skip-title-pattern:}") String skipTitle,
+            @Value("${mindme.analysis.pre-classifier.bounce-seconds:5}") int bounceSeconds,
+            @Value("${mindme.analysis.pre-classifier.min-summary-chars:40}") int minSummaryChars,
+            @Value("${mindme.analysis.pre-classifier.min-score:15}") int minScore,
+            @Value("${mindme.analysis.pre-classifier.priority-score:60}") int priorityScore) {
+        this.enabled = enabled;
+        this.skipUrl = skipUrl.isBlank() ? null : Pattern.compile(skipUrl, Pattern.CASE_INSENSITIVE);
+        this.skipTitle = skipTitle.isBlank() ? null : Pattern.compile(skipTitle, Pattern.CASE_INSENSITIVE);
+        this.bounceSeconds = bounceSeconds;
+        this.minSummaryChars = minSummaryChars;
+        this.minScore = minScore;
+        this.priorityScore = priorityScore;
+    }
+
+    public Classification classify(AnalysisTask task) {
+        int score = engagementScore(task);
+        Decision decision = decide(task, score);
+        switch (decision) {
+            case SKIP -> skipped.incrementAndGet();
+            case ANALYZE -> analyzed.incrementAndGet();
+            case ANALYZE_FIRST -> prioritized.incrementAndGet();
+        }
+        return new Classification(decision, score);
+    }
+
+    private Decision decide(AnalysisTask task, int score) {
+        if (!enabled || task.forced()) {
+            return Decision.ANALYZE;
+        }
+        if (matches(skipUrl, task.url()) || matches(skipTitle, task.title())) {
+            return Decision.SKIP;
+        }
+        if (task.aiConversation()) {
+            return Decision.ANALYZE;
+        }
+        int summaryChars = task.contentSummary() != null ? task.contentSummary().strip().length() : 0;
+        boolean bounced = task.durationSeconds() != null && task.durationSeconds() < bounceSeconds
+                && value(task.activeSeconds()) < bounceSeconds && value(task.interactionCount()) == 0;
+        if (bounced || (summaryChars < minSummaryChars && score < minScore)) {
+            return Decision.SKIP;
+        }
+        return score >= priorityScore ? Decision.ANALYZE_FIRST : Decision.ANALYZE;
+    }
+
+    /**
+     * Provisional interest score, the same engagement score that orders the queue.
+     */
+    static int engagementScore(AnalysisTask task) {
+        return AnalysisPriority.engagementScore(task.activeSeconds(), task.durationSeconds(), task.scrollDepth(),
+                task.interactionCount(), task.contentSummary());
+    }
+
+    private static boolean matches(Pattern pattern, String text) {
+        return pattern != null && text != null && pattern.matcher(text).find();
+    }
+
+    private static int value(Integer metric) {
+        return metric != null ? Math.max(0, metric) : 0;
+    }
+
+    public ClassifierStats stats() {
+        return new ClassifierStats(enabled, skipped.get(), analyzed.get(), prioritized.get());
+    }
+
+    public enum Decision {
+        SKIP, ANALYZE, ANALYZE_FIRST
+    }
+
+    public record Classification(Decision decision, int provisionalScore) {
+    }
+
+    /**
+     * @param skipped records finished without the model
+     */
+    public record ClassifierStats(boolean enabled, long skipped, long analyzed, long prioritized) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.ProfileCounterRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interest and tag counter deltas collected over one analysis batch by concurrent workers,
+ * then written with a single upsert per table.
+ */
+final class ProfileDeltas {
+
+    private final Map<String, Double> interests = new ConcurrentHashMap<>();
+    private final Map<String, Integer> tags = new ConcurrentHashMap<>();
+
+    void addInterest(String category, double weight) {
+        if (!category.isEmpty()) {
+            interests.merge(category, weight, Double::sum);
+        }
+    }
+
+    void addTag(String tag) {
+        if (!tag.isEmpty()) {
+            tags.merge(tag, 1, Integer::sum);
+        }
+    }
+
+    boolean isEmpty() {
+        return interests.isEmpty() && tags.isEmpty();
+    }
+
+    void flushTo(ProfileCounterRepository counters) {
+        counters.addInterestWeights(interests);
+        counters.addTagFrequencies(tags);
+    }
+}
@@ -0,0 +1,430 @@
+package com.touchkiss.mindme.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Prompt assembly and metering shared by every chat call site.
+ * <p>
+ * The variable part of a prompt (activity lines, retrieved records, titles, interests) is
+ * passed as {@link Item}s and packed into the token budget of its {@link Site}: items with
+ * the same key are folded into one line carrying a visit count, the folded items are
+ * admitted by relevance until the budget is spent, and the survivors are rendered in their
+ * original order. Budgets come from {@code mindme.prompt.budgets} as {@code site=tokens}
+ * pairs; a site without one is not limited.
+ * <p>
+ * {@link #generate} runs the call through {@link LlmRateLimiter} and records its input and
+ * output tokens per site, as reported by the provider or else counted locally.
+ * {@link #stream} does the same over the streaming chat model, holding its limiter slot
+ * until the last token, and forwards the visible tokens as they arrive. A stream that has
+ * not completed within {@code mindme.streaming.timeout-ms} fails and gives its slot back.
+ */
+@Slf4j
+@Component
+public class PromptPacker {
+
+    private final ChatLanguageModel chatModel;
+    private final StreamingChatLanguageModel streamingModel;
+    private final LlmRateLimiter rateLimiter;
+    private final long streamingTimeoutMs;
+    private final Map<Site, Integer> budgets = new EnumMap<>(Site.class);
+    private final Map<Site, Counters> counters = new EnumMap<>(Site.class);
+
+    public PromptPacker(
+            ChatLanguageModel chatModel,
+            @Nullable StreamingChatLanguageModel streamingModel,
+            LlmRateLimiter rateLimiter,
+            @Value("${mindme.prompt.budgets:}") List<String> budgets,
+            @Value("${mindme.streaming.timeout-ms:300000}") long streamingTimeoutMs) {
+        this.chatModel = chatModel;
+        this.streamingModel = streamingModel;
+        this.rateLimiter = rateLimiter;
+        this.streamingTimeoutMs = streamingTimeoutMs;
+        for (String entry : budgets) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] pair = entry.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Prompt budget must be site=tokens: " + entry);
+            }
+            Site site = Site.valueOf(pair[0].trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            this.budgets.put(site, Integer.parseInt(pair[1].trim()));
+        }
+        Arrays.stream(Site.values()).forEach(site -> counters.put(site, new Counters()));
+    }
+
+    /**
+     * @return the token budget of the site's packed section, or {@link Integer#MAX_VALUE}
+     */
+    public int budget(Site site) {
+        return budgets.getOrDefault(site, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fold, select and render items within the site's budget. If not even the most relevant
+     * item fits, it is truncated to the budget so the prompt is never empty.
+     */
+    public Packed pack(Site site, List<Item> items, String separator) {
+        int budget = budget(site);
+        List<Group> groups = fold(items);
+        int separatorTokens = countTokens(separator);
+
+        List<Group> byRelevance = new ArrayList<>(groups);
+        byRelevance.sort(Comparator.comparingDouble(Group::relevance).reversed()
+                .thenComparing(Comparator.comparingInt(Group::count).reversed())
+                .thenComparingInt(Group::position));
+        long used = 0;
+        List<Group> admitted = new ArrayList<>();
+        for (Group group : byRelevance) {
+            long cost = countTokens(group.render()) + (admitted.isEmpty() ? 0 : separatorTokens);
+            if (used + cost <= budget) {
+                admitted.add(group);
+                used += cost;
+            }
+        }
+        String text;
+        if (admitted.isEmpty() && !byRelevance.isEmpty()) {
+            Group best = byRelevance.get(0);
+            admitted.add(best);
+            text = truncate(best.render(), budget);
+        } else {
+            admitted.sort(Comparator.comparingInt(Group::position));
+            text = String.join(separator, admitted.stream().map(Group::render).toList());
+        }
+
+        int folded = items.size() - groups.size();
+        int dropped = groups.size() - admitted.size();
+        Counters c = counters.get(site);
+        c.itemsPacked.addAndGet(admitted.size());
+        c.itemsFolded.addAndGet(folded);
+        c.itemsDropped.addAndGet(dropped);
+        return new Packed(text, admitted.size(), folded, dropped, countTokens(text));
+    }
+
+    /**
+     * Fold items and split the rendered lines, in their original order, into consecutive
+     * batches of lines that each fit the site's budget when joined by newlines. Nothing is
+     * dropped; a line larger than the budget is truncated into a batch of its own.
+     */
+    public List<List<String>> split(Site site, List<Item> items) {
+        int budget = budget(site);
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        long used = 0;
+        List<Group> groups = fold(items);
+        for (Group group : groups) {
+            String line = truncate(group.render(), budget);
+            long cost = countTokens(line + "\n");
+            if (!current.isEmpty() && used + cost > budget) {
+                batches.add(current);
+                current = new ArrayList<>();
+                used = 0;
+            }
+            used += cost;
+            current.add(line);
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        Counters c = counters.get(site);
+        c.itemsPacked.addAndGet(groups.size());
+        c.itemsFolded.addAndGet(items.size() - groups.size());
+        return batches;
+    }
+
+    /**
+     * Run one completion for the site through the rate limiter and meter it.
+     *
+     * @param expectedCompletionTokens room reserved for the answer
+     */
+    public String generate(Site site, String prompt, int expectedCompletionTokens) {
+        Counters c = counters.get(site);
+        long inputEstimate = countTokens(prompt);
+        Response<AiMessage> response;
+        try {
+            response = rateLimiter.execute(inputEstimate + expectedCompletionTokens,
+                    () -> chatModel.generate(UserMessage.from(prompt)),
+                    r -> r.tokenUsage() != null && r.tokenUsage().totalTokenCount() != null
+                            ? r.tokenUsage().totalTokenCount()
+                            : -1);
+        } catch (RuntimeException e) {
+            c.failures.incrementAndGet();
+            throw e;
+        }
+        String text = response.content().text();
+        TokenUsage usage = response.tokenUsage();
+        c.calls.incrementAndGet();
+        c.inputTokens.addAndGet(usage != null && usage.inputTokenCount() != null
+                ? usage.inputTokenCount() : inputEstimate);
+        c.outputTokens.addAndGet(usage != null && usage.outputTokenCount() != null
+                ? usage.outputTokenCount() : countTokens(text));
+        return text;
+    }
+
+    /**
+     * Run one completion for the site on the streaming model, passing each piece of visible
+     * text to {@code onToken} as it arrives; {@code <think>} blocks never reach it. Blocks
+     * until the answer is complete. Without a streaming model the whole answer is passed at
+     * once. Once {@code onToken} throws (the client went away) it is not called again, but
+     * the answer is still completed and returned so it can be stored.
+     *
+     * @return the visible answer
+     */
+    public String stream(Site site, String prompt, int expectedCompletionTokens, Consumer<String> onToken) {
+        if (streamingModel == null) {
+            String text = ThinkFilter.strip(generate(site, prompt, expectedCompletionTokens));
+            onToken.accept(text);
+            return text;
+        }
+        Counters c = counters.get(site);
+        long inputEstimate = countTokens(prompt);
+        StringBuilder visible = new StringBuilder();
+        Response<AiMessage> response;
+        try {
+            response = rateLimiter.execute(inputEstimate + expectedCompletionTokens,
+                    () -> streamBlocking(prompt, visible, onToken),
+                    r -> r.tokenUsage() != null && r.tokenUsage().totalTokenCount() != null
+                            ? r.tokenUsage().totalTokenCount()
+                            : -1);
+        } catch (RuntimeException e) {
+            c.failures.incrementAndGet();
+            throw e;
+        }
+        TokenUsage usage = response.tokenUsage();
+        c.calls.incrementAndGet();
+        c.inputTokens.addAndGet(usage != null && usage.inputTokenCount() != null
+                ? usage.inputTokenCount() : inputEstimate);
+        c.outputTokens.addAndGet(usage != null && usage.outputTokenCount() != null
+                ? usage.outputTokenCount()
+                : countTokens(response.content() != null ? response.content().text() : visible.toString()));
+        return visible.toString().strip();
+    }
+
+    private Response<AiMessage> streamBlocking(String prompt, StringBuilder visible, Consumer<String> onToken) {
+        ThinkFilter filter = new ThinkFilter();
+        CompletableFuture<Response<AiMessage>> done = new CompletableFuture<>();
+        Consumer<String> forward = new Consumer<>() {
+            private boolean open = true;
+
+            @Override
+            public void accept(String text) {
+                // Tokens arriving after a timeout belong to an abandoned call
+                if (text.isEmpty() || done.isDone()) {
+                    return;
+                }
+                visible.append(text);
+                if (open) {
+                    try {
+                        onToken.accept(text);
+                    } catch (RuntimeException e) {
+                        open = false;
+                        log.debug("Stopped forwarding streamed tokens: {}", e.getMessage());
+                    }
+                }
+            }
+        };
+        streamingModel.generate(List.of(UserMessage.from(prompt)), new StreamingResponseHandler<>() {
+            @Override
+            public void onNext(String token) {
+                forward.accept(filter.accept(token));
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                forward.accept(filter.finish());
+                done.complete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                done.completeExceptionally(error);
+            }
+        });
+        // The limiter sees the TimeoutException and releases the slot
+        return done.orTimeout(streamingTimeoutMs, TimeUnit.MILLISECONDS).join();
+    }
+
+    /**
+     * Local token estimate: one token per CJK character (Han, kana, Hangul and full-width
+     * punctuation) and one per four characters of anything else. Close enough to BPE
+     * tokenizers for budgeting mixed Chinese and English text, where a flat four characters
+     * per token undercounts Chinese roughly fourfold.
+     */
+    public static int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wide = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (isWide(cp)) {
+                wide++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(cp);
+        }
+        return wide + (other + 3) / 4;
+    }
+
+    /**
+     * Cut {@code text} to at most {@code maxTokens}, marking the cut with an ellipsis.
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || countTokens(text) <= maxTokens) {
+            return text;
+        }
+        int wide = 0;
+        int other = 0;
+        int end = 0;
+        // Leave one token for the ellipsis
+        while (end < text.length()) {
+            int cp = text.codePointAt(end);
+            int nextWide = wide + (isWide(cp) ? 1 : 0);
+            int nextOther = other + (isWide(cp) ? 0 : 1);
+            if (nextWide + (nextOther + 3) / 4 > maxTokens - 1) {
+                break;
+            }
+            wide = nextWide;
+            other = nextOther;
+            end += Character.charCount(cp);
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    private static boolean isWide(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL
+                || (cp >= 0x3000 && cp <= 0x303F) || (cp >= 0xFF00 && cp <= 0xFFEF);
+    }
+
+    /**
+     * Group items by key in order of first appearance; a group keeps its first item's text
+     * and adds up the relevance of its members, so a page visited forty times outranks a
+     * single visit. Items without a key are never folded.
+     */
+    private static List<Group> fold(List<Item> items) {
+        Map<Object, Group> groups = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            Object key = item.key() != null ? item.key().strip().toLowerCase(Locale.ROOT) : i;
+            Group group = groups.get(key);
+            if (group == null) {
+                groups.put(key, new Group(item.text(), item.relevance(), 1, i));
+            } else {
+                groups.put(key, new Group(group.text(), group.relevance() + item.relevance(), group.count() + 1,
+                        group.position()));
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    public PromptStats stats() {
+        Map<Site, SiteStats> sites = new EnumMap<>(Site.class);
+        long input = 0;
+        long output = 0;
+        for (Map.Entry<Site, Counters> entry : counters.entrySet()) {
+            Counters c = entry.getValue();
+            Integer budget = budgets.get(entry.getKey());
+            SiteStats site = new SiteStats(budget, c.calls.get(), c.failures.get(), c.inputTokens.get(),
+                    c.outputTokens.get(), c.itemsPacked.get(), c.itemsFolded.get(), c.itemsDropped.get());
+            sites.put(entry.getKey(), site);
+            input += site.inputTokens();
+            output += site.outputTokens();
+        }
+        return new PromptStats(input, output, sites);
+    }
+
+    /**
+     * Chat call sites; {@code mindme.prompt.budgets} names them in kebab case.
+     */
+    public enum Site {
+        /** RAG answers in {@link AiAnalysisService#askQuestion}. */
+        ASK,
+        /** Today's insight in {@link AiAnalysisService#generateDailyInsight}. */
+        INSIGHT,
+        /** Trend relevance scoring; each batch of titles fits this budget. */
+        RELEVANCE,
+        /** Cognitive horizon cards. */
+        HORIZON,
+        /** Knowledge extraction in {@link ScheduledAnalysisService}, budgeted by its own pack settings. */
+        ANALYSIS,
+        /** Daily report activity log. */
+        DAILY_REPORT,
+        /** Day digests; a day larger than this is digested in parts. */
+        DIGEST,
+        /** Digest merges. */
+        MERGE,
+        /** Weekly and monthly reports. */
+        PERIOD_REPORT
+    }
+
+    /**
+     * One candidate line of a prompt.
+     *
+     * @param key       items with the same key (case-insensitive) fold into one line; null never folds
+     * @param relevance higher is admitted first; ties go to larger groups, then to earlier items
+     */
+    public record Item(String key, String text, double relevance) {
+    }
+
+    /**
+     * @param items   lines rendered after folding
+     * @param folded  items merged into an earlier line with the same key
+     * @param dropped folded lines left out for lack of budget
+     */
+    public record Packed(String text, int items, int folded, int dropped, int tokens) {
+    }
+
+    private record Group(String text, double relevance, int count, int position) {
+
+        String render() {
+            return count > 1 ? text + " (×" + count + ")" : text;
+        }
+    }
+
+    private static final class Counters {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong inputTokens = new AtomicLong();
+        final AtomicLong outputTokens = new AtomicLong();
+        final AtomicLong itemsPacked = new AtomicLong();
+        final AtomicLong itemsFolded = new AtomicLong();
+        final AtomicLong itemsDropped = new AtomicLong();
+    }
+
+    /**
+     * @param budget token budget of the packed section, null if unlimited
+     */
+    public record SiteStats(Integer budget, long calls, long failures, long inputTokens, long outputTokens,
+            long itemsPacked, long itemsFolded, long itemsDropped) {
+    }
+
+    public record PromptStats(long inputTokens, long outputTokens, Map<Site, SiteStats> sites) {
+    }
+}
@@ -0,0 +1,325 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import com.touchkiss.mindme.repository.ReportJobRepository;
+import com.touchkiss.mindme.repository.ReportJobRepository.JobStatus;
+import com.touchkiss.mindme.repository.ReportJobRepository.ReportJob;
+import com.touchkiss.mindme.repository.ReportJobRepository.Submission;
+import com.touchkiss.mindme.service.ReportService.Period;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous report generation. A submission returns a job id at once; identical
+ * submissions while a job is queued or running collapse into that job, across instances
+ * too, since {@link ReportJobRepository} admits one in-flight job per report. A report
+ * that is already stored and fresh is answered by a job that is done on arrival.
+ * <p>
+ * Jobs run on a bounded pool ({@code mindme.reports.jobs.concurrency}); when it and its
+ * queue are full a submission is rejected instead of piling up. Progress and the result
+ * are written to the job row, so any instance can answer a poll. Subscribers on the
+ * running instance additionally get the report token by token, with what was written so
+ * far replayed first; elsewhere they follow the row, polled from one scheduler thread.
+ * Following never holds a thread of its own.
+ */
+@Slf4j
+@Service
+public class ReportJobService {
+
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private final ReportJobRepository jobRepository;
+    private final ReportService reportService;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService pollers = Executors.newSingleThreadScheduledExecutor();
+    private final long leaseMs;
+    private final int retentionDays;
+    private final Map<UUID, RunningJob> running = new ConcurrentHashMap<>();
+
+    public ReportJobService(
+            ReportJobRepository jobRepository,
+            ReportService reportService,
+            @Value("${mindme.reports.jobs.concurrency:2}") int concurrency,
+            @Value("${mindme.reports.jobs.queue-capacity:50}") int queueCapacity,
+            @Value("${mindme.reports.jobs.lease-ms:300000}") long leaseMs,
+            @Value("${mindme.reports.jobs.retention-days:7}") int retentionDays) {
+        this.jobRepository = jobRepository;
+        this.reportService = reportService;
+        int threads = Math.max(1, concurrency);
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.leaseMs = leaseMs;
+        this.retentionDays = retentionDays;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+        pollers.shutdownNow();
+    }
+
+    /**
+     * Queue the report of the period {@code type} covering {@code date}, or join the job
+     * already generating it.
+     *
+     * @throws IllegalArgumentException   if {@code type} is not a report
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public Submission submit(ReportType type, LocalDate date) {
+        Period period = Period.of(type, date);
+        Optional<String> stored = reportService.findFresh(period);
+        if (stored.isPresent()) {
+            return new Submission(jobRepository.insertDone(type, period.start(), period.end(), stored.get()), true);
+        }
+        Submission submission = jobRepository.submit(type, period.start(), period.end(), leaseMs);
+        if (!submission.created()) {
+            log.info("Joined report job {} for {} {}", submission.id(), type, period.start());
+            return submission;
+        }
+        RunningJob job = new RunningJob();
+        running.put(submission.id(), job);
+        try {
+            workers.execute(() -> run(submission.id(), job, period));
+        } catch (RejectedExecutionException e) {
+            running.remove(submission.id());
+            jobRepository.fail(submission.id(), "Too many report jobs queued");
+            log.warn("Rejected report job for {} {}: {} jobs queued", type, period.start(), workers.getQueue().size());
+            throw e;
+        }
+        return submission;
+    }
+
+    public Optional<ReportJob> find(UUID id) {
+        return jobRepository.find(id);
+    }
+
+    /**
+     * Follow a job, passing the report text to {@code onToken} and stage changes to
+     * {@code onProgress}. A job running here replays what it wrote so far and then streams;
+     * any other job is followed through its row and its report arrives in one piece.
+     * Cancelling the returned future stops following.
+     *
+     * @return the complete report; fails with {@link NoSuchElementException} for an unknown
+     * job and with {@link IllegalStateException} if the job failed or was abandoned
+     */
+    public CompletableFuture<String> follow(UUID id, Consumer<String> onToken, Consumer<JobProgress> onProgress) {
+        RunningJob job = running.get(id);
+        if (job != null) {
+            Subscriber subscriber = job.subscribe(onToken, onProgress);
+            subscriber.done.whenComplete((report, error) -> job.unsubscribe(subscriber));
+            return subscriber.done;
+        }
+        RowFollower follower = new RowFollower(id, onToken, onProgress);
+        ScheduledFuture<?> polling = pollers.scheduleWithFixedDelay(follower, 0, POLL_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        follower.done.whenComplete((report, error) -> polling.cancel(false));
+        return follower.done;
+    }
+
+    /**
+     * Keep the jobs of this instance alive while they wait or run.
+     */
+    @Scheduled(fixedDelayString = "${mindme.reports.jobs.heartbeat-ms:60000}")
+    public void heartbeat() {
+        jobRepository.touch(List.copyOf(running.keySet()));
+    }
+
+    /**
+     * Finished jobs are kept {@code retention-days} for polling; the reports themselves stay
+     * stored in {@code daily_reports}.
+     */
+    @Scheduled(cron = "${mindme.reports.jobs.purge-cron:0 45 3 * * ?}")
+    public void purge() {
+        int purged = jobRepository.purgeFinished(Instant.now().minus(Duration.ofDays(retentionDays)));
+        if (purged > 0) {
+            log.info("Purged {} finished report jobs", purged);
+        }
+    }
+
+    private void run(UUID id, RunningJob job, Period period) {
+        try {
+            if (!jobRepository.start(id)) {
+                throw new IllegalStateException("Report job abandoned before it started");
+            }
+            job.progress(new JobProgress(JobStatus.RUNNING, null, 0, 0));
+            String report = reportService.generate(period, job::token, (stage, done, total) -> {
+                job.progress(new JobProgress(JobStatus.RUNNING, stage, done, total));
+                jobRepository.progress(id, stage, done, total);
+            });
+            if (jobRepository.finish(id, report)) {
+                log.info("Report job {} for {} {} done", id, period.type(), period.start());
+            } else {
+                log.warn("Report job {} for {} {} finished after it was failed as abandoned; the report is stored",
+                        id, period.type(), period.start());
+            }
+            job.result.complete(report);
+        } catch (Exception e) {
+            log.error("Report job {} for {} {} failed", id, period.type(), period.start(), e);
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            try {
+                jobRepository.fail(id, message);
+            } finally {
+                job.result.completeExceptionally(new IllegalStateException(message, e));
+            }
+        } finally {
+            running.remove(id);
+        }
+    }
+
+    /**
+     * Where a job is: its status and, while running, the current stage with the steps done.
+     */
+    public record JobProgress(JobStatus status, String stage, int done, int total) {
+    }
+
+    /**
+     * Polls the row of a job running on another instance until it finishes or goes without
+     * a heartbeat for longer than the lease.
+     */
+    private final class RowFollower implements Runnable {
+
+        private final UUID id;
+        private final Consumer<String> onToken;
+        private final Consumer<JobProgress> onProgress;
+        private final CompletableFuture<String> done = new CompletableFuture<>();
+        private JobProgress reported;
+
+        RowFollower(UUID id, Consumer<String> onToken, Consumer<JobProgress> onProgress) {
+            this.id = id;
+            this.onToken = onToken;
+            this.onProgress = onProgress;
+        }
+
+        @Override
+        public void run() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                jobRepository.expire(id, leaseMs);
+                ReportJob row = jobRepository.find(id)
+                        .orElseThrow(() -> new NoSuchElementException("Unknown report job " + id));
+                switch (row.status()) {
+                    case DONE -> {
+                        onToken.accept(row.result());
+                        done.complete(row.result());
+                    }
+                    case FAILED -> done.completeExceptionally(new IllegalStateException(row.error()));
+                    default -> {
+                        JobProgress progress = new JobProgress(row.status(), row.stage(), row.stepsDone(),
+                                row.stepsTotal());
+                        if (!progress.equals(reported)) {
+                            onProgress.accept(progress);
+                            reported = progress;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Local state of a queued or running job. Text and progress are replayed to late
+     * subscribers under the same lock that forwards new pieces, so nothing is missed or
+     * sent twice.
+     */
+    private static final class RunningJob {
+
+        private final StringBuilder text = new StringBuilder();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private JobProgress progress = new JobProgress(JobStatus.QUEUED, null, 0, 0);
+
+        synchronized Subscriber subscribe(Consumer<String> onToken, Consumer<JobProgress> onProgress) {
+            Subscriber subscriber = new Subscriber(onToken, onProgress);
+            subscriber.progress(progress);
+            if (!text.isEmpty()) {
+                subscriber.token(text.toString());
+            }
+            subscribers.add(subscriber);
+            result.whenComplete((report, error) -> {
+                if (error != null) {
+                    subscriber.done.completeExceptionally(error);
+                } else {
+                    subscriber.done.complete(report);
+                }
+            });
+            return subscriber;
+        }
+
+        void unsubscribe(Subscriber subscriber) {
+            subscribers.remove(subscriber);
+        }
+
+        synchronized void token(String token) {
+            text.append(token);
+            subscribers.forEach(s -> s.token(token));
+        }
+
+        synchronized void progress(JobProgress update) {
+            progress = update;
+            subscribers.forEach(s -> s.progress(update));
+        }
+    }
+
+    /**
+     * One waiting client. A client that cannot take more events is released at once; the
+     * job carries on for the others and for the stored result.
+     */
+    private static final class Subscriber {
+
+        private final Consumer<String> onToken;
+        private final Consumer<JobProgress> onProgress;
+        private final CompletableFuture<String> done = new CompletableFuture<>();
+
+        Subscriber(Consumer<String> onToken, Consumer<JobProgress> onProgress) {
+            this.onToken = onToken;
+            this.onProgress = onProgress;
+        }
+
+        void token(String token) {
+            deliver(() -> onToken.accept(token));
+        }
+
+        void progress(JobProgress progress) {
+            deliver(() -> onProgress.accept(progress));
+        }
+
+        private void deliver(Runnable event) {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.ActivityRecordRepositoryCustom.ActivityLine;
+import com.touchkiss.mindme.repository.DailyReportRepository;
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import com.touchkiss.mindme.repository.DailyReportRepository.StoredReport;
+import dev.langchain4j.model.input.PromptTemplate;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Daily, weekly and monthly reports, materialized in {@code daily_reports}.
+ * <p>
+ * A daily report is served from storage until the ingest path marks its date dirty, and
+ * an off-peak job regenerates the past dates that were marked, so requests rarely wait for
+ * the model. Activity is always read by indexed visit-time range, and repeated visits to the
+ * same title are folded into one line with a count before they reach a prompt.
+ * <p>
+ * Weekly and monthly reports are built map-reduce style instead of from one prompt holding
+ * every activity of the period.
+ * <ul>
+ * <li>Map: each day is condensed into a short digest, days in parallel on a bounded pool.
+ * A day whose activity log exceeds the {@code digest} prompt budget is digested in parts
+ * that are merged again.</li>
+ * <li>Reduce: ranges longer than a week are folded into digests of up to seven
+ * consecutive days, and the report is written from those.</li>
+ * </ul>
+ * Day digests, group digests and the weekly and monthly reports themselves are stored too
+ * and reused while none of their dates is dirty, so a monthly report costs a handful of
+ * merges once its days are digested, and nothing at all until its activity changes.
+ * <p>
+ * The {@code stream*} variants push the final report to a consumer token by token; only
+ * the last call of a period report streams, the digests are gathered first. {@link #generate}
+ * additionally reports {@link Progress} through the {@code digest}, {@code merge} and
+ * {@code report} stages, for the asynchronous jobs of {@link ReportJobService}.
+ */
+@Slf4j
+@Service
+public class ReportService {
+
+    private static final String DIGEST_PROMPT = """
+            Condense the user's web browsing log for {{date}} into a compact digest for a later weekly or monthly report.
+            List, as short Markdown bullets:
+            - the main tasks and projects worked on, with approximate time ranges
+            - key topics read and what was learned
+            - focused deep-work stretches versus scattered browsing
+            Keep it under 200 words and do not invent anything that is not in the log.
+
+            IMPORTANT: Always respond in Chinese (Simplified).
+
+            Activity log (time [title] (summary)):
+            {{activities}}
+            """;
+
+    private static final String DAILY_PROMPT = """
+            You are a helpful personal assistant. Your goal is to analyze the user's daily web browsing history and generate a structured daily work report.
+            Focus on:
+            1. Identifying the main tasks worked on (e.g. Coding, Research, Meetings).
+            2. Summarizing key learnings or consumed content.
+            3. Highlighting any specific "Deep Work" sessions based on continuity of topics.
+
+            Input format: List of timestamps, page titles, and short summaries.
+            Output format: Markdown.
+
+            IMPORTANT: Always respond in Chinese (Simplified).
+
+            Here is my activity log for {{date}}:
+            {{activities}}
+            """;
+
+    private static final String MERGE_PROMPT = """
+            Merge the following digests of the user's browsing from {{start}} to {{end}} into one digest of the same style.
+            Keep recurring projects and topics together, keep notable one-off learnings, and drop repetition.
+            Keep it under 300 words.
+
+            IMPORTANT: Always respond in Chinese (Simplified).
+
+            Digests:
+            {{digests}}
+            """;
+
+    private static final String REPORT_PROMPT = """
+            You are a helpful personal assistant. Your goal is to generate a structured {{type}} work report based on the user's web browsing history.
+
+            Focus on:
+            1. **Key Accomplishments**: What main topics or projects did the user work on?
+            2. **Knowledge Gained**: Summarize the most important articles or pages read.
+            3. **Deep Work Analysis**: Identify periods of focused work vs distraction.
+            4. **Suggestions**: Provide 1-2 suggestions for improving improved productivity or knowledge management.
+
+            Input format: Digests of the browsing history, each covering one day or a few consecutive days.
+            Output format: Markdown.
+
+            IMPORTANT: Always respond in Chinese (Simplified).
+
+            Period: {{start}} to {{end}}
+            Digests:
+            {{digests}}
+            """;
+
+    private static final String ERROR_PREFIX = "Error generating report: ";
+    private static final int GROUP_DAYS = 7;
+    private static final int SUMMARY_CHARS = 200;
+    private static final int EXPECTED_DIGEST_TOKENS = 600;
+    private static final int EXPECTED_REPORT_TOKENS = 1500;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final ActivityRecordRepository activityRepository;
+    private final DailyReportRepository reportRepository;
+    private final PromptPacker promptPacker;
+    private final int precomputeMaxDays;
+    private final ExecutorService mappers;
+
+    public ReportService(
+            ActivityRecordRepository activityRepository,
+            DailyReportRepository reportRepository,
+            PromptPacker promptPacker,
+            @Value("${mindme.reports.map-concurrency:4}") int mapConcurrency,
+            @Value("${mindme.reports.precompute-max-days:31}") int precomputeMaxDays) {
+        this.activityRepository = activityRepository;
+        this.reportRepository = reportRepository;
+        this.promptPacker = promptPacker;
+        this.precomputeMaxDays = precomputeMaxDays;
+        this.mappers = Executors.newFixedThreadPool(Math.max(1, mapConcurrency));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        mappers.shutdownNow();
+    }
+
+    /**
+     * The stored daily report of {@code date}, regenerated first if its date was marked
+     * dirty since. A day beyond the {@code daily-report} budget keeps its most revisited
+     * and best described pages. Failures are returned as text and not stored.
+     */
+    public String generateDailyReport(LocalDate date) {
+        try {
+            return dailyReport(date, null, Progress.NONE);
+        } catch (Exception e) {
+            log.error("Failed to generate report", e);
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    /**
+     * Whether a report returned by {@link #generateDailyReport} or
+     * {@link #generatePeriodReport} is a failure message.
+     */
+    public static boolean isError(String report) {
+        return report == null || report.startsWith(ERROR_PREFIX);
+    }
+
+    /**
+     * {@link #generateDailyReport} with the report pushed to {@code onToken}; a stored
+     * report arrives in one piece. Failures are thrown.
+     */
+    public String streamDailyReport(LocalDate date, Consumer<String> onToken) {
+        return dailyReport(date, onToken, Progress.NONE);
+    }
+
+    /**
+     * The report of {@code period}, pushed to {@code onToken} as it is written and
+     * reporting its stages to {@code progress}. Failures are thrown.
+     */
+    public String generate(Period period, Consumer<String> onToken, Progress progress) {
+        return switch (period.type()) {
+            case DAILY -> dailyReport(period.start(), onToken, progress);
+            case WEEKLY -> periodReport(period.start(), period.end(), "Weekly", onToken, progress);
+            case MONTHLY -> periodReport(period.start(), period.end(), "Monthly", onToken, progress);
+            default -> throw new IllegalArgumentException("Not a report: " + period.type());
+        };
+    }
+
+    /**
+     * The stored report of {@code period} if none of its dates was marked dirty since.
+     */
+    public Optional<String> findFresh(Period period) {
+        return reportRepository.find(period.start(), period.type())
+                .filter(stored -> isFresh(stored, reportRepository.findMarkVersions(period.start(), period.end()),
+                        period.start(), period.end()))
+                .map(StoredReport::content);
+    }
+
+    private String dailyReport(LocalDate date, Consumer<String> onToken, Progress progress) {
+        Optional<String> stored = findFresh(new Period(ReportType.DAILY, date, date));
+        if (stored.isPresent()) {
+            return emit(stored.get(), onToken);
+        }
+        long version = sourceVersion(reportRepository.findMarkVersions(date, date), date, date);
+        List<ActivityLine> lines = activityLines(date);
+        if (lines.isEmpty()) {
+            String empty = "No activities found for " + date;
+            reportRepository.save(date, ReportType.DAILY, empty, 0, version);
+            return emit(empty, onToken);
+        }
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("date", date.toString());
+        variables.put("activities", promptPacker.pack(PromptPacker.Site.DAILY_REPORT, items(lines), "\n").text());
+        String prompt = PromptTemplate.from(DAILY_PROMPT).apply(variables).text();
+        progress.update("report", 0, 1);
+        String report = generate(PromptPacker.Site.DAILY_REPORT, prompt, EXPECTED_REPORT_TOKENS, onToken);
+        reportRepository.save(date, ReportType.DAILY, report, lines.size(), version);
+        progress.update("report", 1, 1);
+        return report;
+    }
+
+    /**
+     * Off-peak refresh of the daily reports and digests of past dates that were marked
+     * dirty, newest first and at most {@code precompute-max-days} per run.
+     */
+    @Scheduled(cron = "${mindme.reports.precompute-cron:0 30 3 * * ?}")
+    public void precompute() {
+        List<LocalDate> dates = reportRepository.findStaleDates(LocalDate.now(), precomputeMaxDays);
+        for (LocalDate date : dates) {
+            try {
+                generateDailyReport(date);
+                dayDigests(date, date);
+            } catch (Exception e) {
+                log.error("Failed to precompute reports of {}: {}", date, e.getMessage());
+            }
+        }
+        if (!dates.isEmpty()) {
+            log.info("Precomputed reports of {} dirty dates", dates.size());
+        }
+    }
+
+    public String generatePeriodReport(LocalDate start, LocalDate end, String type) {
+        try {
+            return periodReport(start, end, type, null, Progress.NONE);
+        } catch (Exception e) {
+            log.error("Failed to generate period report", e);
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    /**
+     * {@link #generatePeriodReport} with the final report pushed to {@code onToken}.
+     * Failures are thrown.
+     */
+    public String streamPeriodReport(LocalDate start, LocalDate end, String type, Consumer<String> onToken) {
+        return periodReport(start, end, type, onToken, Progress.NONE);
+    }
+
+    /**
+     * Weekly and monthly reports of whole calendar periods are stored under their first
+     * day; other ranges are generated every time.
+     */
+    private String periodReport(LocalDate start, LocalDate end, String type, Consumer<String> onToken,
+            Progress progress) {
+        ReportType stored = storedType(start, end, type);
+        if (stored != null) {
+            Optional<String> fresh = findFresh(new Period(stored, start, end));
+            if (fresh.isPresent()) {
+                return emit(fresh.get(), onToken);
+            }
+        }
+        Map<LocalDate, Long> versions = reportRepository.findMarkVersions(start, end);
+        Map<LocalDate, String> days = dayDigests(start, end, progress);
+        if (days.isEmpty()) {
+            return emit("No activities found for this period.", onToken);
+        }
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("type", type);
+        variables.put("start", start.toString());
+        variables.put("end", end.toString());
+        variables.put("digests", String.join("\n\n", reduce(start, end, days, versions, progress)));
+        progress.update("report", 0, 1);
+        String report = generate(PromptPacker.Site.PERIOD_REPORT,
+                PromptTemplate.from(REPORT_PROMPT).apply(variables).text(), EXPECTED_REPORT_TOKENS, onToken);
+        if (stored != null) {
+            reportRepository.save(start, stored, report, days.size(), sourceVersion(versions, start, end));
+        }
+        progress.update("report", 1, 1);
+        return report;
+    }
+
+    private static ReportType storedType(LocalDate start, LocalDate end, String type) {
+        for (ReportType candidate : List.of(ReportType.WEEKLY, ReportType.MONTHLY)) {
+            if (candidate.name().equalsIgnoreCase(type) && Period.of(candidate, start).equals(
+                    new Period(candidate, start, end))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Map step: the digest of every day in the range that had any activity. Stored digests
+     * of clean dates are reused; the rest are computed in parallel.
+     */
+    Map<LocalDate, String> dayDigests(LocalDate start, LocalDate end) {
+        return dayDigests(start, end, Progress.NONE);
+    }
+
+    private Map<LocalDate, String> dayDigests(LocalDate start, LocalDate end, Progress progress) {
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, StoredReport> stored = reportRepository.findRange(start, end, ReportType.DIGEST);
+        Map<LocalDate, Long> versions = reportRepository.findMarkVersions(start, end);
+        Map<LocalDate, CompletableFuture<String>> pending = new TreeMap<>();
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            StoredReport digest = stored.get(day);
+            if (digest != null && isFresh(digest, versions, day, day)) {
+                pending.put(day, CompletableFuture.completedFuture(digest.content()));
+            } else if (!day.isAfter(today)) {
+                missing.add(day);
+            }
+        }
+        Step step = new Step(progress, "digest", missing.size());
+        for (LocalDate date : missing) {
+            pending.put(date, CompletableFuture.supplyAsync(() -> step.done(digestDay(date)), mappers));
+        }
+        CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).join();
+
+        Map<LocalDate, String> digests = new TreeMap<>();
+        pending.forEach((day, digest) -> {
+            String content = digest.join();
+            if (content != null && !content.isBlank()) {
+                digests.put(day, content);
+            }
+        });
+        return digests;
+    }
+
+    /**
+     * Digest one day and store it. A day without activity is stored with an empty digest so
+     * it is not queried again.
+     */
+    private String digestDay(LocalDate date) {
+        long version = sourceVersion(reportRepository.findMarkVersions(date, date), date, date);
+        List<ActivityLine> lines = activityLines(date);
+        String digest = "";
+        if (!lines.isEmpty()) {
+            List<String> parts = new ArrayList<>();
+            for (String chunk : chunk(lines)) {
+                Map<String, Object> variables = new LinkedHashMap<>();
+                variables.put("date", date.toString());
+                variables.put("activities", chunk);
+                parts.add(generate(PromptPacker.Site.DIGEST, PromptTemplate.from(DIGEST_PROMPT).apply(variables).text(),
+                        EXPECTED_DIGEST_TOKENS));
+            }
+            digest = parts.size() == 1 ? parts.get(0) : merge(date, date, parts);
+        }
+        reportRepository.save(date, ReportType.DIGEST, digest, lines.size(), version);
+        log.info("Digested {} activities of {}", lines.size(), date);
+        return digest;
+    }
+
+    /**
+     * Split a day's activity log into pieces that fit the {@code digest} budget.
+     */
+    List<String> chunk(List<ActivityLine> lines) {
+        return promptPacker.split(PromptPacker.Site.DIGEST, items(lines)).stream()
+                .map(batch -> String.join("\n", batch))
+                .toList();
+    }
+
+    /**
+     * Activity lines keyed by title, so repeated visits fold; lines with a summary carry a
+     * little more weight when the budget forces a choice.
+     */
+    private static List<PromptPacker.Item> items(List<ActivityLine> lines) {
+        return lines.stream()
+                .map(line -> new PromptPacker.Item(line.title(), format(line),
+                        1 + (line.contentSummary() != null && !line.contentSummary().isBlank() ? 0.5 : 0)))
+                .toList();
+    }
+
+    /**
+     * Reduce step: ranges of up to a week are reported from their day digests; longer ones
+     * are first folded into digests of up to seven consecutive days, merged in parallel and
+     * stored against {@code versions}, the mark versions read before the day digests were
+     * gathered.
+     */
+    private List<String> reduce(LocalDate start, LocalDate end, Map<LocalDate, String> days,
+            Map<LocalDate, Long> versions, Progress progress) {
+        if (!end.isAfter(start.plusDays(GROUP_DAYS - 1))) {
+            return days.entrySet().stream().map(e -> label(e.getKey(), e.getKey(), e.getValue())).toList();
+        }
+        Map<LocalDate, StoredReport> stored = reportRepository.findRange(start, end, ReportType.GROUP_DIGEST);
+        List<Group> groups = new ArrayList<>();
+        for (LocalDate groupStart = start; !groupStart.isAfter(end); groupStart = groupStart.plusDays(GROUP_DAYS)) {
+            LocalDate from = groupStart;
+            LocalDate to = groupStart.plusDays(GROUP_DAYS - 1).isAfter(end) ? end : groupStart.plusDays(GROUP_DAYS - 1);
+            List<String> members = days.entrySet().stream()
+                    .filter(e -> !e.getKey().isBefore(from) && !e.getKey().isAfter(to))
+                    .map(e -> label(e.getKey(), e.getKey(), e.getValue()))
+                    .toList();
+            StoredReport cached = stored.get(from);
+            if (members.isEmpty()) {
+                continue;
+            } else if (cached != null && isFresh(cached, versions, from, to)) {
+                groups.add(new Group(from, to, members, label(from, to, cached.content())));
+            } else {
+                groups.add(new Group(from, to, members, members.size() == 1 ? members.get(0) : null));
+            }
+        }
+        Step step = new Step(progress, "merge", (int) groups.stream().filter(g -> g.digest() == null).count());
+        List<CompletableFuture<String>> merged = groups.stream()
+                .map(g -> g.digest() != null ? CompletableFuture.completedFuture(g.digest())
+                        : CompletableFuture.supplyAsync(() -> {
+                            String digest = merge(g.from(), g.to(), g.members());
+                            reportRepository.save(g.from(), ReportType.GROUP_DIGEST, digest, g.members().size(),
+                                    sourceVersion(versions, g.from(), g.to()));
+                            return step.done(label(g.from(), g.to(), digest));
+                        }, mappers))
+                .toList();
+        return merged.stream().map(CompletableFuture::join).toList();
+    }
+
+    private String merge(LocalDate start, LocalDate end, List<String> digests) {
+        Map<String, Object> variables = new LinkedHashMap<>();
+        variables.put("start", start.toString());
+        variables.put("end", end.toString());
+        variables.put("digests", String.join("\n\n", digests));
+        return generate(PromptPacker.Site.MERGE, PromptTemplate.from(MERGE_PROMPT).apply(variables).text(),
+                EXPECTED_DIGEST_TOKENS);
+    }
+
+    private List<ActivityLine> activityLines(LocalDate date) {
+        ZoneId zone = ZoneId.systemDefault();
+        return activityRepository.findActivityLines(date.atStartOfDay(zone), date.plusDays(1).atStartOfDay(zone));
+    }
+
+    /**
+     * A stored row is fresh unless one of its dates was marked dirty after its source data
+     * was read, which shows as a grown sum of their mark versions.
+     */
+    private static boolean isFresh(StoredReport report, Map<LocalDate, Long> versions, LocalDate from,
+            LocalDate to) {
+        return report.sourceVersion() != null && sourceVersion(versions, from, to) <= report.sourceVersion();
+    }
+
+    /**
+     * Sum of the mark versions of the dates from {@code from} to {@code to}. A date's version
+     * only grows and a mark still uncommitted when they were read commits with a higher one,
+     * so any later mark raises the sum.
+     */
+    private static long sourceVersion(Map<LocalDate, Long> versions, LocalDate from, LocalDate to) {
+        return versions.entrySet().stream()
+                .filter(e -> !e.getKey().isBefore(from) && !e.getKey().isAfter(to))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+
+    private static String label(LocalDate start, LocalDate end, String digest) {
+        return (start.equals(end) ? "### " + start : "### " + start + " ~ " + end) + "\n" + digest;
+    }
+
+    private static String format(ActivityLine line) {
+        String summary = line.contentSummary();
+        if (summary != null && summary.length() > SUMMARY_CHARS) {
+            summary = summary.substring(0, SUMMARY_CHARS) + "…";
+        }
+        return String.format("- %s [%s] (Summary: %s)", line.visitTime().format(TIME), line.title(), summary);
+    }
+
+    private String generate(PromptPacker.Site site, String prompt, int expectedCompletionTokens) {
+        // Reasoning models may prepend <think> blocks that must not leak into later prompts
+        return ThinkFilter.strip(promptPacker.generate(site, prompt, expectedCompletionTokens));
+    }
+
+    private String generate(PromptPacker.Site site, String prompt, int expectedCompletionTokens,
+            Consumer<String> onToken) {
+        return onToken == null
+                ? generate(site, prompt, expectedCompletionTokens)
+                : promptPacker.stream(site, prompt, expectedCompletionTokens, onToken);
+    }
+
+    private static String emit(String text, Consumer<String> onToken) {
+        if (onToken != null) {
+            onToken.accept(text);
+        }
+        return text;
+    }
+
+    /**
+     * Receives the stage of a report being generated: {@code digest} and {@code merge}
+     * count the model calls of the map and reduce steps, {@code report} the final call.
+     * May be called from several threads.
+     */
+    @FunctionalInterface
+    public interface Progress {
+
+        Progress NONE = (stage, done, total) -> {
+        };
+
+        void update(String stage, int done, int total);
+    }
+
+    /**
+     * The dates a report covers: one day, a Monday-to-Sunday week or a calendar month.
+     */
+    public record Period(ReportType type, LocalDate start, LocalDate end) {
+
+        /**
+         * @throws IllegalArgumentException for a type that is not a report, e.g. a digest
+         */
+        public static Period of(ReportType type, LocalDate date) {
+            return switch (type) {
+                case DAILY -> new Period(type, date, date);
+                case WEEKLY -> new Period(type, date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)),
+                        date.with(TemporalAdjusters.nextOrSame(DayOfWeek.SUNDAY)));
+                case MONTHLY -> new Period(type, date.with(TemporalAdjusters.firstDayOfMonth()),
+                        date.with(TemporalAdjusters.lastDayOfMonth()));
+                default -> throw new IllegalArgumentException("Not a report: " + type);
+            };
+        }
+    }
+
+    /**
+     * Up to seven consecutive days of a long range; {@code digest} is null until merged.
+     */
+    private record Group(LocalDate from, LocalDate to, List<String> members, String digest) {
+    }
+
+    /**
+     * Counts the completed calls of one stage, which run in parallel.
+     */
+    private static final class Step {
+
+        private final Progress progress;
+        private final String stage;
+        private final int total;
+        private final AtomicInteger done = new AtomicInteger();
+
+        Step(Progress progress, String stage, int total) {
+            this.progress = progress;
+            this.stage = stage;
+            this.total = total;
+            if (total > 0) {
+                progress.update(stage, 0, total);
+            }
+        }
+
+        <T> T done(T result) {
+            progress.update(stage, done.incrementAndGet(), total);
+            return result;
+        }
+    }
+}
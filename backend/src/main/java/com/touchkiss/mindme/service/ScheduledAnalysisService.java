@@ -1,231 +1,648 @@
 package com.touchkiss.mindme.service;
 
-import com.touchkiss.mindme.domain.ActivityRecord;
 import com.touchkiss.mindme.domain.KnowledgeEntry;
-import com.touchkiss.mindme.domain.UserInterest;
-import com.touchkiss.mindme.domain.UserTag;
-import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository.AnalysisTask;
 import com.touchkiss.mindme.repository.KnowledgeEntryRepository;
-import com.touchkiss.mindme.repository.UserInterestRepository;
-import com.touchkiss.mindme.repository.UserTagRepository;
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import com.touchkiss.mindme.repository.ProfileCounterRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Background knowledge extraction for ingested activity.
+ * <p>
+ * Each tick claims a leased batch from {@link AnalysisQueueRepository}, lets
+ * {@link PreClassifier} skip low-engagement records and order the rest, and fans it out
+ * over a fixed worker pool. Records are packed into shared prompts where enabled and
+ * answered from {@link LlmResponseCache} where possible; model calls go through
+ * {@link LlmRateLimiter} and hold no transaction. Each record's results are written in a
+ * short transaction of its own, and failures are retried with backoff until
+ * {@code max-attempts}, after which the record is parked as DEAD.
+ */
 @Slf4j
 @Service
 public class ScheduledAnalysisService {
 
-    private final ActivityRecordRepository activityRepository;
+    private final AnalysisQueueRepository analysisQueue;
     private final KnowledgeEntryRepository knowledgeRepository;
-    private final UserInterestRepository interestRepository;
-    private final UserTagRepository tagRepository;
-    private final ChatLanguageModel chatModel;
-
-    private static final int BATCH_SIZE = 10;
+    private final ProfileCounterRepository profileCounters;
+    private final PromptPacker promptPacker;
+    private final LlmRateLimiter rateLimiter;
+    private final LlmResponseCache responseCache;
+    private final PreClassifier preClassifier;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+
+    private static final int EXPECTED_COMPLETION_TOKENS = 400;
+
+    private static final String SYSTEM_PROMPT = """
+            You are a knowledge extraction and content quality assessment assistant.
+
+            First, evaluate the relevance and value of this web page visit:
+            - Score 1-3: Low value (entertainment, gossip, social media browsing, idle chatting, forums without educational content)
+            - Score 4-6: Medium value (general news, casual reading, reference lookup)
+            - Score 7-10: High value (learning, research, technical content, professional development, deep work)
+
+            Output format:
+            ---SCORE---
+            Value: [1-10]
+            Reason: [brief reason in Chinese]
+            ---END_SCORE---
+
+            If the score is 4 or above, also extract knowledge points in this format:
+            ---KNOWLEDGE---
+            Title: [concise title]
+            Category: [one of: Technology, Business, Research, Learning, News, Personal, Other]
+            Tags: [comma-separated tags]
+            Content: [key insight or takeaway in 1-3 sentences]
+            InterestLevel: [high/medium/low based on depth and learning value]
+            ---END---
+
+            If the score is 3 or below, output only the SCORE section (no knowledge extraction needed).
+            If the page is a login page, error page, or has no meaningful content, output:
+            ---NO_KNOWLEDGE---
+
+            IMPORTANT: All content (Title, Tags, Content, Reason) MUST be in Chinese (Simplified).
+            """;
+
+    private static final String PACKED_INSTRUCTIONS = """
+            You will receive several page visits. Each one starts with a line "===RECORD n===".
+            Assess every record independently and answer for each of them, in any order:
+            ===RESULT n===
+            (the SCORE / KNOWLEDGE / NO_KNOWLEDGE output for record n, exactly as specified above)
+            ===END_RESULT===
+            Use the record numbers as given and do not skip any record.
+            """;
+
+    private static final Pattern SCORE = Pattern.compile("Value:\\s*(\\d+)");
+    private static final Pattern KNOWLEDGE = Pattern.compile(
+            "---KNOWLEDGE---\\s*" +
+                    "Title:\\s*(.+?)\\s*" +
+                    "Category:\\s*(.+?)\\s*" +
+                    "Tags:\\s*(.+?)\\s*" +
+                    "Content:\\s*(.+?)\\s*" +
+                    "---END---",
+            Pattern.DOTALL);
+    private static final Pattern RESULT_BLOCK = Pattern.compile(
+            "===RESULT\\s+(\\d+)\\s*===(.*?)(?====END_RESULT===|===RESULT\\s+\\d+\\s*===|\\z)", Pattern.DOTALL);
+
+    private static final long THROUGHPUT_WINDOW_MS = 15 * 60_000;
+
+    private final int batchSize;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final int retryLimit;
+    private final int packMaxRecords;
+    private final int packTokenBudget;
+    private final ExecutorService workers;
+
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong packedCalls = new AtomicLong();
+    private final AtomicLong packedRecords = new AtomicLong();
+    private final AtomicLong singleRetries = new AtomicLong();
+    // Completion timestamps and backlog samples within the throughput window
+    private final Deque<Long> completions = new ArrayDeque<>();
+    private final Deque<long[]> backlogSamples = new ArrayDeque<>();
 
     public ScheduledAnalysisService(
-            ActivityRecordRepository activityRepository,
+            AnalysisQueueRepository analysisQueue,
             KnowledgeEntryRepository knowledgeRepository,
-            UserInterestRepository interestRepository,
-            UserTagRepository tagRepository,
-            ChatLanguageModel chatModel) {
-        this.activityRepository = activityRepository;
+            ProfileCounterRepository profileCounters,
+            PromptPacker promptPacker,
+            LlmRateLimiter rateLimiter,
+            LlmResponseCache responseCache,
+            PreClassifier preClassifier,
+            TransactionTemplate transactionTemplate,
+            DataSource dataSource,
+            @Value("${mindme.analysis.workers:4}") int workers,
+            @Value("${mindme.analysis.batch-size:40}") int batchSize,
+            @Value("${mindme.analysis.lease-ms:600000}") long leaseMs,
+            @Value("${mindme.analysis.max-attempts:5}") int maxAttempts,
+            @Value("${mindme.analysis.backoff-base-ms:60000}") long backoffBaseMs,
+            @Value("${mindme.analysis.retry-share:0.25}") double retryShare,
+            @Value("${mindme.analysis.pack.max-records:8}") int packMaxRecords,
+            @Value("${mindme.analysis.pack.token-budget:3000}") int packTokenBudget) {
+        this.analysisQueue = analysisQueue;
         this.knowledgeRepository = knowledgeRepository;
-        this.interestRepository = interestRepository;
-        this.tagRepository = tagRepository;
-        this.chatModel = chatModel;
+        this.profileCounters = profileCounters;
+        this.promptPacker = promptPacker;
+        this.rateLimiter = rateLimiter;
+        this.responseCache = responseCache;
+        this.preClassifier = preClassifier;
+        this.transactionTemplate = transactionTemplate;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.leaseMs = leaseMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMs = backoffBaseMs;
+        this.retryLimit = (int) Math.floor(batchSize * Math.max(0, Math.min(1, retryShare)));
+        this.packMaxRecords = Math.max(1, packMaxRecords);
+        this.packTokenBudget = packTokenBudget;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers));
     }
 
-    @Scheduled(fixedRate = 300000) // 5 minutes
-    @Transactional
-    public void analyzeUnprocessedRecords() {
-        List<ActivityRecord> unanalyzed = activityRepository.findByAnalyzedFalse();
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
 
-        if (unanalyzed.isEmpty()) {
+    @Scheduled(fixedDelayString = "${mindme.analysis.poll-interval-ms:30000}")
+    public void analyzeUnprocessedRecords() {
+        int released = analysisQueue.releaseExpiredLeases(leaseMs);
+        if (released > 0) {
+            log.warn("Released {} analysis claims with expired leases", released);
+        }
+        sampleBacklog();
+        if (processBatch() == 0) {
             log.debug("No unanalyzed records found");
-            return;
         }
+    }
+
+    /**
+     * Claim one batch and analyze it on the worker pool. Retries get at most
+     * {@code retry-share} of the batch, so failing records can neither starve fresh ones nor
+     * keep burning the LLM budget. Interest and tag counters collected from the batch are
+     * added with one flush at the end instead of per record.
+     *
+     * @return number of records claimed
+     */
+    private int processBatch() {
+        List<AnalysisTask> claimed = analysisQueue.claim(batchSize - retryLimit, retryLimit);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        log.info("Analyzing batch of {} records", claimed.size());
+        long start = System.currentTimeMillis();
+        ProfileDeltas deltas = new ProfileDeltas();
+        List<AnalysisTask> uncached = answerFromCache(triage(claimed), deltas);
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(uncached.size());
+        for (List<AnalysisTask> pack : pack(uncached)) {
+            tasks.add(CompletableFuture.runAsync(
+                    () -> {
+                        if (pack.size() == 1) {
+                            analyzeAndSave(pack.get(0), deltas);
+                        } else {
+                            analyzePackAndSave(pack, deltas);
+                        }
+                    }, workers));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        if (!deltas.isEmpty()) {
+            try {
+                deltas.flushTo(profileCounters);
+            } catch (Exception e) {
+                // Records are already stored; only the profile counters miss this batch
+                log.error("Failed to update interest profile counters: {}", e.getMessage());
+            }
+        }
+        PoolStats pool = poolStats();
+        log.info("Analysis batch of {} finished in {} ms (connections: {} active, {} idle, {} waiting)",
+                claimed.size(), System.currentTimeMillis() - start,
+                pool != null ? pool.active() : "?", pool != null ? pool.idle() : "?",
+                pool != null ? pool.awaiting() : "?");
+        return claimed.size();
+    }
+
+    /**
+     * Run the pre-classifier over a claimed batch: finish skipped records with their
+     * provisional score and store that score on the others.
+     *
+     * @return the records that still need analysis, prioritized ones first
+     */
+    private List<AnalysisTask> triage(List<AnalysisTask> claimed) {
+        Map<AnalysisTask, Integer> skip = new LinkedHashMap<>();
+        Map<AnalysisTask, Integer> provisional = new LinkedHashMap<>();
+        List<AnalysisTask> first = new ArrayList<>();
+        List<AnalysisTask> rest = new ArrayList<>();
+        for (AnalysisTask task : claimed) {
+            PreClassifier.Classification c = preClassifier.classify(task);
+            switch (c.decision()) {
+                case SKIP -> skip.put(task, c.provisionalScore());
+                case ANALYZE_FIRST -> first.add(task);
+                case ANALYZE -> rest.add(task);
+            }
+            if (c.decision() != PreClassifier.Decision.SKIP) {
+                provisional.put(task, c.provisionalScore());
+            }
+        }
+        try {
+            analysisQueue.skip(skip);
+            skipped.addAndGet(skip.size());
+            analysisQueue.setProvisionalScores(provisional);
+        } catch (Exception e) {
+            // Skipped records return to the queue when their lease expires
+            log.error("Failed to store pre-classifier results: {}", e.getMessage());
+        }
+        if (!skip.isEmpty()) {
+            log.info("Pre-classifier skipped {} of {} records without a model call", skip.size(), claimed.size());
+        }
+        first.addAll(rest);
+        return first;
+    }
+
+    /**
+     * Store records whose prompt was answered before. Answers are cached under the
+     * single-record prompt, packed or not, so unchanged content is found either way.
+     *
+     * @return the records that still need the model
+     */
+    private List<AnalysisTask> answerFromCache(List<AnalysisTask> claimed, ProfileDeltas deltas) {
+        if (!responseCache.isEnabled(LlmResponseCache.CallSite.ANALYSIS)) {
+            return claimed;
+        }
+        List<AnalysisTask> uncached = new ArrayList<>(claimed.size());
+        for (AnalysisTask task : claimed) {
+            String cached = responseCache.get(LlmResponseCache.CallSite.ANALYSIS, singlePrompt(task));
+            if (cached == null || !isWellFormed(cached)) {
+                uncached.add(task);
+                continue;
+            }
+            try {
+                save(task, toAnalysis(cached, task), deltas);
+            } catch (Exception e) {
+                log.error("Failed to store cached analysis of record {}: {}", task.id(), e.getMessage());
+                fail(task, e);
+            }
+        }
+        return uncached;
+    }
 
-        log.info("Found {} unanalyzed records, processing in batches of {}", unanalyzed.size(), BATCH_SIZE);
+    /**
+     * Group records into packs of at most {@code max-records} whose user prompts fit the
+     * token budget. A record that alone exceeds the budget gets a pack of its own.
+     */
+    List<List<AnalysisTask>> pack(List<AnalysisTask> tasks) {
+        List<List<AnalysisTask>> packs = new ArrayList<>();
+        List<AnalysisTask> current = new ArrayList<>();
+        long tokens = 0;
+        for (AnalysisTask task : tasks) {
+            long cost = PromptPacker.countTokens(userPrompt(task));
+            if (!current.isEmpty() && (current.size() >= packMaxRecords || tokens + cost > packTokenBudget)) {
+                packs.add(current);
+                current = new ArrayList<>();
+                tokens = 0;
+            }
+            current.add(task);
+            tokens += cost;
+        }
+        if (!current.isEmpty()) {
+            packs.add(current);
+        }
+        return packs;
+    }
 
-        for (int i = 0; i < Math.min(unanalyzed.size(), BATCH_SIZE); i++) {
-            ActivityRecord record = unanalyzed.get(i);
+    private void analyzeAndSave(AnalysisTask task, ProfileDeltas deltas) {
+        try {
+            save(task, analyzeRecord(task), deltas);
+        } catch (Exception e) {
+            log.error("Failed to analyze record {}: {}", task.id(), e.getMessage());
+            fail(task, e);
+        }
+    }
+
+    /**
+     * Analyze a pack in one call that shares the instructions. Answers are mapped back by
+     * record number; a record the model skipped or garbled is analyzed on its own.
+     */
+    private void analyzePackAndSave(List<AnalysisTask> pack, ProfileDeltas deltas) {
+        StringBuilder prompt = new StringBuilder(SYSTEM_PROMPT).append('\n').append(PACKED_INSTRUCTIONS);
+        for (int i = 0; i < pack.size(); i++) {
+            prompt.append("\n===RECORD ").append(i + 1).append("===\n").append(userPrompt(pack.get(i)));
+        }
+
+        Map<Integer, String> answers;
+        try {
+            answers = splitPackedResponse(generate(prompt.toString(), EXPECTED_COMPLETION_TOKENS * pack.size()));
+        } catch (Exception e) {
+            log.error("Failed to analyze pack of {} records: {}", pack.size(), e.getMessage());
+            pack.forEach(task -> fail(task, e));
+            return;
+        }
+        packedCalls.incrementAndGet();
+
+        for (int i = 0; i < pack.size(); i++) {
+            AnalysisTask task = pack.get(i);
+            String answer = answers.get(i + 1);
+            if (answer == null || !isWellFormed(answer)) {
+                log.debug("Record {} missing or garbled in packed answer, retrying alone", task.id());
+                singleRetries.incrementAndGet();
+                analyzeAndSave(task, deltas);
+                continue;
+            }
+            packedRecords.incrementAndGet();
+            responseCache.put(LlmResponseCache.CallSite.ANALYSIS, singlePrompt(task), answer, -1);
             try {
-                analyzeRecord(record);
-                record.setAnalyzed(true);
-                activityRepository.save(record);
-                log.info("Analyzed record: {}", record.getTitle());
+                save(task, toAnalysis(answer, task), deltas);
             } catch (Exception e) {
-                log.error("Failed to analyze record {}: {}", record.getId(), e.getMessage());
+                log.error("Failed to store analysis of record {}: {}", task.id(), e.getMessage());
+                fail(task, e);
             }
         }
     }
 
-    private void analyzeRecord(ActivityRecord record) {
-        String systemPrompt = """
-                You are a knowledge extraction and content quality assessment assistant.
+    private void save(AnalysisTask task, Analysis result, ProfileDeltas deltas) {
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> persist(task, result)))) {
+            log.warn("Lease on record {} expired before its analysis was stored", task.id());
+            return;
+        }
+        Knowledge knowledge = result.knowledge();
+        if (knowledge != null) {
+            deltas.addInterest(knowledge.category(), 1.0);
+            for (String tag : knowledge.tagList()) {
+                deltas.addTag(tag.trim());
+            }
+        }
+        analyzed.incrementAndGet();
+        recordCompletion();
+        log.info("Analyzed record: {}", task.title());
+    }
 
-                First, evaluate the relevance and value of this web page visit:
-                - Score 1-3: Low value (entertainment, gossip, social media browsing, idle chatting, forums without educational content)
-                - Score 4-6: Medium value (general news, casual reading, reference lookup)
-                - Score 7-10: High value (learning, research, technical content, professional development, deep work)
+    /**
+     * Schedule a failed record for another attempt after {@code backoff-base-ms}, doubling
+     * per attempt, or dead-letter it once it has used up {@code max-attempts}. A record whose
+     * lease was lost meanwhile is left alone.
+     */
+    private void fail(AnalysisTask task, Exception cause) {
+        failed.incrementAndGet();
+        String error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        try {
+            if (task.attempts() >= maxAttempts) {
+                deadLettered.incrementAndGet();
+                log.error("Giving up analyzing record {} after {} attempts", task.id(), task.attempts());
+                analysisQueue.deadLetter(task, error);
+                return;
+            }
+            retried.incrementAndGet();
+            long delay = backoffBaseMs * (1L << Math.min(Math.max(task.attempts(), 1) - 1, 16));
+            analysisQueue.retryLater(task, error, delay);
+        } catch (Exception e) {
+            // The lease expires and the record is claimed again
+            log.error("Failed to reschedule record {}: {}", task.id(), e.getMessage());
+        }
+    }
 
-                Output format:
-                ---SCORE---
-                Value: [1-10]
-                Reason: [brief reason in Chinese]
-                ---END_SCORE---
+    /**
+     * Split a packed answer into per-record blocks keyed by record number. Later duplicates
+     * of a number are ignored.
+     */
+    static Map<Integer, String> splitPackedResponse(String response) {
+        Map<Integer, String> blocks = new HashMap<>();
+        Matcher matcher = RESULT_BLOCK.matcher(response);
+        while (matcher.find()) {
+            blocks.putIfAbsent(Integer.parseInt(matcher.group(1)), matcher.group(2));
+        }
+        return blocks;
+    }
 
-                If the score is 4 or above, also extract knowledge points in this format:
-                ---KNOWLEDGE---
-                Title: [concise title]
-                Category: [one of: Technology, Business, Research, Learning, News, Personal, Other]
-                Tags: [comma-separated tags]
-                Content: [key insight or takeaway in 1-3 sentences]
-                InterestLevel: [high/medium/low based on depth and learning value]
-                ---END---
+    /**
+     * A usable answer either declines extraction or carries a parseable score, and any
+     * knowledge section it opens must be complete.
+     */
+    static boolean isWellFormed(String answer) {
+        if (answer.contains("---NO_KNOWLEDGE---")) {
+            return true;
+        }
+        if (!answer.contains("---SCORE---") || !SCORE.matcher(answer).find()) {
+            return false;
+        }
+        return !answer.contains("---KNOWLEDGE---") || KNOWLEDGE.matcher(answer).find();
+    }
 
-                If the score is 3 or below, output only the SCORE section (no knowledge extraction needed).
-                If the page is a login page, error page, or has no meaningful content, output:
-                ---NO_KNOWLEDGE---
+    private Analysis analyzeRecord(AnalysisTask record) {
+        String prompt = singlePrompt(record);
+        String response = generate(prompt, EXPECTED_COMPLETION_TOKENS);
+        if (!isWellFormed(response)) {
+            throw new IllegalStateException("Unparsable model output");
+        }
+        responseCache.put(LlmResponseCache.CallSite.ANALYSIS, prompt, response, -1);
+        return toAnalysis(response, record);
+    }
 
-                IMPORTANT: All content (Title, Tags, Content, Reason) MUST be in Chinese (Simplified).
-                """;
+    private String singlePrompt(AnalysisTask record) {
+        return SYSTEM_PROMPT + "\n\n" + userPrompt(record);
+    }
 
-        String userPrompt = String.format("""
+    /**
+     * The record's part of a prompt; an oversized summary is cut so one record never
+     * exceeds the pack budget.
+     */
+    private String userPrompt(AnalysisTask record) {
+        return String.format("""
                 Page Title: %s
                 URL: %s
                 Summary: %s
                 Time Spent: %d seconds
                 """,
-                record.getTitle(),
-                record.getUrl(),
-                record.getContentSummary() != null ? record.getContentSummary() : "N/A",
-                record.getDurationSeconds() != null ? record.getDurationSeconds() : 0);
-
-        try {
-            // Use LangChain4j ChatModel
-            String response = chatModel.generate(systemPrompt + "\n\n" + userPrompt);
+                record.title(),
+                record.url(),
+                record.contentSummary() != null
+                        ? PromptPacker.truncate(record.contentSummary(), packTokenBudget)
+                        : "N/A",
+                record.durationSeconds() != null ? record.durationSeconds() : 0);
+    }
 
-            if (response.contains("---NO_KNOWLEDGE---")) {
-                log.debug("No knowledge extracted from: {}", record.getTitle());
-                // Parse score even if no knowledge
-                parseAndSaveScore(response, record);
-                return;
-            }
+    private Analysis toAnalysis(String response, AnalysisTask record) {
+        if (response.contains("---NO_KNOWLEDGE---")) {
+            log.debug("No knowledge extracted from: {}", record.title());
+            // Parse score even if no knowledge
+            return new Analysis(parseScore(response, record), null);
+        }
 
-            parseAndSaveScore(response, record);
-            parseAndSaveKnowledge(response, record);
+        return new Analysis(parseScore(response, record), parseKnowledge(response));
+    }
 
-        } catch (Exception e) {
-            log.error("AI analysis failed for record {}: {}", record.getId(), e.getMessage());
+    /**
+     * Write one record's results. Runs in its own transaction; the fenced completion goes
+     * first so a record whose lease was lost leaves no knowledge entry behind. Profile
+     * counters are left to the batch flush.
+     *
+     * @return false if the lease was lost and nothing was written
+     */
+    private boolean persist(AnalysisTask task, Analysis result) {
+        Knowledge knowledge = result.knowledge();
+        if (!analysisQueue.complete(task, result.interestScore(), knowledge != null ? knowledge.tags() : null)) {
+            return false;
+        }
+        if (knowledge == null) {
+            return true;
         }
+
+        // Save knowledge entry
+        KnowledgeEntry entry = new KnowledgeEntry();
+        entry.setTitle(knowledge.title());
+        entry.setCategory(knowledge.category());
+        entry.setTags(knowledge.tagList());
+        entry.setContent(knowledge.content());
+        entry.setSourceRecordId(task.id());
+        knowledgeRepository.save(entry);
+        log.info("Saved knowledge entry: {}", entry.getTitle());
+        return true;
+    }
+
+    private String generate(String prompt, int expectedCompletionTokens) {
+        return promptPacker.generate(PromptPacker.Site.ANALYSIS, prompt, expectedCompletionTokens);
     }
 
-    private void parseAndSaveScore(String response, ActivityRecord record) {
-        Pattern pattern = Pattern.compile("Value:\\s*(\\d+)");
-        Matcher matcher = pattern.matcher(response);
+    private Integer parseScore(String response, AnalysisTask record) {
+        Matcher matcher = SCORE.matcher(response);
         if (matcher.find()) {
             try {
                 int score = Integer.parseInt(matcher.group(1));
-                record.setInterestScore(Math.min(100, score * 10)); // Scale 1-10 to 10-100
+                return Math.min(100, score * 10); // Scale 1-10 to 10-100
             } catch (NumberFormatException e) {
-                log.warn("Failed to parse score for record {}", record.getId());
+                log.warn("Failed to parse score for record {}", record.id());
             }
         }
+        return null;
     }
 
-    private void parseAndSaveKnowledge(String response, ActivityRecord source) {
-        Pattern pattern = Pattern.compile(
-                "---KNOWLEDGE---\\s*" +
-                        "Title:\\s*(.+?)\\s*" +
-                        "Category:\\s*(.+?)\\s*" +
-                        "Tags:\\s*(.+?)\\s*" +
-                        "Content:\\s*(.+?)\\s*" +
-                        "---END---",
-                Pattern.DOTALL);
-
-        Matcher matcher = pattern.matcher(response);
+    private Knowledge parseKnowledge(String response) {
+        Matcher matcher = KNOWLEDGE.matcher(response);
 
         if (matcher.find()) {
-            String title = matcher.group(1).trim();
-            String category = matcher.group(2).trim();
-            String tagsStr = matcher.group(3).trim();
-            String[] tags = tagsStr.split("\\s*,\\s*");
-            String content = matcher.group(4).trim();
-
-            // Save knowledge entry
-            KnowledgeEntry entry = new KnowledgeEntry();
-            entry.setTitle(title);
-            entry.setCategory(category);
-            entry.setTags(tags);
-            entry.setContent(content);
-            entry.setSourceRecordId(source.getId());
-            knowledgeRepository.save(entry);
-            log.info("Saved knowledge entry: {}", entry.getTitle());
-
-            // Save tags to ActivityRecord for filtering
-            source.setTags(tagsStr);
-
-            // Update user interest for category
-            updateInterest(category);
-
-            // Update user tags
-            for (String tag : tags) {
-                updateTag(tag.trim());
+            return new Knowledge(matcher.group(1).trim(), matcher.group(2).trim(), matcher.group(3).trim(),
+                    matcher.group(4).trim());
+        }
+        return null;
+    }
+
+    /**
+     * Drain the queue on demand. Runs through the same claims as the scheduler, so both can
+     * run at once without analyzing a record twice.
+     *
+     * @return number of records successfully analyzed; skipped records are not counted
+     */
+    public int triggerAnalysis() {
+        long before = analyzed.get();
+        long done = before + skipped.get();
+        // Stop once the queue is empty, or a whole batch failed and would only be re-claimed
+        while (processBatch() > 0 && analyzed.get() + skipped.get() > done) {
+            done = analyzed.get() + skipped.get();
+        }
+        return (int) (analyzed.get() - before);
+    }
+
+    private void sampleBacklog() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> queue = analysisQueue.countActive();
+        long backlog = queue.getOrDefault("PENDING", 0L) + queue.getOrDefault("RUNNING", 0L);
+        synchronized (backlogSamples) {
+            backlogSamples.addLast(new long[] { now, backlog });
+            while (backlogSamples.size() > 1 && backlogSamples.peekFirst()[0] < now - THROUGHPUT_WINDOW_MS) {
+                backlogSamples.removeFirst();
             }
         }
     }
 
-    private void updateInterest(String category) {
-        UserInterest interest = interestRepository.findByCategory(category)
-                .orElseGet(() -> {
-                    UserInterest newInterest = new UserInterest();
-                    newInterest.setCategory(category);
-                    newInterest.setWeight(0.0);
-                    return newInterest;
-                });
-        interest.setWeight(interest.getWeight() + 1.0);
-        interestRepository.save(interest);
+    private void recordCompletion() {
+        long now = System.currentTimeMillis();
+        synchronized (completions) {
+            completions.addLast(now);
+            while (!completions.isEmpty() && completions.peekFirst() < now - THROUGHPUT_WINDOW_MS) {
+                completions.removeFirst();
+            }
+        }
     }
 
-    private void updateTag(String tagName) {
-        if (tagName.isEmpty())
-            return;
-        UserTag tag = tagRepository.findByTag(tagName)
-                .orElseGet(() -> {
-                    UserTag newTag = new UserTag();
-                    newTag.setTag(tagName);
-                    newTag.setFrequency(0);
-                    return newTag;
-                });
-        tag.setFrequency(tag.getFrequency() + 1);
-        tagRepository.save(tag);
-    }
-
-    @Transactional
-    public int triggerAnalysis() {
-        List<ActivityRecord> unanalyzed = activityRepository.findByAnalyzedFalse();
-        int processed = 0;
+    /**
+     * Backlog and throughput gauge. A negative {@code backlogChangePerMinute} means the
+     * backlog is draining.
+     */
+    public AnalysisStats stats() {
+        long now = System.currentTimeMillis();
+        Map<String, Long> queue = analysisQueue.countActive();
+        long pending = queue.getOrDefault("PENDING", 0L);
+        long running = queue.getOrDefault("RUNNING", 0L);
+        long backlog = pending + running;
+        double throughput;
+        synchronized (completions) {
+            long recent = completions.stream().filter(t -> t >= now - THROUGHPUT_WINDOW_MS).count();
+            throughput = recent / (THROUGHPUT_WINDOW_MS / 60_000.0);
+        }
+        double backlogChange = 0;
+        synchronized (backlogSamples) {
+            long[] oldest = backlogSamples.peekFirst();
+            if (oldest != null && now - oldest[0] >= 60_000) {
+                backlogChange = (backlog - oldest[1]) / ((now - oldest[0]) / 60_000.0);
+            }
+        }
+        Double etaMinutes = throughput > 0 ? backlog / throughput : null;
+        return new AnalysisStats(backlog, pending, running, queue.getOrDefault("DEAD", 0L), throughput, backlogChange,
+                etaMinutes, analyzed.get(), failed.get(), retried.get(), deadLettered.get(), skipped.get(),
+                packedCalls.get(), packedRecords.get(), singleRetries.get(),
+                preClassifier.stats(), rateLimiter.stats(), poolStats());
+    }
 
-        for (ActivityRecord record : unanalyzed) {
-            try {
-                analyzeRecord(record);
-                record.setAnalyzed(true);
-                activityRepository.save(record);
-                processed++;
-            } catch (Exception e) {
-                log.error("Failed to analyze record {}: {}", record.getId(), e.getMessage());
+    private PoolStats poolStats() {
+        if (dataSource instanceof HikariDataSource hikari) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool != null) {
+                return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(),
+                        pool.getTotalConnections(), hikari.getMaximumPoolSize(), pool.getThreadsAwaitingConnection());
             }
         }
+        return null;
+    }
+
+    private record Analysis(Integer interestScore, Knowledge knowledge) {
+    }
+
+    /** Parsed ---KNOWLEDGE--- block; {@code tags} is the raw comma-separated list. */
+    private record Knowledge(String title, String category, String tags, String content) {
+
+        String[] tagList() {
+            return tags.split("\\s*,\\s*");
+        }
+    }
+
+    /**
+     * Connection pool snapshot; {@code awaiting} counts threads blocked waiting for a connection.
+     */
+    public record PoolStats(int active, int idle, int total, int max, int awaiting) {
+    }
 
-        return processed;
+    /**
+     * @param backlog             pending plus claimed records
+     * @param dead                records parked after running out of attempts
+     * @param throughputPerMinute records analyzed per minute over the last 15 minutes
+     * @param etaMinutes          time to drain the backlog at the current throughput, null if stalled
+     * @param failed              failed attempts, each either retried or dead-lettered
+     * @param skipped             records finished by the pre-classifier without a model call
+     * @param packedRecords       records answered through multi-record prompts
+     * @param singleRetries       records dropped or garbled in a packed answer and re-sent alone
+     */
+    public record AnalysisStats(long backlog, long pending, long running, long dead, double throughputPerMinute,
+            double backlogChangePerMinute, Double etaMinutes, long analyzed, long failed, long retried,
+            long deadLettered, long skipped, long packedCalls, long packedRecords, long singleRetries,
+            PreClassifier.ClassifierStats preClassifier, LlmRateLimiter.LimiterStats limiter,
+            PoolStats connectionPool) {
     }
 }
@@ -0,0 +1,284 @@
+package com.touchkiss.mindme.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests for an expensive result, such as the endpoints
+ * every new browser tab hits at once. Per {@link Flight} and key:
+ * <ul>
+ * <li>while a computation runs, further callers wait for it instead of starting their own;</li>
+ * <li>a result is served from memory for {@code ttl-seconds};</li>
+ * <li>for {@code stale-seconds} after that it is still served at once, while a single
+ * background refresh replaces it (stale-while-revalidate);</li>
+ * <li>beyond that, the next caller computes again and the others wait for it.</li>
+ * </ul>
+ * Failures and results the caller marks unusable are handed to the callers that waited
+ * for them but not kept, so the next request tries again. A failed background refresh
+ * leaves the stale result in place. Entries live in memory only and are swept once they
+ * are past their stale window; beyond {@code max-entries} the longest computed is evicted.
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final Map<Flight, Long> ttlMs = new EnumMap<>(Flight.class);
+    private final Map<Flight, Long> staleMs = new EnumMap<>(Flight.class);
+    private final Map<Flight, Counters> counters = new EnumMap<>(Flight.class);
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final ThreadPoolExecutor refreshers;
+
+    public SingleFlight(
+            @Value("${mindme.single-flight.ttl-seconds:}") List<String> ttlSeconds,
+            @Value("${mindme.single-flight.stale-seconds:}") List<String> staleSeconds,
+            @Value("${mindme.single-flight.max-entries:1000}") int maxEntries,
+            @Value("${mindme.single-flight.refresh-concurrency:2}") int refreshConcurrency) {
+        parse(ttlSeconds, ttlMs);
+        parse(staleSeconds, staleMs);
+        this.maxEntries = maxEntries;
+        int threads = Math.max(1, refreshConcurrency);
+        this.refreshers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 8));
+        this.refreshers.allowCoreThreadTimeOut(true);
+        Arrays.stream(Flight.values()).forEach(flight -> counters.put(flight, new Counters()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refreshers.shutdownNow();
+    }
+
+    public <T> T get(Flight flight, Object key, Supplier<T> compute) {
+        return get(flight, key, compute, value -> true);
+    }
+
+    /**
+     * The result of {@code compute} for {@code key}, shared with every concurrent caller
+     * and kept as configured for {@code flight}.
+     *
+     * @param usable whether a result may be kept; an unusable one, e.g. a fallback, is
+     *               still returned to the callers that waited for it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Flight flight, Object key, Supplier<T> compute, Predicate<? super T> usable) {
+        Counters c = counters.get(flight);
+        while (true) {
+            Entry entry = entries.computeIfAbsent(new Key(flight, key), k -> new Entry());
+            CompletableFuture<Object> call;
+            boolean leader = false;
+            synchronized (entry) {
+                if (entry.removed) {
+                    // Swept between lookup and lock; look up again
+                    continue;
+                }
+                long age = System.currentTimeMillis() - entry.computedAt;
+                if (entry.hasValue && age < ttl(flight)) {
+                    c.hits.incrementAndGet();
+                    return (T) entry.value;
+                }
+                if (entry.hasValue && age < ttl(flight) + staleMs.getOrDefault(flight, 0L)) {
+                    c.staleHits.incrementAndGet();
+                    if (entry.inFlight == null) {
+                        entry.inFlight = new CompletableFuture<>();
+                        refresh(flight, key, entry, compute, usable);
+                    }
+                    return (T) entry.value;
+                }
+                if (entry.inFlight != null) {
+                    c.joined.incrementAndGet();
+                    call = entry.inFlight;
+                } else {
+                    c.misses.incrementAndGet();
+                    call = entry.inFlight = new CompletableFuture<>();
+                    leader = true;
+                }
+            }
+            if (leader) {
+                run(flight, key, entry, compute, usable);
+            }
+            try {
+                return (T) call.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${mindme.single-flight.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        entries.forEach((key, entry) -> {
+            synchronized (entry) {
+                long keep = ttl(key.flight()) + staleMs.getOrDefault(key.flight(), 0L);
+                if (entry.inFlight == null && (!entry.hasValue || now - entry.computedAt >= keep)) {
+                    remove(key, entry);
+                }
+            }
+        });
+    }
+
+    public SingleFlightStats stats() {
+        Map<Flight, FlightStats> flights = new EnumMap<>(Flight.class);
+        counters.forEach((flight, c) -> flights.put(flight, new FlightStats(ttl(flight) / 1000,
+                staleMs.getOrDefault(flight, 0L) / 1000, c.hits.get(), c.staleHits.get(), c.misses.get(),
+                c.joined.get(), c.failures.get())));
+        return new SingleFlightStats(entries.size(), flights);
+    }
+
+    private void refresh(Flight flight, Object key, Entry entry, Supplier<?> compute, Predicate<?> usable) {
+        try {
+            refreshers.execute(() -> run(flight, key, entry, compute, usable));
+        } catch (RejectedExecutionException e) {
+            // Keep serving the stale result; a later request retries the refresh
+            CompletableFuture<Object> call = entry.inFlight;
+            entry.inFlight = null;
+            call.complete(entry.value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(Flight flight, Object key, Entry entry, Supplier<?> compute, Predicate<?> usable) {
+        CompletableFuture<Object> call;
+        synchronized (entry) {
+            call = entry.inFlight;
+        }
+        try {
+            Object value = compute.get();
+            synchronized (entry) {
+                if (((Predicate<Object>) usable).test(value)) {
+                    entry.value = value;
+                    entry.hasValue = true;
+                    entry.computedAt = System.currentTimeMillis();
+                }
+                entry.inFlight = null;
+            }
+            call.complete(value);
+            if (entries.size() > maxEntries) {
+                evictOldest();
+            }
+        } catch (RuntimeException | Error e) {
+            counters.get(flight).failures.incrementAndGet();
+            log.warn("Single-flight {} {} failed: {}", flight, key, e.getMessage());
+            synchronized (entry) {
+                entry.inFlight = null;
+            }
+            call.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Drop the entries computed longest ago, never one in flight, until within
+     * {@code max-entries}.
+     */
+    private void evictOldest() {
+        while (entries.size() > maxEntries) {
+            Key oldest = null;
+            long oldestAt = Long.MAX_VALUE;
+            for (Map.Entry<Key, Entry> e : entries.entrySet()) {
+                synchronized (e.getValue()) {
+                    if (e.getValue().inFlight == null && e.getValue().computedAt < oldestAt) {
+                        oldest = e.getKey();
+                        oldestAt = e.getValue().computedAt;
+                    }
+                }
+            }
+            Entry entry = oldest != null ? entries.get(oldest) : null;
+            if (entry == null) {
+                return;
+            }
+            synchronized (entry) {
+                if (entry.inFlight == null) {
+                    remove(oldest, entry);
+                }
+            }
+        }
+    }
+
+    private void remove(Key key, Entry entry) {
+        entry.removed = true;
+        entries.remove(key, entry);
+    }
+
+    private long ttl(Flight flight) {
+        return ttlMs.getOrDefault(flight, 0L);
+    }
+
+    private static void parse(List<String> pairs, Map<Flight, Long> target) {
+        for (String entry : pairs) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] pair = entry.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Single-flight setting must be flight=seconds: " + entry);
+            }
+            Flight flight = Flight.valueOf(pair[0].trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            target.put(flight, TimeUnit.SECONDS.toMillis(Long.parseLong(pair[1].trim())));
+        }
+    }
+
+    /**
+     * Coalesced endpoints; {@code mindme.single-flight.*} names them in kebab case. A flight
+     * without a ttl only coalesces concurrent calls.
+     */
+    public enum Flight {
+        /** {@code /api/recommendations/daily-insight}. */
+        INSIGHT,
+        /** {@code /api/cognition/horizon}. */
+        HORIZON,
+        /** {@code /api/reports/daily}, {@code /weekly} and {@code /monthly}, keyed by type and period. */
+        REPORT
+    }
+
+    private record Key(Flight flight, Object key) {
+    }
+
+    private static final class Entry {
+        private Object value;
+        private boolean hasValue;
+        private long computedAt;
+        private boolean removed;
+        private CompletableFuture<Object> inFlight;
+    }
+
+    private static final class Counters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong staleHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong joined = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+    }
+
+    /**
+     * @param hits      served fresh from memory
+     * @param staleHits served stale while a refresh ran
+     * @param misses    computations started by a request
+     * @param joined    requests that waited for a computation already running
+     */
+    public record FlightStats(long ttlSeconds, long staleSeconds, long hits, long staleHits, long misses,
+            long joined, long failures) {
+    }
+
+    public record SingleFlightStats(int entries, Map<Flight, FlightStats> flights) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.touchkiss.mindme.service;
+
+/**
+ * Removes {@code <think>...</think>} blocks from a completion while it streams in. Tags may
+ * be split across tokens, so a tail that could still turn into a tag is held back until the
+ * next token decides it. Leading whitespace of the visible answer is dropped, as the
+ * blocking call sites trim it.
+ */
+final class ThinkFilter {
+
+    private static final String OPEN = "<think>";
+    private static final String CLOSE = "</think>";
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean thinking;
+    private boolean started;
+
+    /**
+     * @return the visible text this token completes, possibly empty
+     */
+    String accept(String token) {
+        pending.append(token);
+        StringBuilder out = new StringBuilder();
+        while (true) {
+            if (thinking) {
+                int close = pending.indexOf(CLOSE);
+                if (close < 0) {
+                    // Everything but a possible start of the closing tag is reasoning
+                    pending.delete(0, pending.length() - partialTag(CLOSE));
+                    break;
+                }
+                pending.delete(0, close + CLOSE.length());
+                thinking = false;
+            } else {
+                int open = pending.indexOf(OPEN);
+                if (open < 0) {
+                    int keep = partialTag(OPEN);
+                    out.append(pending, 0, pending.length() - keep);
+                    pending.delete(0, pending.length() - keep);
+                    break;
+                }
+                out.append(pending, 0, open);
+                pending.delete(0, open + OPEN.length());
+                thinking = true;
+            }
+        }
+        return visible(out);
+    }
+
+    /**
+     * Release the held-back tail once the stream has ended. An unterminated reasoning block
+     * is dropped.
+     */
+    String finish() {
+        StringBuilder out = new StringBuilder();
+        if (!thinking) {
+            out.append(pending);
+        }
+        pending.setLength(0);
+        return visible(out);
+    }
+
+    /**
+     * Strip think blocks from a complete answer.
+     */
+    static String strip(String text) {
+        ThinkFilter filter = new ThinkFilter();
+        return (filter.accept(text) + filter.finish()).strip();
+    }
+
+    /**
+     * Length of the longest suffix of the pending text that is a proper prefix of {@code tag}.
+     */
+    private int partialTag(String tag) {
+        for (int n = Math.min(tag.length() - 1, pending.length()); n > 0; n--) {
+            if (pending.substring(pending.length() - n).equals(tag.substring(0, n))) {
+                return n;
+            }
+        }
+        return 0;
+    }
+
+    private String visible(StringBuilder out) {
+        if (!started) {
+            int i = 0;
+            while (i < out.length() && Character.isWhitespace(out.charAt(i))) {
+                i++;
+            }
+            out.delete(0, i);
+            started = out.length() > 0;
+        }
+        return out.toString();
+    }
+}
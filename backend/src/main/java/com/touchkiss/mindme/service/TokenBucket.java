@@ -0,0 +1,61 @@
+package com.touchkiss.mindme.service;
+
+/**
+ * Per-minute quota as a continuously refilling token bucket. A non-positive quota means
+ * unlimited. The balance may go negative after {@link #adjust} when a call used more
+ * than was reserved; later acquisitions then wait for the debt to refill.
+ */
+final class TokenBucket {
+
+    private final long capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill;
+
+    TokenBucket(long perMinute) {
+        this.capacity = perMinute;
+        this.refillPerNano = perMinute / 60_000_000_000d;
+        this.available = perMinute;
+        this.lastRefill = System.nanoTime();
+    }
+
+    synchronized void acquire(long amount) throws InterruptedException {
+        if (capacity <= 0) {
+            return;
+        }
+        long wanted = Math.min(amount, capacity);
+        refill();
+        while (available < wanted) {
+            long waitMs = (long) Math.ceil((wanted - available) / refillPerNano / 1_000_000d);
+            wait(Math.max(1, waitMs));
+            refill();
+        }
+        available -= wanted;
+    }
+
+    /**
+     * Correct a reservation once the real cost is known; positive {@code delta} takes more.
+     */
+    synchronized void adjust(long delta) {
+        if (capacity <= 0 || delta == 0) {
+            return;
+        }
+        refill();
+        available = Math.min(capacity, available - delta);
+        notifyAll();
+    }
+
+    synchronized long available() {
+        if (capacity <= 0) {
+            return -1;
+        }
+        refill();
+        return (long) available;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -34,6 +34,7 @@ public class TrendService {
 
     private final TrendRepository trendRepository;
     private final AiAnalysisService aiService;
+    private final PromptPacker promptPacker;
     private final ObjectMapper mapper = new ObjectMapper();
     private final OkHttpClient client = new OkHttpClient();
     private final ExecutorService executor = Executors.newFixedThreadPool(10);
@@ -86,14 +87,16 @@ public class TrendService {
 
         log.info("Found {} new items. Scoring with AI...", newItems.size());
 
-        // 2. Score with AI (Batch processing for efficiency)
-        // Note: For simplicity, we score in batches of 30 or less
+        // 2. Score with AI, one call per batch of titles that fits the relevance prompt budget
         Map<String, Integer> scores = new HashMap<>();
-        List<String> validTitles = newItems.stream().map(TrendItem::getTitle).collect(Collectors.toList());
-
-        // This could be optimized to chunk validTitles if list is very large
-        if (!validTitles.isEmpty()) {
-            scores = aiService.scoreRelevance(validTitles);
+        List<PromptPacker.Item> titles = newItems.stream()
+                .map(TrendItem::getTitle)
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(title -> new PromptPacker.Item(null, title, 0))
+                .toList();
+        for (List<String> batch : promptPacker.split(PromptPacker.Site.RELEVANCE, titles)) {
+            scores.putAll(aiService.scoreRelevance(batch));
         }
 
         // 3. Save to DB
@@ -1,20 +1,31 @@
 package com.touchkiss.mindme.service;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository;
+import com.touchkiss.mindme.vector.HnswEmbeddingStore;
 import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
-import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -22,66 +33,271 @@ public class VectorSearchService {
 
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache embeddingCache;
+    private final PgVectorSegmentRepository segmentRepository;
+
+    private static final int EMBED_BATCH_SIZE = 32;
+    private static final int MAX_SEARCH_RESULTS = 200;
 
-    @Async
     public void indexActivity(ActivityRecord record) {
-        if (record.getContentSummary() == null || record.getContentSummary().isEmpty()) {
+        try {
+            indexActivities(List.of(record));
+        } catch (Exception e) {
+            log.error("Failed to index activity: {}", record.getUrl(), e);
+        }
+    }
+
+    /**
+     * Split every record into segments and embed them in batches through
+     * {@link EmbeddingModel#embedAll} / {@link EmbeddingStore#addAll}. Existing segments of
+     * the same records are replaced, so re-indexing a merged record never leaves stale
+     * vectors behind. The new segments are tagged with a fresh {@code generation} and added
+     * before the older generations are deleted, so a record stays searchable throughout; a
+     * failure in between leaves both until the retry. Failures propagate so the indexing
+     * pipeline can retry the whole batch.
+     */
+    public void indexActivities(List<ActivityRecord> records) {
+        if (records.isEmpty()) {
             return;
         }
+        String generation = UUID.randomUUID().toString();
+        List<TextSegment> segments = new ArrayList<>();
+        for (ActivityRecord record : records) {
+            segments.addAll(toSegments(record));
+        }
+        segments.forEach(segment -> segment.metadata().put("generation", generation));
 
-        try {
-            Metadata metadata = new Metadata();
-            metadata.put("url", record.getUrl());
-            metadata.put("title", record.getTitle() != null ? record.getTitle() : "");
-            metadata.put("timestamp", record.getVisitTime() != null ? record.getVisitTime().toString() : "");
-            metadata.put("recordId", record.getId().toString());
-
-            // Create text segment from summary (or full content if available)
-            String content = record.getContentSummary();
-            // Append title for better context
-            String text = "Title: " + record.getTitle() + "\n" + content;
-
-            dev.langchain4j.data.document.Document document = dev.langchain4j.data.document.Document.from(text,
-                    metadata);
-            // Split document into segments
-            // Split into segments of 2000 chars with 200 overlap to stay well within 4096
-            // token limit
-            // (assuming 1 token ~= 4 chars, 2000 chars is ~500 tokens, safe margin)
-
-            int maxSegmentSizeInChars = 2000;
-            int maxOverlapSizeInChars = 200;
-
-            // Note: We might want to make these configurable or use TokenTextSplitter if
-            // precise token count is needed
-            // But Recursive character splitter is generally good for semantic chunks.
-            List<TextSegment> segments = dev.langchain4j.data.document.splitter.DocumentSplitters.recursive(
-                    maxSegmentSizeInChars,
-                    maxOverlapSizeInChars).split(document);
-
-            // Generate embedding and store for each segment
-            for (TextSegment segment : segments) {
-                dev.langchain4j.data.embedding.Embedding embedding = embeddingModel.embed(segment).content();
-                embeddingStore.add(embedding, segment);
+        // Embed everything before touching the store, so a provider failure leaves the
+        // previous segments in place
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (int from = 0; from < segments.size(); from += EMBED_BATCH_SIZE) {
+            int to = Math.min(from + EMBED_BATCH_SIZE, segments.size());
+            embeddings.addAll(embedWithCache(segments.subList(from, to)));
+        }
+
+        for (int from = 0; from < segments.size(); from += EMBED_BATCH_SIZE) {
+            int to = Math.min(from + EMBED_BATCH_SIZE, segments.size());
+            embeddingStore.addAll(embeddings.subList(from, to), segments.subList(from, to));
+        }
+        List<String> ids = records.stream().map(record -> record.getId().toString()).toList();
+        // not(...) rather than isNotEqualTo: pgvector renders the latter without parentheses
+        embeddingStore.removeAll(metadataKey("recordId").isIn(ids)
+                .and(Filter.not(metadataKey("generation").isEqualTo(generation))));
+
+        log.info("Indexed {} activities ({} segments)", records.size(), segments.size());
+    }
+
+    /**
+     * Delete every segment whose {@code recordId} metadata matches one of the given records.
+     */
+    public void removeRecords(Collection<UUID> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+        List<String> ids = recordIds.stream().map(UUID::toString).toList();
+        embeddingStore.removeAll(metadataKey("recordId").isIn(ids));
+    }
+
+    /**
+     * Embed a batch, only sending segments whose content hash is not already cached.
+     */
+    private List<Embedding> embedWithCache(List<TextSegment> batch) {
+        List<Embedding> embeddings = new ArrayList<>(
+                embeddingCache.getAll(batch.stream().map(TextSegment::text).toList()));
+
+        List<Integer> missIdx = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            if (embeddings.get(i) == null) {
+                missIdx.add(i);
             }
+        }
+        if (missIdx.isEmpty()) {
+            return embeddings;
+        }
 
-            log.info("Indexed activity: {}", record.getUrl());
-        } catch (Exception e) {
-            log.error("Failed to index activity: {}", record.getUrl(), e);
+        List<TextSegment> misses = missIdx.stream().map(batch::get).toList();
+        List<Embedding> fresh = embeddingModel.embedAll(misses).content();
+        for (int j = 0; j < missIdx.size(); j++) {
+            embeddings.set(missIdx.get(j), fresh.get(j));
+            embeddingCache.put(misses.get(j).text(), fresh.get(j));
+        }
+        return embeddings;
+    }
+
+    private List<TextSegment> toSegments(ActivityRecord record) {
+        if (record.getContentSummary() == null || record.getContentSummary().isEmpty()) {
+            return List.of();
+        }
+
+        Metadata metadata = new Metadata();
+        metadata.put("url", record.getUrl());
+        metadata.put("title", record.getTitle() != null ? record.getTitle() : "");
+        metadata.put("timestamp", record.getVisitTime() != null ? record.getVisitTime().toString() : "");
+        metadata.put("recordId", record.getId().toString());
+        // Typed keys for filtered search; see PgVectorSegmentRepository
+        String host = hostOf(record.getUrl());
+        if (host != null) {
+            metadata.put("host", host);
+        }
+        if (record.getVisitTime() != null) {
+            metadata.put("visitEpoch", record.getVisitTime().toEpochSecond());
         }
+
+        // Create text segment from summary (or full content if available)
+        String content = record.getContentSummary();
+        // Append title for better context
+        String text = "Title: " + record.getTitle() + "\n" + content;
+
+        dev.langchain4j.data.document.Document document = dev.langchain4j.data.document.Document.from(text,
+                metadata);
+        // Split document into segments
+        // Split into segments of 2000 chars with 200 overlap to stay well within 4096
+        // token limit
+        // (assuming 1 token ~= 4 chars, 2000 chars is ~500 tokens, safe margin)
+
+        int maxSegmentSizeInChars = 2000;
+        int maxOverlapSizeInChars = 200;
+
+        // Note: We might want to make these configurable or use TokenTextSplitter if
+        // precise token count is needed
+        // But Recursive character splitter is generally good for semantic chunks.
+        return dev.langchain4j.data.document.splitter.DocumentSplitters.recursive(
+                maxSegmentSizeInChars,
+                maxOverlapSizeInChars).split(document);
     }
 
     public List<String> searchSimilar(String query, int maxResults) {
-        dev.langchain4j.data.embedding.Embedding queryEmbedding = embeddingModel.embed(query).content();
+        return searchSegments(query, maxResults).stream()
+                .map(SegmentMatch::text)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Nearest segments with their similarity score and source activity record.
+     */
+    public List<SegmentMatch> searchSegments(String query, int maxResults) {
+        return search(VectorQuery.builder().query(query).maxResults(maxResults).build());
+    }
+
+    /**
+     * Filtered nearest-neighbour search. Host, visit-time and record filters, the score
+     * floor and {@code ef_search} are all applied inside the same SQL statement, so the
+     * result size is exactly what was asked for rather than an over-fetch trimmed in Java.
+     * With the in-process HNSW store the same filters are evaluated during graph traversal.
+     */
+    public List<SegmentMatch> search(VectorQuery query) {
+        if (query.query() == null || query.query().isBlank()) {
+            return List.of();
+        }
+        int maxResults = query.maxResults() != null
+                ? Math.max(1, Math.min(MAX_SEARCH_RESULTS, query.maxResults()))
+                : 10;
+        List<String> hosts = query.hosts() == null ? null
+                : query.hosts().stream().map(h -> h.trim().toLowerCase(Locale.ROOT)).filter(h -> !h.isEmpty())
+                        .toList();
+        List<String> recordIds = query.recordIds() == null ? null
+                : query.recordIds().stream().map(UUID::toString).toList();
+
+        Embedding queryEmbedding = embedQuery(query.query());
+        double minScore = query.minScore() != null ? query.minScore() : 0.0;
 
-        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
-                .queryEmbedding(queryEmbedding)
-                .maxResults(maxResults)
-                .build();
+        if (embeddingStore instanceof HnswEmbeddingStore hnsw) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(queryEmbedding)
+                    .maxResults(maxResults)
+                    .minScore(minScore)
+                    .filter(toFilter(hosts, query, recordIds))
+                    .build();
+            return hnsw.search(request, query.efSearch()).matches().stream()
+                    .map(match -> new SegmentMatch(
+                            parseRecordId(match.embedded().metadata().getString("recordId")),
+                            match.score(),
+                            match.embedded().text(),
+                            match.embedded().metadata().getString("url"),
+                            match.embedded().metadata().getString("title")))
+                    .collect(Collectors.toList());
+        }
 
-        EmbeddingSearchResult<TextSegment> result = embeddingStore.search(request);
+        PgVectorSegmentRepository.SegmentQuery segmentQuery = new PgVectorSegmentRepository.SegmentQuery(
+                queryEmbedding.vector(),
+                maxResults,
+                minScore,
+                query.efSearch(),
+                hosts,
+                query.from() != null ? query.from().toEpochSecond() : null,
+                query.to() != null ? query.to().toEpochSecond() : null,
+                recordIds);
 
-        return result.matches().stream()
-                .map(match -> match.embedded().text())
+        return segmentRepository.search(segmentQuery).stream()
+                .map(row -> new SegmentMatch(parseRecordId(row.recordId()), row.score(), row.text(), row.url(),
+                        row.title()))
                 .collect(Collectors.toList());
     }
+
+    private static Filter toFilter(List<String> hosts, VectorQuery query, List<String> recordIds) {
+        List<Filter> filters = new ArrayList<>();
+        if (hosts != null && !hosts.isEmpty()) {
+            filters.add(metadataKey("host").isIn(hosts));
+        }
+        if (recordIds != null && !recordIds.isEmpty()) {
+            filters.add(metadataKey("recordId").isIn(recordIds));
+        }
+        if (query.from() != null) {
+            filters.add(metadataKey("visitEpoch").isGreaterThanOrEqualTo(query.from().toEpochSecond()));
+        }
+        if (query.to() != null) {
+            filters.add(metadataKey("visitEpoch").isLessThanOrEqualTo(query.to().toEpochSecond()));
+        }
+        return filters.stream().reduce((a, b) -> Filter.and(a, b)).orElse(null);
+    }
+
+    private Embedding embedQuery(String query) {
+        Embedding queryEmbedding = embeddingCache.get(query);
+        if (queryEmbedding == null) {
+            queryEmbedding = embeddingModel.embed(query).content();
+            embeddingCache.put(query, queryEmbedding);
+        }
+        return queryEmbedding;
+    }
+
+    private static UUID parseRecordId(String recordId) {
+        if (recordId == null || recordId.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(recordId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            String host = URI.create(url.trim()).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Vector search request. Every field except {@code query} is optional.
+     *
+     * @param minScore  cosine similarity floor in [0, 1]
+     * @param efSearch  HNSW candidate list size; higher trades latency for recall
+     * @param hosts     exact URL hosts, e.g. {@code github.com}
+     * @param from      earliest visit time, inclusive
+     * @param to        latest visit time, inclusive
+     * @param recordIds restrict to segments of these activity records
+     */
+    @Builder
+    public record VectorQuery(String query, Integer maxResults, Double minScore, Integer efSearch,
+            List<String> hosts, ZonedDateTime from, ZonedDateTime to, List<UUID> recordIds) {
+    }
+
+    public record SegmentMatch(UUID recordId, double score, String text, String url, String title) {
+    }
 }
@@ -0,0 +1,247 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository;
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository.Quantization;
+import com.touchkiss.mindme.vector.HnswEmbeddingStore;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Garbage collection and ANN index management for the vector store.
+ * <p>
+ * Segments are linked to their activity only through the {@code recordId} metadata, so
+ * deletes that bypass {@link VectorSearchService#removeRecords} and segments written
+ * before replace-on-reindex existed are reclaimed here. With the in-process HNSW store,
+ * orphans are tombstoned and the store is compacted once the dead share passes
+ * {@code mindme.vector.hnsw.compact-threshold}.
+ * <p>
+ * On startup the pgvector HNSW index matching {@code langchain4j.pgvector.quantization}
+ * is built concurrently from the stored float embeddings, so switching modes needs no
+ * re-embedding; indexes of the other modes are dropped to release their memory.
+ */
+@Slf4j
+@Service
+public class VectorStoreMaintenanceService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final PgVectorSegmentRepository segmentRepository;
+    private final String table;
+    private final double compactThreshold;
+    private final boolean dropUnusedIndexes;
+
+    private volatile GcResult lastResult;
+
+    public VectorStoreMaintenanceService(
+            JdbcTemplate jdbcTemplate,
+            EmbeddingStore<TextSegment> embeddingStore,
+            PgVectorSegmentRepository segmentRepository,
+            @Value("${mindme.vector.hnsw.compact-threshold:0.3}") double compactThreshold,
+            @Value("${langchain4j.pgvector.drop-unused-indexes:true}") boolean dropUnusedIndexes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingStore = embeddingStore;
+        this.segmentRepository = segmentRepository;
+        this.table = segmentRepository.table();
+        this.compactThreshold = compactThreshold;
+        this.dropUnusedIndexes = dropUnusedIndexes;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (embeddingStore instanceof HnswEmbeddingStore) {
+            return;
+        }
+        // Index builds on a large table take minutes; searches fall back to a scan meanwhile
+        CompletableFuture.runAsync(() -> {
+            try {
+                ensureAnnIndex();
+            } catch (Exception e) {
+                log.error("Failed to prepare the vector ANN index: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Build the HNSW index for the configured quantization mode if it is missing or left
+     * invalid by an interrupted build, then drop the indexes of the other modes.
+     */
+    public synchronized AnnIndexStatus ensureAnnIndex() {
+        Quantization mode = segmentRepository.quantization();
+        if (mode != Quantization.NONE) {
+            requireQuantizationSupport();
+        }
+
+        String wanted = indexName(mode);
+        Boolean valid = indexValidity(wanted);
+        if (Boolean.FALSE.equals(valid)) {
+            log.warn("Dropping invalid vector index {} left by an interrupted build", wanted);
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + wanted);
+        }
+        if (!Boolean.TRUE.equals(valid)) {
+            long start = System.currentTimeMillis();
+            log.info("Building {} vector index {} on {}", mode, wanted, table);
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + wanted + " ON " + table
+                    + " USING hnsw (" + indexExpression(mode) + ")");
+            log.info("Built vector index {} in {} ms", wanted, System.currentTimeMillis() - start);
+        }
+
+        if (dropUnusedIndexes) {
+            for (Quantization other : Quantization.values()) {
+                if (other != mode && indexValidity(indexName(other)) != null) {
+                    log.info("Dropping unused {} vector index {}", other, indexName(other));
+                    jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName(other));
+                }
+            }
+        }
+        return indexStatus();
+    }
+
+    /**
+     * Size of every ANN index on the vector table next to the table itself, to compare
+     * the memory footprint of the quantization modes.
+     */
+    public AnnIndexStatus indexStatus() {
+        List<AnnIndex> indexes = new ArrayList<>();
+        for (Quantization mode : Quantization.values()) {
+            String name = indexName(mode);
+            jdbcTemplate.query("""
+                    SELECT i.indisvalid, pg_relation_size(i.indexrelid) AS bytes
+                    FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+                    WHERE c.relname = ?
+                    """,
+                    rs -> {
+                        indexes.add(new AnnIndex(name, mode.name().toLowerCase(), rs.getBoolean("indisvalid"),
+                                rs.getLong("bytes")));
+                    },
+                    name);
+        }
+        Long tableBytes = jdbcTemplate.queryForObject("SELECT pg_table_size(?::regclass)", Long.class, table);
+        return new AnnIndexStatus(segmentRepository.quantization().name().toLowerCase(), indexes,
+                tableBytes != null ? tableBytes : 0);
+    }
+
+    private String indexName(Quantization mode) {
+        return switch (mode) {
+            case NONE -> "idx_" + table + "_embedding_hnsw";
+            case HALFVEC -> "idx_" + table + "_embedding_hnsw_halfvec";
+            case BINARY -> "idx_" + table + "_embedding_hnsw_binary";
+        };
+    }
+
+    private String indexExpression(Quantization mode) {
+        int dimension = segmentRepository.dimension();
+        return switch (mode) {
+            case NONE -> "embedding vector_cosine_ops";
+            case HALFVEC -> "(embedding::halfvec(" + dimension + ")) halfvec_cosine_ops";
+            case BINARY -> "(binary_quantize(embedding)::bit(" + dimension + ")) bit_hamming_ops";
+        };
+    }
+
+    /**
+     * @return null if the index does not exist, otherwise whether it is valid
+     */
+    private Boolean indexValidity(String name) {
+        List<Boolean> validity = jdbcTemplate.query(
+                "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?",
+                (rs, i) -> rs.getBoolean(1), name);
+        return validity.isEmpty() ? null : validity.get(0);
+    }
+
+    private void requireQuantizationSupport() {
+        String version = jdbcTemplate.queryForObject(
+                "SELECT extversion FROM pg_extension WHERE extname = 'vector'", String.class);
+        String[] parts = version != null ? version.split("\\.") : new String[0];
+        boolean supported = parts.length >= 2
+                && (Integer.parseInt(parts[0]) > 0 || Integer.parseInt(parts[1]) >= 7);
+        if (!supported) {
+            throw new IllegalStateException("pgvector " + version
+                    + " does not support halfvec/binary_quantize; upgrade to 0.7.0+ or set quantization: none");
+        }
+    }
+
+    /**
+     * Run nightly at 03:30
+     */
+    @Scheduled(cron = "${mindme.vector-gc.cron:0 30 3 * * ?}")
+    public GcResult collectGarbage() {
+        long start = System.currentTimeMillis();
+        if (embeddingStore instanceof HnswEmbeddingStore hnsw) {
+            return collectHnswGarbage(hnsw, start);
+        }
+
+        // 1. Segments whose activity record no longer exists
+        int orphans = jdbcTemplate.update("DELETE FROM " + table + " v WHERE NOT EXISTS ("
+                + "SELECT 1 FROM activity_records a WHERE a.id::text = v.metadata->>'recordId')");
+
+        // 2. Duplicate segments (same record, same text) left by re-indexing, keep one
+        int duplicates = jdbcTemplate.update("DELETE FROM " + table + " a USING " + table + " b "
+                + "WHERE a.metadata->>'recordId' = b.metadata->>'recordId' "
+                + "AND a.text = b.text AND a.embedding_id > b.embedding_id");
+
+        if (orphans + duplicates > 0) {
+            // Refresh planner statistics so HNSW scans see the smaller table
+            jdbcTemplate.execute("ANALYZE " + table);
+        }
+
+        lastResult = new GcResult(orphans, duplicates, System.currentTimeMillis() - start, ZonedDateTime.now());
+        log.info("Vector store GC reclaimed {} orphaned and {} duplicate segments in {} ms",
+                orphans, duplicates, lastResult.durationMs());
+        return lastResult;
+    }
+
+    private GcResult collectHnswGarbage(HnswEmbeddingStore hnsw, long start) {
+        Set<String> orphanIds = new HashSet<>(hnsw.distinctValues("recordId"));
+        if (!orphanIds.isEmpty()) {
+            jdbcTemplate.query("SELECT id::text FROM activity_records WHERE id::text = ANY(?)",
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", orphanIds.toArray())),
+                    rs -> {
+                        orphanIds.remove(rs.getString(1));
+                    });
+        }
+        HnswEmbeddingStore.HnswStats before = hnsw.stats();
+        if (!orphanIds.isEmpty()) {
+            hnsw.removeAll(metadataKey("recordId").isIn(List.copyOf(orphanIds)));
+        }
+        int orphans = hnsw.stats().deletedSegments() - before.deletedSegments();
+
+        if (hnsw.stats().deletedRatio() > compactThreshold) {
+            log.info("Compacting HNSW store ({} deleted segments)", hnsw.stats().deletedSegments());
+            hnsw.compact();
+        } else {
+            hnsw.snapshot();
+        }
+
+        lastResult = new GcResult(orphans, 0, System.currentTimeMillis() - start, ZonedDateTime.now());
+        log.info("HNSW store GC removed {} orphaned segments in {} ms", orphans, lastResult.durationMs());
+        return lastResult;
+    }
+
+    public GcResult getLastResult() {
+        return lastResult;
+    }
+
+    public record AnnIndex(String name, String quantization, boolean valid, long bytes) {
+    }
+
+    public record AnnIndexStatus(String quantization, List<AnnIndex> indexes, long tableBytes) {
+    }
+
+    public record GcResult(int orphanedRemoved, int duplicatesRemoved, long durationMs, ZonedDateTime finishedAt) {
+    }
+}
@@ -0,0 +1,651 @@
+package com.touchkiss.mindme.vector;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * In-process {@link EmbeddingStore} backed by an HNSW graph, for single-node deployments
+ * that want to skip the round trip to pgvector.
+ * <p>
+ * On-disk layout of the store directory:
+ * <ul>
+ * <li>{@code vectors.bin} - normalized vectors, memory-mapped and addressed by slot</li>
+ * <li>{@code segments.log} - append-only journal of adds (ID, text, metadata) and deletes</li>
+ * <li>{@code graph.bin} - periodic snapshot of the graph links</li>
+ * </ul>
+ * On startup the journal is replayed to rebuild the small on-heap index (IDs, metadata,
+ * text offsets, tombstones), the graph snapshot is loaded, and only vectors appended
+ * after the snapshot are inserted again. Segment text stays on disk and is read for the
+ * final matches only. Deletes are tombstones; {@link #compact()} rewrites the store once
+ * enough of it is dead.
+ */
+@Slf4j
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int GRAPH_MAGIC = 0x484e5357; // "HNSW"
+
+    private final Path directory;
+    private final int dimension;
+    private final int m;
+    private final int efConstruction;
+    private final int defaultEfSearch;
+    private final int snapshotEvery;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private MappedVectorFile vectors;
+    private HnswGraph graph;
+    private FileChannel journal;
+    private long logSize;
+    private int insertsSinceSnapshot;
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<Metadata> metadata = new ArrayList<>();
+    private long[] textOffsets = new long[1024];
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+
+    public HnswEmbeddingStore(Path directory, int dimension, int m, int efConstruction, int defaultEfSearch,
+            int snapshotEvery) {
+        this.directory = directory;
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.defaultEfSearch = defaultEfSearch;
+        this.snapshotEvery = snapshotEvery;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open HNSW store at " + directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        vectors = new MappedVectorFile(directory.resolve("vectors.bin"), dimension);
+        journal = FileChannel.open(directory.resolve("segments.log"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayLog();
+        int slots = ids.size();
+        vectors.ensureCapacity(slots);
+
+        graph = new HnswGraph(vectors, m, efConstruction);
+        Path snapshot = directory.resolve("graph.bin");
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                if (in.readInt() != GRAPH_MAGIC) {
+                    throw new IOException("Corrupt graph snapshot");
+                }
+                graph.read(in);
+            } catch (IOException e) {
+                log.warn("Discarding unreadable HNSW snapshot, rebuilding graph: {}", e.getMessage());
+                graph = new HnswGraph(vectors, m, efConstruction);
+            }
+            if (graph.size() > slots) {
+                log.warn("HNSW snapshot is ahead of the segment log, rebuilding graph");
+                graph = new HnswGraph(vectors, m, efConstruction);
+            }
+        }
+
+        int fromSlot = graph.size();
+        for (int slot = fromSlot; slot < slots; slot++) {
+            graph.insert(slot, vectors.read(slot));
+        }
+        insertsSinceSnapshot = slots - fromSlot;
+        log.info("Opened HNSW store at {}: {} segments ({} deleted), {} re-inserted since last snapshot",
+                directory, slots, deleted.cardinality(), slots - fromSlot);
+    }
+
+    private void replayLog() throws IOException {
+        journal.position(0);
+        CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Channels.newInputStream(journal), 1 << 16));
+        DataInputStream in = new DataInputStream(counter);
+        long goodPosition = 0;
+        try {
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                if (op == OP_ADD) {
+                    int slot = in.readInt();
+                    String id = in.readUTF();
+                    long textOffset = -1;
+                    if (in.readBoolean()) {
+                        textOffset = counter.count;
+                        in.skipNBytes(in.readInt());
+                    }
+                    Metadata meta = readMetadata(in);
+                    if (slot != ids.size()) {
+                        throw new IOException("Out-of-order slot " + slot + " in segment log");
+                    }
+                    appendSlot(id, meta, textOffset);
+                } else if (op == OP_DELETE) {
+                    markDeleted(in.readInt());
+                } else {
+                    throw new IOException("Unknown segment log op " + op);
+                }
+                goodPosition = counter.count;
+            }
+        } catch (EOFException e) {
+            log.warn("Truncating torn tail of HNSW segment log at byte {}", goodPosition);
+        }
+        journal.truncate(goodPosition);
+        logSize = goodPosition;
+    }
+
+    // -------------------------------------------------------------------------
+    // EmbeddingStore
+    // -------------------------------------------------------------------------
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = embeddings.stream().map(e -> UUID.randomUUID().toString()).toList();
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> newIds = embeddings.stream().map(e -> UUID.randomUUID().toString()).toList();
+        addAll(newIds, embeddings, segments);
+        return newIds;
+    }
+
+    private void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (segments != null && segments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Embeddings and segments must have the same size");
+        }
+        lock.writeLock().lock();
+        try {
+            int firstSlot = ids.size();
+            List<float[]> normalized = new ArrayList<>(embeddings.size());
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            long[] offsets = new long[embeddings.size()];
+
+            // 1. Vectors first: a slot without a journal entry is simply overwritten later
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = normalize(embeddings.get(i).vector());
+                vectors.write(firstSlot + i, vector);
+                normalized.add(vector);
+
+                TextSegment segment = segments != null ? segments.get(i) : null;
+                Integer previous = slotsById.get(newIds.get(i));
+                if (previous != null) {
+                    out.writeByte(OP_DELETE);
+                    out.writeInt(previous);
+                }
+                out.writeByte(OP_ADD);
+                out.writeInt(firstSlot + i);
+                out.writeUTF(newIds.get(i));
+                out.writeBoolean(segment != null);
+                offsets[i] = -1;
+                if (segment != null) {
+                    offsets[i] = logSize + out.size();
+                    byte[] text = segment.text().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+                writeMetadata(out, segment != null ? segment.metadata() : new Metadata());
+            }
+
+            // 2. Journal, then the on-heap index and graph
+            out.flush();
+            appendToLog(buffer.toByteArray());
+            for (int i = 0; i < embeddings.size(); i++) {
+                Integer previous = slotsById.get(newIds.get(i));
+                if (previous != null) {
+                    markDeleted(previous);
+                }
+                TextSegment segment = segments != null ? segments.get(i) : null;
+                appendSlot(newIds.get(i), segment != null ? segment.metadata().copy() : new Metadata(), offsets[i]);
+                graph.insert(firstSlot + i, normalized.get(i));
+            }
+
+            insertsSinceSnapshot += embeddings.size();
+            if (snapshotEvery > 0 && insertsSinceSnapshot >= snapshotEvery) {
+                snapshot();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to add to HNSW store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            deleteSlots(idsToRemove.stream().map(slotsById::get).filter(s -> s != null).mapToInt(Integer::intValue)
+                    .toArray());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            deleteSlots(liveSlots(slot -> filter.test(metadata.get(slot))));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            deleteSlots(liveSlots(slot -> true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return search(request, null);
+    }
+
+    /**
+     * Search with an explicit HNSW candidate list size. Metadata filters are evaluated
+     * during graph traversal rather than on a truncated result list.
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, Integer efSearch) {
+        float[] query = normalize(request.queryEmbedding().vector());
+        Filter filter = request.filter();
+        IntPredicate accept = slot -> !deleted.get(slot) && (filter == null || filter.test(metadata.get(slot)));
+        int ef = efSearch != null ? Math.max(1, efSearch) : defaultEfSearch;
+
+        lock.readLock().lock();
+        try {
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+            for (HnswGraph.Candidate candidate : graph.search(query, request.maxResults(), ef, accept)) {
+                double score = RelevanceScore.fromCosineSimilarity(candidate.sim());
+                if (score < request.minScore()) {
+                    break;
+                }
+                int slot = candidate.node();
+                matches.add(new EmbeddingMatch<>(score, ids.get(slot), Embedding.from(vectors.read(slot)),
+                        segmentAt(slot)));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Maintenance
+    // -------------------------------------------------------------------------
+
+    /**
+     * Persist the graph so the next start only re-inserts vectors added after this point.
+     */
+    public void snapshot() {
+        lock.writeLock().lock();
+        try {
+            vectors.force();
+            journal.force(true);
+            Path tmp = directory.resolve("graph.bin.tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp),
+                    1 << 16))) {
+                out.writeInt(GRAPH_MAGIC);
+                graph.write(out);
+            }
+            Files.move(tmp, directory.resolve("graph.bin"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            insertsSinceSnapshot = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to snapshot HNSW graph", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the store with live segments only, dropping tombstones from the files and
+     * the graph. Blocks readers and writers for the duration.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            Path target = Files.createTempDirectory(directory.toAbsolutePath().getParent(), directory.getFileName() + "-compact");
+            try (HnswEmbeddingStore compacted = new HnswEmbeddingStore(target, dimension, m, efConstruction,
+                    defaultEfSearch, 0)) {
+                int[] live = liveSlots(slot -> true);
+                for (int from = 0; from < live.length; from += 256) {
+                    int to = Math.min(from + 256, live.length);
+                    List<String> batchIds = new ArrayList<>(to - from);
+                    List<Embedding> batchEmbeddings = new ArrayList<>(to - from);
+                    List<TextSegment> batchSegments = new ArrayList<>(to - from);
+                    for (int i = from; i < to; i++) {
+                        batchIds.add(ids.get(live[i]));
+                        batchEmbeddings.add(Embedding.from(vectors.read(live[i])));
+                        TextSegment segment = segmentAt(live[i]);
+                        batchSegments.add(segment);
+                    }
+                    compacted.addAll(batchIds, batchEmbeddings, batchSegments);
+                }
+                compacted.snapshot();
+            }
+
+            closeFiles();
+            for (String file : List.of("vectors.bin", "segments.log", "graph.bin")) {
+                Files.move(target.resolve(file), directory.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.delete(target);
+
+            ids.clear();
+            metadata.clear();
+            slotsById.clear();
+            deleted.clear();
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact HNSW store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Distinct string values of a metadata key across live segments.
+     */
+    public Set<String> distinctValues(String key) {
+        lock.readLock().lock();
+        try {
+            Set<String> values = new HashSet<>();
+            for (int slot : liveSlots(slot -> true)) {
+                String value = metadata.get(slot).getString(key);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            return values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public HnswStats stats() {
+        lock.readLock().lock();
+        try {
+            int total = ids.size();
+            int dead = deleted.cardinality();
+            return new HnswStats(total - dead, dead, graph.size(), insertsSinceSnapshot, directory.toString());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (insertsSinceSnapshot > 0) {
+                snapshot();
+            }
+            closeFiles();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeFiles() throws IOException {
+        vectors.close();
+        journal.close();
+    }
+
+    // -------------------------------------------------------------------------
+    // Internals
+    // -------------------------------------------------------------------------
+
+    private void appendSlot(String id, Metadata meta, long textOffset) {
+        int slot = ids.size();
+        ids.add(id);
+        metadata.add(meta);
+        if (slot >= textOffsets.length) {
+            textOffsets = Arrays.copyOf(textOffsets, textOffsets.length * 2);
+        }
+        textOffsets[slot] = textOffset;
+        slotsById.put(id, slot);
+    }
+
+    private void markDeleted(int slot) {
+        if (slot < ids.size() && !deleted.get(slot)) {
+            deleted.set(slot);
+            slotsById.remove(ids.get(slot), slot);
+        }
+    }
+
+    private void deleteSlots(int[] slots) {
+        if (slots.length == 0) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(slots.length * 5);
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (int slot : slots) {
+                out.writeByte(OP_DELETE);
+                out.writeInt(slot);
+            }
+            appendToLog(buffer.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to record HNSW deletes", e);
+        }
+        for (int slot : slots) {
+            markDeleted(slot);
+        }
+    }
+
+    private int[] liveSlots(IntPredicate predicate) {
+        return IntStream.range(0, ids.size())
+                .filter(slot -> !deleted.get(slot) && predicate.test(slot))
+                .toArray();
+    }
+
+    private void appendToLog(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            logSize += journal.write(buffer, logSize);
+        }
+    }
+
+    private TextSegment segmentAt(int slot) {
+        long offset = textOffsets[slot];
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(length, offset);
+            ByteBuffer text = ByteBuffer.allocate(length.flip().getInt());
+            readFully(text, offset + Integer.BYTES);
+            return TextSegment.from(new String(text.array(), StandardCharsets.UTF_8), metadata.get(slot).copy());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment text", e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = journal.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Expected embedding dimension " + dimension + " but got " + vector.length);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    private static void writeMetadata(DataOutputStream out, Metadata meta) throws IOException {
+        Map<String, Object> values = meta.toMap();
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Integer i) {
+                out.writeByte('I');
+                out.writeInt(i);
+            } else if (value instanceof Long l) {
+                out.writeByte('L');
+                out.writeLong(l);
+            } else if (value instanceof Float f) {
+                out.writeByte('F');
+                out.writeFloat(f);
+            } else if (value instanceof Double d) {
+                out.writeByte('D');
+                out.writeDouble(d);
+            } else {
+                out.writeByte('S');
+                out.writeUTF(String.valueOf(value));
+            }
+        }
+    }
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Metadata meta = new Metadata();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            switch (in.readByte()) {
+                case 'I' -> meta.put(key, in.readInt());
+                case 'L' -> meta.put(key, in.readLong());
+                case 'F' -> meta.put(key, in.readFloat());
+                case 'D' -> meta.put(key, in.readDouble());
+                default -> meta.put(key, in.readUTF());
+            }
+        }
+        return meta;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    public record HnswStats(int liveSegments, int deletedSegments, int graphNodes, int unsnapshottedInserts,
+            String directory) {
+
+        public double deletedRatio() {
+            int total = liveSegments + deletedSegments;
+            return total == 0 ? 0 : (double) deletedSegments / total;
+        }
+    }
+}
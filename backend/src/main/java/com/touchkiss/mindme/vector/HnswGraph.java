@@ -0,0 +1,256 @@
+package com.touchkiss.mindme.vector;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph (Malkov &amp; Yashunin) over unit vectors held
+ * in a {@link MappedVectorFile}; similarity is the dot product. Node IDs are the vector
+ * slots. The graph itself is not thread-safe, callers serialize writes.
+ */
+final class HnswGraph {
+
+    private static final Comparator<Candidate> BY_SIM_DESC = Comparator.comparingDouble(Candidate::sim).reversed();
+    private static final Comparator<Candidate> BY_SIM_ASC = Comparator.comparingDouble(Candidate::sim);
+
+    private final MappedVectorFile vectors;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    /** links[node][level] holds the neighbour count at index 0 followed by neighbour IDs. */
+    private int[][][] links = new int[1024][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswGraph(MappedVectorFile vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void insert(int node, float[] vector) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        if (node >= links.length) {
+            links = Arrays.copyOf(links, Math.max(node + 1, links.length * 2));
+        }
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        size = Math.max(size, node + 1);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        Candidate ep = new Candidate(entryPoint, vectors.dot(entryPoint, vector));
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vector, ep, l);
+        }
+        List<Candidate> entries = List.of(ep);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> found = searchLayer(vector, entries, efConstruction, l, null);
+            List<Candidate> selected = selectNeighbors(found, l == 0 ? maxM0 : m);
+            int[] own = links[node][l];
+            for (Candidate c : selected) {
+                own[++own[0]] = c.node();
+                link(c.node(), node, c.sim(), l);
+            }
+            entries = found;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * Approximate top-{@code k} among nodes accepted by {@code accept}. Rejected nodes are
+     * still traversed, so filters narrow the result set without disconnecting the graph.
+     */
+    List<Candidate> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        Candidate ep = new Candidate(entryPoint, vectors.dot(entryPoint, query));
+        for (int l = maxLevel; l > 0; l--) {
+            ep = greedyClosest(query, ep, l);
+        }
+        List<Candidate> found = searchLayer(query, List.of(ep), Math.max(ef, k), 0, accept);
+        return found.size() > k ? found.subList(0, k) : found;
+    }
+
+    private Candidate greedyClosest(float[] query, Candidate start, int level) {
+        Candidate best = start;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[best.node()][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float sim = vectors.dot(neighbours[i], query);
+                if (sim > best.sim()) {
+                    best = new Candidate(neighbours[i], sim);
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entries, int ef, int level,
+            IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BY_SIM_DESC);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_SIM_ASC);
+        for (Candidate entry : entries) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept == null || accept.test(entry.node())) {
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate current = candidates.poll();
+            if (results.size() >= ef && current.sim() < results.peek().sim()) {
+                break;
+            }
+            int[][] nodeLinks = links[current.node()];
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbours = nodeLinks[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float sim = vectors.dot(neighbour, query);
+                if (results.size() < ef || sim > results.peek().sim()) {
+                    Candidate candidate = new Candidate(neighbour, sim);
+                    candidates.add(candidate);
+                    if (accept == null || accept.test(neighbour)) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIM_DESC);
+        return sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the base
+     * node than to every neighbour already kept, which preserves long-range links.
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        for (Candidate candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = vectors.read(candidate.node());
+            boolean diverse = true;
+            for (Candidate kept : selected) {
+                if (vectors.dot(kept.node(), vector) > candidate.sim()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, float sim, int level) {
+        int[] neighbours = links[from][level];
+        int max = neighbours.length - 1;
+        if (neighbours[0] < max) {
+            neighbours[++neighbours[0]] = to;
+            return;
+        }
+        float[] base = vectors.read(from);
+        List<Candidate> pool = new ArrayList<>(max + 1);
+        pool.add(new Candidate(to, sim));
+        for (int i = 1; i <= neighbours[0]; i++) {
+            pool.add(new Candidate(neighbours[i], vectors.dot(neighbours[i], base)));
+        }
+        pool.sort(BY_SIM_DESC);
+        List<Candidate> kept = selectNeighbors(pool, max);
+        neighbours[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            neighbours[i + 1] = kept.get(i).node();
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size; node++) {
+            int[][] nodeLinks = links[node];
+            out.writeInt(nodeLinks.length);
+            for (int[] neighbours : nodeLinks) {
+                out.writeInt(neighbours[0]);
+                for (int i = 1; i <= neighbours[0]; i++) {
+                    out.writeInt(neighbours[i]);
+                }
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        size = in.readInt();
+        entryPoint = in.readInt();
+        maxLevel = in.readInt();
+        links = new int[Math.max(1024, size)][][];
+        for (int node = 0; node < size; node++) {
+            int levels = in.readInt();
+            links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] neighbours = new int[(l == 0 ? maxM0 : m) + 1];
+                int count = in.readInt();
+                neighbours[0] = count;
+                for (int i = 1; i <= count; i++) {
+                    neighbours[i] = in.readInt();
+                }
+                links[node][l] = neighbours;
+            }
+        }
+    }
+
+    record Candidate(int node, float sim) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.touchkiss.mindme.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-width float vectors in a memory-mapped file, addressed by slot.
+ * <p>
+ * The file is mapped in chunks (a single mapping is capped at 2 GB), so vectors stay
+ * off-heap and are paged in by the OS on demand. Slots are only ever appended; reads
+ * and writes of distinct slots need no locking.
+ */
+final class MappedVectorFile implements Closeable {
+
+    private static final int MAGIC = 0x4d4d5646; // "MMVF"
+    private static final int HEADER_BYTES = 16;
+    private static final long CHUNK_TARGET_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int slotBytes;
+    private final int slotsPerChunk;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    MappedVectorFile(Path path, int dimension) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.dimension = dimension;
+        this.slotBytes = dimension * Float.BYTES;
+        this.slotsPerChunk = (int) Math.max(1, CHUNK_TARGET_BYTES / slotBytes);
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, dimension);
+        } else if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a vector file: " + path);
+        } else if (header.getInt(4) != dimension) {
+            throw new IOException("Vector file " + path + " has dimension " + header.getInt(4)
+                    + ", configured " + dimension);
+        }
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    void write(int slot, float[] vector) throws IOException {
+        MappedByteBuffer chunk = chunkFor(slot);
+        int base = offsetInChunk(slot);
+        for (int i = 0; i < dimension; i++) {
+            chunk.putFloat(base + i * Float.BYTES, vector[i]);
+        }
+    }
+
+    float[] read(int slot) {
+        MappedByteBuffer chunk = chunks.get(slot / slotsPerChunk);
+        int base = offsetInChunk(slot);
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = chunk.getFloat(base + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    /**
+     * Dot product of a stored vector with {@code query}, without copying it on-heap.
+     */
+    float dot(int slot, float[] query) {
+        MappedByteBuffer chunk = chunks.get(slot / slotsPerChunk);
+        int base = offsetInChunk(slot);
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += chunk.getFloat(base + i * Float.BYTES) * query[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Map every chunk needed for {@code slots} slots, e.g. when reopening an existing file.
+     */
+    void ensureCapacity(int slots) throws IOException {
+        if (slots > 0) {
+            chunkFor(slots - 1);
+        }
+    }
+
+    void force() {
+        chunks.forEach(MappedByteBuffer::force);
+    }
+
+    private synchronized MappedByteBuffer chunkFor(int slot) throws IOException {
+        int index = slot / slotsPerChunk;
+        while (chunks.size() <= index) {
+            long position = HEADER_BYTES + (long) chunks.size() * slotsPerChunk * slotBytes;
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                    (long) slotsPerChunk * slotBytes);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.add(chunk);
+        }
+        return chunks.get(index);
+    }
+
+    private int offsetInChunk(int slot) {
+        return (slot % slotsPerChunk) * slotBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,18 @@
+-- external_id was introduced through the entity mapping; make it explicit so bulk
+-- ingest can rely on INSERT ... ON CONFLICT (external_id).
+ALTER TABLE activity_records ADD COLUMN IF NOT EXISTS external_id VARCHAR(255);
+
+-- Older ingest paths could store the same external_id twice; keep the newest row of
+-- each so the unique index can be built.
+DELETE FROM activity_records
+WHERE id IN (
+    SELECT id FROM (
+        SELECT id, ROW_NUMBER() OVER (PARTITION BY external_id
+                                      ORDER BY created_at DESC NULLS LAST, id DESC) AS rn
+        FROM activity_records
+        WHERE external_id IS NOT NULL
+    ) ranked
+    WHERE rn > 1
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_activity_records_external_id ON activity_records(external_id);
@@ -0,0 +1,7 @@
+-- Write-behind staging table for /api/ingest/activity. Rows are appended on
+-- ingest and deleted once drained into activity_records.
+CREATE TABLE IF NOT EXISTS ingest_journal (
+    id BIGSERIAL PRIMARY KEY,
+    payload JSONB NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
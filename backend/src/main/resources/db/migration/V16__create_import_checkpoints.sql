@@ -0,0 +1,9 @@
+-- Resumable checkpoints for the NDJSON bulk import endpoint
+CREATE TABLE IF NOT EXISTS import_checkpoints (
+    import_id VARCHAR(255) PRIMARY KEY,
+    committed_records BIGINT NOT NULL DEFAULT 0,
+    status VARCHAR(20) NOT NULL,
+    last_error TEXT,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,14 @@
+-- Persistent queue for the vector indexing pipeline. One row per activity record;
+-- re-ingesting a record resets its job instead of adding another.
+CREATE TABLE IF NOT EXISTS index_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    record_id UUID NOT NULL UNIQUE,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING, RUNNING, FAILED
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    claimed_at TIMESTAMP WITH TIME ZONE,
+    last_error TEXT,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_index_jobs_pending ON index_jobs(next_attempt_at) WHERE status = 'PENDING';
@@ -0,0 +1,26 @@
+-- vector_store used to be created lazily by the embedding store with no ANN index.
+-- Create it up front (same layout as PgVectorEmbeddingStore) with an HNSW index and
+-- expression indexes for the metadata filters pushed down by VectorSearchService.
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE IF NOT EXISTS vector_store (
+    embedding_id UUID PRIMARY KEY,
+    embedding vector(1024),
+    text TEXT NULL,
+    metadata JSON NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_vector_store_embedding_hnsw
+    ON vector_store USING hnsw (embedding vector_cosine_ops);
+
+CREATE INDEX IF NOT EXISTS idx_vector_store_record_id ON vector_store ((metadata->>'recordId'));
+CREATE INDEX IF NOT EXISTS idx_vector_store_host ON vector_store ((metadata->>'host'));
+CREATE INDEX IF NOT EXISTS idx_vector_store_visit_epoch ON vector_store (((metadata->>'visitEpoch')::bigint));
+
+-- Backfill the filterable keys for segments indexed before they existed
+UPDATE vector_store
+SET metadata = (metadata::jsonb || jsonb_build_object(
+        'host', lower(substring(metadata->>'url' from '://([^/:?#]+)')),
+        'visitEpoch', EXTRACT(EPOCH FROM NULLIF(split_part(metadata->>'timestamp', '[', 1), '')::timestamptz)::bigint
+    ))::json
+WHERE metadata IS NOT NULL AND metadata->>'host' IS NULL;
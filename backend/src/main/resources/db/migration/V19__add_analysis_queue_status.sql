@@ -0,0 +1,13 @@
+-- Claim-based analysis queue on activity_records. Workers move rows PENDING -> RUNNING
+-- with FOR UPDATE SKIP LOCKED and finish them as DONE; analysis_claimed_at is the lease
+-- start and fences late writes from a worker whose lease already expired.
+ALTER TABLE activity_records
+    ADD COLUMN IF NOT EXISTS analysis_status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING, RUNNING, DONE
+    ADD COLUMN IF NOT EXISTS analysis_claimed_at TIMESTAMP WITH TIME ZONE;
+
+UPDATE activity_records SET analysis_status = 'DONE' WHERE analyzed = TRUE;
+
+CREATE INDEX IF NOT EXISTS idx_activity_records_analysis_pending
+    ON activity_records(created_at) WHERE analysis_status = 'PENDING';
+CREATE INDEX IF NOT EXISTS idx_activity_records_analysis_running
+    ON activity_records(analysis_claimed_at) WHERE analysis_status = 'RUNNING';
@@ -0,0 +1,16 @@
+-- Chat completions keyed by model name + SHA-256 of the normalized prompt. Rows expire
+-- after a TTL; the hourly sweep also trims the least recently used rows above a size cap.
+CREATE TABLE IF NOT EXISTS llm_response_cache (
+    cache_key VARCHAR(200) PRIMARY KEY,
+    model_name VARCHAR(200) NOT NULL,
+    call_site VARCHAR(30) NOT NULL,
+    response TEXT NOT NULL,
+    tokens INTEGER NOT NULL DEFAULT 0, -- tokens the original call cost, credited on every hit
+    hit_count INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_used_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_llm_response_cache_expires ON llm_response_cache(expires_at);
+CREATE INDEX IF NOT EXISTS idx_llm_response_cache_last_used ON llm_response_cache(last_used_at);
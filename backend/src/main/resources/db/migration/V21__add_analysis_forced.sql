@@ -0,0 +1,4 @@
+-- analysis_status gains SKIPPED: finished by the local pre-classifier without a model
+-- call. Records explicitly re-queued for analysis are forced past the pre-classifier.
+ALTER TABLE activity_records
+    ADD COLUMN IF NOT EXISTS analysis_forced BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1,12 @@
+-- Retry bookkeeping for the analysis queue. A claim counts as an attempt; failed records
+-- go back to PENDING with an exponential backoff (analysis_next_attempt_at) until they run
+-- out of attempts and are parked as DEAD with their last error.
+ALTER TABLE activity_records
+    ADD COLUMN IF NOT EXISTS analysis_attempts INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS analysis_next_attempt_at TIMESTAMP WITH TIME ZONE,
+    ADD COLUMN IF NOT EXISTS analysis_last_error TEXT;
+
+CREATE INDEX IF NOT EXISTS idx_activity_records_analysis_retry
+    ON activity_records(analysis_next_attempt_at) WHERE analysis_status = 'PENDING' AND analysis_attempts > 0;
+CREATE INDEX IF NOT EXISTS idx_activity_records_analysis_dead
+    ON activity_records(created_at) WHERE analysis_status = 'DEAD';
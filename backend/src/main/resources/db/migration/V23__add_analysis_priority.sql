@@ -0,0 +1,18 @@
+-- Claim order of the analysis queue. analysis_priority is a virtual time in hours: the
+-- creation time plus up to 48 hours for engagement and 24 for AI conversations (see
+-- AnalysisPriority, computed at ingest). Existing rows are backfilled with the same formula.
+ALTER TABLE activity_records
+    ADD COLUMN IF NOT EXISTS analysis_priority DOUBLE PRECISION NOT NULL DEFAULT 0;
+
+UPDATE activity_records SET analysis_priority =
+    EXTRACT(EPOCH FROM COALESCE(created_at, visit_time, CURRENT_TIMESTAMP)) / 3600.0
+    + 48 * LEAST(100, ROUND(
+        50 * LEAST(1.0, LN(1 + GREATEST(0, CASE WHEN COALESCE(active_seconds, 0) > 0 THEN active_seconds
+                                                ELSE COALESCE(duration_seconds, 0) END)) / LN(601))
+        + LEAST(25, GREATEST(0, COALESCE(scroll_depth, 0)) / 4.0)
+        + LEAST(15, GREATEST(0, COALESCE(interaction_count, 0)) * 1.5)
+        + LEAST(10, COALESCE(LENGTH(content_summary), 0) / 100.0))) / 100.0
+    + CASE WHEN external_id IS NOT NULL THEN 24 ELSE 0 END;
+
+CREATE INDEX IF NOT EXISTS idx_activity_records_analysis_priority
+    ON activity_records(analysis_priority DESC) WHERE analysis_status = 'PENDING' AND analysis_attempts = 0;
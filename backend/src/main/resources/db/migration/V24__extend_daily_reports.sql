@@ -0,0 +1,13 @@
+-- daily_reports (unused since V1) becomes the store of generated reports and digests, one
+-- row per date and type: DIGEST is the per-day summary that weekly and monthly reports
+-- are merged from, GROUP_DIGEST the merge of up to seven consecutive day digests.
+ALTER TABLE daily_reports
+    ALTER COLUMN id SET DEFAULT gen_random_uuid(),
+    ADD COLUMN IF NOT EXISTS report_type VARCHAR(20) NOT NULL DEFAULT 'DIGEST',
+    ADD COLUMN IF NOT EXISTS record_count INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP;
+
+DELETE FROM daily_reports a USING daily_reports b
+WHERE a.report_date = b.report_date AND a.report_type = b.report_type AND a.ctid < b.ctid;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_daily_reports_date_type ON daily_reports(report_date, report_type);
@@ -0,0 +1,10 @@
+-- Invalidation marks for stored reports. Ingest and deletes stamp every visit date they
+-- touch; a report or digest in daily_reports is stale when a mark on one of its dates is
+-- newer than the report's updated_at (the moment its source data was read).
+CREATE TABLE IF NOT EXISTS report_dirty_dates (
+    report_date DATE PRIMARY KEY,
+    marked_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Reports read activity by visit date range
+CREATE INDEX IF NOT EXISTS idx_activity_records_visit_time ON activity_records(visit_time);
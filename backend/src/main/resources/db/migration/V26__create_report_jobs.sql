@@ -0,0 +1,24 @@
+-- Asynchronous report generation. A job covers one report type and period; the partial
+-- unique index admits a single queued or running job per report, so identical
+-- submissions collapse into it. Queued and running jobs are kept alive by heartbeats on
+-- updated_at; one whose heartbeat stops is considered abandoned and may be replaced.
+CREATE TABLE IF NOT EXISTS report_jobs (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    report_type VARCHAR(20) NOT NULL,
+    period_start DATE NOT NULL,
+    period_end DATE NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'QUEUED',
+    stage VARCHAR(20),
+    steps_done INTEGER NOT NULL DEFAULT 0,
+    steps_total INTEGER NOT NULL DEFAULT 0,
+    result TEXT,
+    error TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP WITH TIME ZONE,
+    finished_at TIMESTAMP WITH TIME ZONE,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_report_jobs_in_flight ON report_jobs(report_type, period_start, period_end)
+    WHERE status IN ('QUEUED', 'RUNNING');
+CREATE INDEX IF NOT EXISTS idx_report_jobs_finished ON report_jobs(finished_at) WHERE finished_at IS NOT NULL;
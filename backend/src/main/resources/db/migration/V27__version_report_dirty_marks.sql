@@ -0,0 +1,16 @@
+-- Dirty marks carry a version from a sequence instead of a timestamp. A mark is written
+-- inside the ingest or delete transaction, so its CURRENT_TIMESTAMP is the transaction
+-- start and may predate a report that was generated before the transaction committed.
+-- Per date, an upsert takes a new version under the row lock, so a mark that commits later
+-- always carries a higher version than any version a report could have read before it.
+--
+-- A stored report remembers the sum of the mark versions over its dates, read before its
+-- source data; it is stale once that sum grew. Rows generated before this migration have
+-- no version and are regenerated on next use.
+CREATE SEQUENCE IF NOT EXISTS report_mark_version_seq;
+
+ALTER TABLE report_dirty_dates
+    ADD COLUMN IF NOT EXISTS mark_version BIGINT NOT NULL DEFAULT nextval('report_mark_version_seq');
+
+ALTER TABLE daily_reports
+    ADD COLUMN IF NOT EXISTS source_version BIGINT;
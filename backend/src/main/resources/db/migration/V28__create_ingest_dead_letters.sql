@@ -0,0 +1,11 @@
+-- Journal entries that failed to drain on their own, e.g. unreadable payloads or rows the
+-- upsert rejects. They are moved here with the error so they no longer block the entries
+-- behind them; the payload is kept for inspection and manual replay.
+CREATE TABLE IF NOT EXISTS ingest_dead_letters (
+    id BIGSERIAL PRIMARY KEY,
+    journal_id BIGINT NOT NULL,
+    payload JSONB NOT NULL,
+    error TEXT,
+    journaled_at TIMESTAMP WITH TIME ZONE,
+    failed_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
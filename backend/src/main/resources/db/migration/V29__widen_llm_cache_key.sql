@@ -0,0 +1,3 @@
+-- cache_key is the model name (up to 200 characters) plus ':' and a 64-character hash,
+-- which no longer fits in 200 characters for long model names.
+ALTER TABLE llm_response_cache ALTER COLUMN cache_key TYPE VARCHAR(300);
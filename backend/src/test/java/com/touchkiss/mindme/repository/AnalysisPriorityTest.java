@@ -0,0 +1,40 @@
+package com.touchkiss.mindme.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisPriorityTest {
+
+    private final ZonedDateTime now = ZonedDateTime.now();
+
+    @Test
+    void testDeepReadOutranksNewerThrowawayTabs() {
+        int deepRead = AnalysisPriority.engagementScore(1200, 1300, 100, 30, "x".repeat(800));
+        int throwaway = AnalysisPriority.engagementScore(3, 4, 0, 0, null);
+
+        assertTrue(deepRead >= 90);
+        assertTrue(throwaway < 15);
+        assertTrue(AnalysisPriority.of(now.minusHours(24), deepRead, false)
+                > AnalysisPriority.of(now, throwaway, false));
+        // Engagement buys a bounded head start; recency wins again after two days
+        assertTrue(AnalysisPriority.of(now.minusHours(72), deepRead, false)
+                < AnalysisPriority.of(now, throwaway, false));
+    }
+
+    @Test
+    void testAiConversationsAreLifted() {
+        assertEquals(AnalysisPriority.of(now, 0, false) + AnalysisPriority.AI_CONVERSATION_BOOST_HOURS,
+                AnalysisPriority.of(now, 0, true), 1e-9);
+    }
+
+    @Test
+    void testScoreFallsBackToDurationAndIsCapped() {
+        assertEquals(AnalysisPriority.engagementScore(null, 600, null, null, null),
+                AnalysisPriority.engagementScore(600, 10, null, null, null));
+        assertEquals(100, AnalysisPriority.engagementScore(100000, 100000, 1000, 1000, "x".repeat(100000)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.repository.AnalysisQueueRepository.AnalysisTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AnalysisQueueRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private AnalysisQueueRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        repository = new AnalysisQueueRepository(jdbcTemplate);
+    }
+
+    @Test
+    void testClaimSkipsLockedRowsAndNeverReadsPageContent() {
+        repository.claim(25, 5);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), ArgumentMatchers.<RowMapper<AnalysisTask>>any(), eq(25), eq(5));
+        assertTrue(sql.getValue().contains("FOR UPDATE SKIP LOCKED"));
+        assertTrue(sql.getValue().contains("WHERE analysis_status = 'PENDING' AND analysis_attempts = 0"));
+        assertTrue(sql.getValue().contains("analysis_next_attempt_at <= CURRENT_TIMESTAMP"));
+        assertTrue(sql.getValue().contains("ORDER BY analysis_priority DESC"));
+        assertFalse(sql.getValue().contains("page_content"));
+        assertFalse(sql.getValue().contains("SELECT *"));
+    }
+
+    @Test
+    void testCompleteIsFencedOnTheLease() {
+        Timestamp claimedAt = new Timestamp(1_700_000_000_000L);
+        AnalysisTask task = new AnalysisTask(UUID.randomUUID(), "https://example.com", "t", null, 30, 30, 50, 2,
+                false, false, 1, claimedAt);
+        when(jdbcTemplate.update(anyString(), any(), any(), any(), any())).thenReturn(0);
+
+        assertFalse(repository.complete(task, 70, "java"));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(sql.capture(), eq(70), eq("java"), eq(task.id()), eq(claimedAt));
+        assertTrue(sql.getValue().contains("analysis_status = 'RUNNING' AND analysis_claimed_at = ?"));
+    }
+}
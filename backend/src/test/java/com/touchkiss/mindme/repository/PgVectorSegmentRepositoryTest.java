@@ -0,0 +1,143 @@
+package com.touchkiss.mindme.repository;
+
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository.SegmentQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class PgVectorSegmentRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+    }
+
+    @Test
+    void testFullPrecisionSearchOrdersByIndexedDistance() {
+        String sql = search(repository("none"), null, List.of(), null);
+
+        assertTrue(sql.contains("ORDER BY embedding <=> CAST(? AS vector)"));
+        assertFalse(sql.contains("metadata->>'host'"));
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFilteredSearchWidensEfSearchWithoutIterativeScan() {
+        pgvector("0.7.4");
+        String sql = search(repository("none"), null);
+
+        // The host filter stays outside the index scan, so HNSW must hand it 10 * k candidates
+        assertTrue(sql.contains("metadata->>'host' = ANY(?)"));
+        assertTrue(sql.contains("ORDER BY embedding <=> CAST(? AS vector)\n"));
+        assertTrue(sql.contains("LIMIT ?) candidates"));
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 100");
+        order.verify(jdbcTemplate).query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class));
+        verify(jdbcTemplate, never()).execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFilteredSearchScansIterativelyWherePgvectorSupportsIt() {
+        pgvector("0.8.0");
+        String sql = search(repository("none"), null);
+
+        assertTrue(sql.contains("metadata->>'host' = ANY(?)"));
+        assertTrue(sql.contains("ORDER BY embedding <=> CAST(? AS vector)\n"));
+        assertTrue(sql.contains("LIMIT ?) candidates"));
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+        order.verify(jdbcTemplate).query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class));
+        verify(jdbcTemplate, never()).execute(startsWith("SET LOCAL hnsw.ef_search"));
+    }
+
+    @Test
+    void testRecordFilterIsRankedExactly() {
+        String sql = search(repository("binary"), null, List.of(), List.of("record-1"));
+
+        assertTrue(sql.contains("ORDER BY (embedding <=> CAST(? AS vector)) + 0"));
+        assertFalse(sql.contains("binary_quantize"));
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void testBinaryQuantizationWidensEfSearchToRerankPool() {
+        pgvector("0.8.0");
+        String sql = search(repository("binary"), null);
+
+        assertTrue(sql.contains("binary_quantize(embedding)::bit(4)) <~> binary_quantize(CAST(? AS vector(4)))"));
+        // Exact rerank still scores against the float column
+        assertTrue(sql.contains("(2 - (embedding <=> CAST(? AS vector))) / 2 AS score"));
+        // 10 results * rerank factor 4
+        verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 40");
+    }
+
+    @Test
+    void testHalfvecKeepsLargerRequestedEfSearch() {
+        pgvector("0.8.0");
+        String sql = search(repository("HalfVec"), 200);
+
+        assertTrue(sql.contains("(embedding::halfvec(4)) <=> CAST(? AS halfvec(4))"));
+        assertFalse(sql.contains("binary_quantize"));
+        verify(jdbcTemplate).execute("SET LOCAL hnsw.ef_search = 200");
+    }
+
+    @Test
+    void testUnknownQuantizationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> repository("int4"));
+    }
+
+    private PgVectorSegmentRepository repository(String quantization) {
+        return new PgVectorSegmentRepository(jdbcTemplate, transactionTemplate, "vector_store", 4, quantization, 4);
+    }
+
+    private void pgvector(String version) {
+        when(jdbcTemplate.queryForList(contains("pg_extension"), eq(String.class))).thenReturn(List.of(version));
+    }
+
+    private String search(PgVectorSegmentRepository repository, Integer efSearch) {
+        return search(repository, efSearch, List.of("github.com"), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String search(PgVectorSegmentRepository repository, Integer efSearch, List<String> hosts,
+            List<String> recordIds) {
+        repository.search(new SegmentQuery(new float[] { 0.1f, 0.2f, 0.3f, 0.4f }, 10, 0.5, efSearch, hosts, null,
+                null, recordIds));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(PreparedStatementSetter.class), any(RowMapper.class));
+        return sql.getValue();
+    }
+}
@@ -0,0 +1,60 @@
+package com.touchkiss.mindme.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ProfileCounterRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private ProfileCounterRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        repository = new ProfileCounterRepository(jdbcTemplate);
+    }
+
+    @Test
+    void testTagDeltasAreAddedInOneSortedUpsert() throws Exception {
+        String longTag = "x".repeat(120);
+        repository.addTagFrequencies(Map.of("spring", 2, "java", 1, longTag, 1, longTag + "y", 3));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PreparedStatementSetter> setter = ArgumentCaptor.forClass(PreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).update(sql.capture(), setter.capture());
+        assertTrue(sql.getValue().contains("unnest(?::text[], ?::int4[])"));
+        assertTrue(sql.getValue().contains("frequency = user_tags.frequency + EXCLUDED.frequency"));
+        assertTrue(sql.getValue().contains("last_seen = EXCLUDED.last_seen"));
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        Connection connection = mock(Connection.class);
+        when(ps.getConnection()).thenReturn(connection);
+        setter.getValue().setValues(ps);
+        verify(connection).createArrayOf("text", new Object[] { "java", "spring", "x".repeat(100) });
+        // Keys colliding after truncation to the column width are merged
+        verify(connection).createArrayOf("int4", new Object[] { 1, 2, 4 });
+    }
+
+    @Test
+    void testEmptyDeltasSkipTheDatabase() {
+        repository.addInterestWeights(Map.of());
+
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+    }
+}
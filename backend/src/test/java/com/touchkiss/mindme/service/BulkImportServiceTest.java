@@ -0,0 +1,119 @@
+package com.touchkiss.mindme.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.domain.ImportCheckpoint;
+import com.touchkiss.mindme.repository.ImportCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BulkImportServiceTest {
+
+    @Mock
+    private KnowledgeService knowledgeService;
+
+    @Mock
+    private ImportCheckpointRepository checkpointRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private BulkImportService bulkImportService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        bulkImportService = new BulkImportService(knowledgeService, checkpointRepository, transactionTemplate,
+                new ObjectMapper(), 2);
+
+        when(checkpointRepository.save(any(ImportCheckpoint.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> {
+            TransactionCallback<?> callback = inv.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+    }
+
+    @Test
+    void testImportCommitsInChunksAndReportsProgress() throws Exception {
+        when(checkpointRepository.findById("job")).thenReturn(Optional.empty());
+        List<BulkImportService.ImportProgress> progress = new ArrayList<>();
+
+        BulkImportService.ImportProgress result = bulkImportService.importNdjson("job",
+                gzip(ndjson(5)), false, progress::add);
+
+        assertEquals("COMPLETED", result.status());
+        assertEquals(5, result.committed());
+        // Two full chunks, then the final summary line
+        assertEquals(3, progress.size());
+        verify(knowledgeService, times(3)).saveActivities(any());
+    }
+
+    @Test
+    void testImportResumesAfterLastCommittedChunk() {
+        ImportCheckpoint checkpoint = new ImportCheckpoint();
+        checkpoint.setImportId("job");
+        checkpoint.setCommittedRecords(4L);
+        checkpoint.setStatus(ImportCheckpoint.Status.FAILED);
+        when(checkpointRepository.findById("job")).thenReturn(Optional.of(checkpoint));
+
+        BulkImportService.ImportProgress result = bulkImportService.importNdjson("job",
+                new ByteArrayInputStream(ndjson(5)), false, p -> {
+                });
+
+        assertEquals(4, result.skipped());
+        assertEquals(5, result.committed());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ActivityRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(knowledgeService).saveActivities(captor.capture());
+        assertEquals("http://example.com/4", captor.getValue().get(0).getUrl());
+    }
+
+    @Test
+    void testFailedChunkKeepsLastCommittedCheckpoint() {
+        when(checkpointRepository.findById("job")).thenReturn(Optional.empty());
+        byte[] body = (new String(ndjson(3), StandardCharsets.UTF_8) + "{not json}\n")
+                .getBytes(StandardCharsets.UTF_8);
+
+        BulkImportService.ImportProgress result = bulkImportService.importNdjson("job",
+                new ByteArrayInputStream(body), false, p -> {
+                });
+
+        assertEquals("FAILED", result.status());
+        assertEquals(2, result.committed());
+    }
+
+    private byte[] ndjson(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("{\"url\":\"http://example.com/").append(i).append("\",\"title\":\"Page ").append(i)
+                    .append("\"}\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private ByteArrayInputStream gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+}
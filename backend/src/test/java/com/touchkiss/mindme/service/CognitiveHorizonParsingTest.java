@@ -9,7 +9,7 @@ public class CognitiveHorizonParsingTest {
 
     @Test
     public void testParseCardsWithVariousFormats() {
-        CognitiveHorizonService service = new CognitiveHorizonService(null, null);
+        CognitiveHorizonService service = new CognitiveHorizonService(null, null, null, null);
 
         String aiResponse = """
                 好的，为您推荐以下认知扩张概念：
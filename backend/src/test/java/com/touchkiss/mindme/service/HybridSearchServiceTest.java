@@ -0,0 +1,63 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class HybridSearchServiceTest {
+
+    @Test
+    void testReciprocalRankFusionRewardsAgreement() {
+        UUID both = UUID.randomUUID();
+        UUID lexicalOnly = UUID.randomUUID();
+        UUID vectorOnly = UUID.randomUUID();
+
+        List<HybridSearchService.Hit> hits = HybridSearchService.fuse(
+                List.of(lexicalOnly, both),
+                List.of(vectorOnly, both),
+                60);
+
+        assertEquals(3, hits.size());
+        // Ranked second on both legs beats first on a single leg
+        assertEquals(both, hits.get(0).recordId());
+        assertEquals(2, hits.get(0).lexicalRank());
+        assertEquals(2, hits.get(0).vectorRank());
+        assertEquals(2.0 / 62, hits.get(0).score(), 1e-9);
+    }
+
+    @Test
+    void testFusionDeduplicatesAndKeepsMissingRanksNull() {
+        UUID id = UUID.randomUUID();
+
+        List<HybridSearchService.Hit> hits = HybridSearchService.fuse(List.of(), List.of(id), 60);
+
+        assertEquals(1, hits.size());
+        assertNull(hits.get(0).lexicalRank());
+        assertEquals(1, hits.get(0).vectorRank());
+    }
+
+    @Test
+    void testOutOfRangePagingIsClampedWithoutOverflow() {
+        ActivityRecordRepository repository = mock(ActivityRecordRepository.class);
+        VectorSearchService vectorSearchService = mock(VectorSearchService.class);
+        when(repository.searchRankedIds("q", 200)).thenReturn(List.of(UUID.randomUUID()));
+        HybridSearchService service = new HybridSearchService(repository, vectorSearchService, 60, 2);
+        try {
+            HybridSearchService.HybridSearchResult result = service.search("q", Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+            assertTrue(result.hits().isEmpty());
+            assertEquals(1, result.totalCandidates());
+            assertEquals(100, result.size());
+            verify(vectorSearchService).searchSegments("q", 600);
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.touchkiss.mindme.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.touchkiss.mindme.domain.ActivityRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IngestBufferServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private KnowledgeService knowledgeService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private IngestBufferService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(3L);
+        service = new IngestBufferService(jdbcTemplate, transactionTemplate, knowledgeService, objectMapper,
+                true, 100, 10, 1, 2000);
+        service.loadDepth();
+    }
+
+    @Test
+    void testPoisonEntryIsDeadLetteredAndTheRestDrained() throws Exception {
+        journal(List.of(entry(1, "http://example.com/a"), entry(2, "http://example.com/poison"),
+                entry(3, "http://example.com/c")));
+        when(knowledgeService.saveActivities(any())).thenAnswer(invocation -> {
+            List<ActivityRecord> records = invocation.getArgument(0);
+            if (records.stream().anyMatch(r -> r.getUrl().endsWith("poison"))) {
+                throw new DataIntegrityViolationException("value too long for type character varying(2048)");
+            }
+            return new KnowledgeService.IngestResult(records.size(), 0);
+        });
+        when(jdbcTemplate.update(contains("ingest_dead_letters"), eq(2L), anyString())).thenReturn(1);
+
+        service.flush();
+
+        verify(jdbcTemplate).update("DELETE FROM ingest_journal WHERE id = ?", 1L);
+        verify(jdbcTemplate).update("DELETE FROM ingest_journal WHERE id = ?", 3L);
+        verify(jdbcTemplate).update(contains("ingest_dead_letters"), eq(2L), contains("value too long"));
+        IngestBufferService.BufferStats stats = service.stats();
+        assertEquals(0, stats.depth());
+        assertEquals(2, stats.drained());
+        assertEquals(1, stats.deadLettered());
+    }
+
+    @Test
+    void testTransientFailureKeepsTheBatchForTheNextFlush() throws Exception {
+        journal(List.of(entry(1, "http://example.com/a"), entry(2, "http://example.com/b")));
+        when(knowledgeService.saveActivities(any())).thenThrow(new QueryTimeoutException("statement timeout"));
+
+        service.flush();
+
+        verify(knowledgeService, times(1)).saveActivities(any());
+        verify(jdbcTemplate, never()).update(contains("ingest_dead_letters"), any(Object[].class));
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+        assertEquals(3, service.stats().depth());
+    }
+
+    /**
+     * Serve {@code entries} to the batch claim and each one to the single-entry claim.
+     */
+    @SuppressWarnings("unchecked")
+    private void journal(List<Object[]> entries) {
+        when(jdbcTemplate.query(contains("ORDER BY id LIMIT ?"), any(RowMapper.class), eq(10)))
+                .thenAnswer(invocation -> map(invocation.getArgument(1), entries));
+        for (Object[] entry : entries) {
+            when(jdbcTemplate.query(contains("WHERE id = ?"), any(RowMapper.class), eq(entry[0])))
+                    .thenAnswer(invocation -> map(invocation.getArgument(1), List.<Object[]>of(entry)));
+        }
+    }
+
+    private static List<Object> map(RowMapper<Object> mapper, List<Object[]> entries) throws Exception {
+        List<Object> rows = new ArrayList<>();
+        for (Object[] entry : entries) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong("id")).thenReturn((Long) entry[0]);
+            when(rs.getString("payload")).thenReturn((String) entry[1]);
+            rows.add(mapper.mapRow(rs, rows.size()));
+        }
+        return rows;
+    }
+
+    private Object[] entry(long id, String url) throws Exception {
+        ActivityRecord record = new ActivityRecord();
+        record.setUrl(url);
+        record.setTitle(url);
+        return new Object[] { id, objectMapper.writeValueAsString(record) };
+    }
+}
@@ -0,0 +1,161 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.ActivityRecordRepositoryCustom.UpsertedRow;
+import com.touchkiss.mindme.repository.DailyReportRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+class KnowledgeServiceTest {
+
+    @Mock
+    private ActivityRecordRepository repository;
+
+    @Mock
+    private IndexingPipelineService indexingPipelineService;
+
+    @Mock
+    private DailyReportRepository reportRepository;
+
+    // Rows already stored, by external ID
+    private final Map<String, UUID> stored = new HashMap<>();
+    private KnowledgeService knowledgeService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Answers like the upsert statement: merged rows keep their ID, and one statement
+        // cannot touch the same row twice
+        when(repository.batchUpsert(any())).thenAnswer(invocation -> {
+            List<ActivityRecord> records = invocation.getArgument(0);
+            Set<String> seen = new HashSet<>();
+            List<UpsertedRow> rows = new ArrayList<>();
+            for (ActivityRecord r : records) {
+                if (r.getExternalId() != null && !seen.add(r.getExternalId())) {
+                    throw new IllegalStateException("ON CONFLICT DO UPDATE command cannot affect row a second time");
+                }
+                UUID existing = r.getExternalId() != null ? stored.get(r.getExternalId()) : null;
+                rows.add(new UpsertedRow(existing != null ? existing : r.getId(), r.getExternalId(), existing == null));
+            }
+            return rows;
+        });
+        knowledgeService = new KnowledgeService(repository, indexingPipelineService, reportRepository);
+    }
+
+    @Test
+    void testSaveActivitiesResolvesExternalIdsInOneQuery() {
+        UUID existingId = UUID.randomUUID();
+        stored.put("chat-1", existingId);
+        when(repository.findIdsByExternalIds(anyCollection())).thenReturn(stored);
+
+        ActivityRecord existing = record("http://chat.example.com/1", "chat-1");
+        ActivityRecord fresh = record("http://example.com/new", null);
+        ActivityRecord duplicateA = record("http://chat.example.com/2", "chat-2");
+        ActivityRecord duplicateB = record("http://chat.example.com/2", "chat-2");
+
+        KnowledgeService.IngestResult result = knowledgeService
+                .saveActivities(List.of(existing, fresh, duplicateA, duplicateB));
+
+        // Rows written: chat-1 merged, the fresh record and chat-2 once
+        assertEquals(2, result.inserted());
+        assertEquals(1, result.updated());
+        assertEquals(existingId, existing.getId());
+        assertNotNull(fresh.getId());
+        assertEquals(duplicateA.getId(), duplicateB.getId());
+
+        verify(repository, times(1)).findIdsByExternalIds(anyCollection());
+        verify(repository, times(1)).batchUpsert(argThat(written -> written.size() == 3));
+        verify(repository, never()).findByExternalId(any());
+        verify(indexingPipelineService, times(1))
+                .enqueue(List.of(fresh.getId(), existingId, duplicateB.getId()));
+    }
+
+    @Test
+    void testLastRecordPerExternalIdIsWritten() {
+        when(repository.findIdsByExternalIds(anyCollection())).thenReturn(Map.of());
+        ActivityRecord first = record("http://chat.example.com/2", "chat-2");
+        first.setTitle("draft");
+        ActivityRecord last = record("http://chat.example.com/2", "chat-2");
+        last.setTitle("final");
+
+        KnowledgeService.IngestResult result = knowledgeService.saveActivities(List.of(first, last));
+
+        assertEquals(1, result.inserted());
+        verify(repository).batchUpsert(argThat(written -> written.size() == 1
+                && written.get(0).getTitle().equals("final")));
+        verify(indexingPipelineService).enqueue(List.of(last.getId()));
+    }
+
+    @Test
+    void testBlankExternalIdIsTreatedAsMissing() {
+        when(repository.findIdsByExternalIds(anyCollection())).thenReturn(Map.of());
+
+        ActivityRecord record = record("http://example.com/blank", "  ");
+
+        KnowledgeService.IngestResult result = knowledgeService.saveActivities(List.of(record));
+
+        assertEquals(1, result.inserted());
+        assertNull(record.getExternalId());
+    }
+
+    @Test
+    void testVisitDatesAreMarkedDirtyForStoredReports() {
+        when(repository.findIdsByExternalIds(anyCollection())).thenReturn(Map.of());
+        ZonedDateTime visit = ZonedDateTime.of(2026, 3, 14, 10, 0, 0, 0, ZoneId.systemDefault());
+        ActivityRecord morning = record("http://example.com/a", null);
+        morning.setVisitTime(visit);
+        ActivityRecord evening = record("http://example.com/b", null);
+        evening.setVisitTime(visit.plusHours(8));
+        ActivityRecord nextDay = record("http://example.com/c", null);
+        nextDay.setVisitTime(visit.plusDays(1));
+
+        knowledgeService.saveActivities(List.of(morning, evening, nextDay));
+
+        verify(reportRepository).markDirty(Set.of(LocalDate.of(2026, 3, 14), LocalDate.of(2026, 3, 15)));
+    }
+
+    @Test
+    void testUpdateMovingARecordToAnotherDayMarksBothDates() {
+        UUID existingId = UUID.randomUUID();
+        stored.put("chat-1", existingId);
+        when(repository.findIdsByExternalIds(anyCollection())).thenReturn(stored);
+        when(reportRepository.findVisitDates(List.of(existingId), ZoneId.systemDefault()))
+                .thenReturn(Set.of(LocalDate.of(2026, 3, 10)));
+        ActivityRecord moved = record("http://chat.example.com/1", "chat-1");
+        moved.setVisitTime(ZonedDateTime.of(2026, 3, 14, 10, 0, 0, 0, ZoneId.systemDefault()));
+
+        knowledgeService.saveActivities(List.of(moved));
+
+        verify(reportRepository).markDirty(Set.of(LocalDate.of(2026, 3, 10), LocalDate.of(2026, 3, 14)));
+    }
+
+    private ActivityRecord record(String url, String externalId) {
+        ActivityRecord record = new ActivityRecord();
+        record.setUrl(url);
+        record.setTitle(url);
+        record.setExternalId(externalId);
+        return record;
+    }
+}
@@ -0,0 +1,51 @@
+package com.touchkiss.mindme.service;
+
+import dev.ai4j.openai4j.OpenAiHttpException;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmRateLimiterTest {
+
+    @Test
+    void classifiesThrottlingAndTimeoutsThroughCauses() {
+        assertEquals(LlmRateLimiter.Outcome.THROTTLED,
+                LlmRateLimiter.classify(new RuntimeException(new OpenAiHttpException(429, "rate limited"))));
+        assertEquals(LlmRateLimiter.Outcome.TIMEOUT,
+                LlmRateLimiter.classify(new UncheckedIOException(new SocketTimeoutException("read timed out"))));
+        assertEquals(LlmRateLimiter.Outcome.ERROR,
+                LlmRateLimiter.classify(new OpenAiHttpException(400, "bad request")));
+    }
+
+    @Test
+    void halvesConcurrencyOnThrottleAndRecoversOnSuccess() {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 0, 8, 1, 0);
+
+        assertThrows(RuntimeException.class, () -> limiter.execute(10, () -> {
+            throw new RuntimeException(new OpenAiHttpException(429, "rate limited"));
+        }, r -> -1));
+        assertEquals(4, limiter.stats().concurrencyLimit());
+        assertEquals(1, limiter.stats().throttled());
+
+        for (int i = 0; i < 40; i++) {
+            limiter.execute(10, () -> "ok", r -> -1);
+        }
+        assertEquals(8, limiter.stats().concurrencyLimit());
+        assertEquals(0, limiter.stats().inFlight());
+    }
+
+    @Test
+    void correctsTokenReservationWithReportedUsage() {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 1000, 2, 1, 0);
+
+        limiter.execute(500, () -> "ok", r -> 100);
+
+        // 500 reserved, 400 handed back; allow for refill during the test
+        long available = limiter.stats().tokensAvailable();
+        assertEquals(900, available, 5);
+    }
+}
@@ -0,0 +1,77 @@
+package com.touchkiss.mindme.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LlmResponseCacheTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private LlmResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        cache = new LlmResponseCache(jdbcTemplate, "test-model", List.of("analysis", "horizon"), 720, 24, 100);
+    }
+
+    @Test
+    void testKeyIgnoresWhitespaceDifferences() {
+        assertEquals(cache.key("Title: a\r\n\r\n\r\nURL:   b  "), cache.key("  Title: a\n\nURL: b"));
+        assertNotEquals(cache.key("Title: a"), cache.key("Title: b"));
+        assertTrue(cache.key("x").startsWith("test-model:"));
+    }
+
+    @Test
+    void testCallSitesMustOptIn() {
+        assertNull(cache.get(LlmResponseCache.CallSite.RELEVANCE, "prompt"));
+        cache.put(LlmResponseCache.CallSite.RELEVANCE, "prompt", "{}", 10);
+
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(0, cache.stats().sites().get(LlmResponseCache.CallSite.RELEVANCE).misses());
+    }
+
+    @Test
+    void testHorizonCardsExpireSooner() {
+        cache.put(LlmResponseCache.CallSite.ANALYSIS, "prompt", "{}", 10);
+        cache.put(LlmResponseCache.CallSite.HORIZON, "prompt", "cards", 10);
+
+        verify(jdbcTemplate).update(anyString(), any(), any(), eq("ANALYSIS"), any(), any(), eq(720L));
+        verify(jdbcTemplate).update(anyString(), any(), any(), eq("HORIZON"), any(), any(), eq(24L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testHitsCreditTheOriginalCallTokens() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), anyString())).thenAnswer(invocation -> {
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            java.sql.ResultSet rs = mock(java.sql.ResultSet.class);
+            when(rs.getString("response")).thenReturn("cards");
+            when(rs.getInt("tokens")).thenReturn(900);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+
+        assertEquals("cards", cache.get(LlmResponseCache.CallSite.HORIZON, "prompt"));
+
+        LlmResponseCache.CacheStats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(900, stats.tokensSaved());
+        assertEquals(1.0, stats.hitRate());
+    }
+}
@@ -0,0 +1,67 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.AnalysisQueueRepository.AnalysisTask;
+import com.touchkiss.mindme.service.PreClassifier.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PreClassifierTest {
+
+    private final PreClassifier classifier = new PreClassifier(true, "/login|/404", "登录|Not Found", 5, 40, 15, 60);
+
+    @Test
+    void testLoginAndErrorPagesAreSkipped() {
+        assertEquals(Decision.SKIP, classifier.classify(visit("https://example.com/login", "Welcome", 120, 80, 5))
+                .decision());
+        assertEquals(Decision.SKIP, classifier.classify(visit("https://example.com/a", "Page Not Found", 120, 80, 5))
+                .decision());
+    }
+
+    @Test
+    void testBouncesAreSkippedButNotForcedRecords() {
+        assertEquals(Decision.SKIP, classifier.classify(visit("https://example.com/a", "A", 2, 0, 0)).decision());
+
+        AnalysisTask forced = new AnalysisTask(UUID.randomUUID(), "https://example.com/login", "A", null, 2, 2, 0, 0,
+                false, true, 1, new Timestamp(0));
+        assertEquals(Decision.ANALYZE, classifier.classify(forced).decision());
+    }
+
+    @Test
+    void testAiConversationsWithoutMetricsAreAnalyzed() {
+        AnalysisTask conversation = new AnalysisTask(UUID.randomUUID(), "https://chat.example.com/c/1", "向量检索",
+                null, null, null, null, null, true, false, 1, new Timestamp(0));
+        assertEquals(Decision.ANALYZE, classifier.classify(conversation).decision());
+    }
+
+    @Test
+    void testDeepEngagementIsPrioritized() {
+        PreClassifier.Classification deep = classifier.classify(visit("https://example.com/a", "A", 900, 100, 20));
+        PreClassifier.Classification casual = classifier.classify(visit("https://example.com/b", "B", 30, 20, 1));
+
+        assertEquals(Decision.ANALYZE_FIRST, deep.decision());
+        assertEquals(Decision.ANALYZE, casual.decision());
+        assertTrue(deep.provisionalScore() > casual.provisionalScore());
+        assertTrue(deep.provisionalScore() <= 100);
+
+        PreClassifier.ClassifierStats stats = classifier.stats();
+        assertEquals(1, stats.prioritized());
+        assertEquals(1, stats.analyzed());
+    }
+
+    @Test
+    void testDisabledClassifierAnalyzesEverything() {
+        PreClassifier disabled = new PreClassifier(false, "/login", "", 5, 40, 15, 60);
+        assertEquals(Decision.ANALYZE, disabled.classify(visit("https://example.com/login", "A", 1, 0, 0)).decision());
+        assertEquals(0, disabled.stats().skipped());
+    }
+
+    private static AnalysisTask visit(String url, String title, int activeSeconds, int scrollDepth, int interactions) {
+        return new AnalysisTask(UUID.randomUUID(), url, title, "summary of a page that is long enough to keep",
+                activeSeconds, activeSeconds, scrollDepth, interactions, false, false, 1, new Timestamp(0));
+    }
+}
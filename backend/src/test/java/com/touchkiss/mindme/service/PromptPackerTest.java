@@ -0,0 +1,158 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.service.PromptPacker.Item;
+import com.touchkiss.mindme.service.PromptPacker.Site;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptPackerTest {
+
+    private static final List<String> TOKENS = List.of("<thi", "nk>plan</th", "ink>\n\nHel", "lo <", "b> world");
+
+    private final PromptPacker packer = new PromptPacker(this::generate, this::stream,
+            new LlmRateLimiter(0, 0, 4, 1, 0), List.of("insight=12", "digest=10", "daily-report=5"), 300000);
+
+    private Response<AiMessage> generate(List<ChatMessage> messages) {
+        return Response.from(AiMessage.from("answer"), new TokenUsage(120, 30));
+    }
+
+    private void stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        TOKENS.forEach(handler::onNext);
+        handler.onComplete(Response.from(AiMessage.from(String.join("", TOKENS)), new TokenUsage(50, 10)));
+    }
+
+    @Test
+    void testRepeatedTitlesFoldIntoOneLineWithACount() {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            items.add(new Item("Spring Docs", "- Spring Docs", 1));
+        }
+        items.add(new Item("Other", "- Other", 1));
+
+        PromptPacker.Packed packed = packer.pack(Site.ASK, items, "\n");
+
+        assertEquals("- Spring Docs (×40)\n- Other", packed.text());
+        assertEquals(39, packed.folded());
+        assertEquals(0, packed.dropped());
+    }
+
+    @Test
+    void testBudgetAdmitsMostRelevantItemsInOriginalOrder() {
+        List<Item> items = List.of(
+                new Item(null, "- low relevance page", 1),
+                new Item(null, "- top page", 9),
+                new Item(null, "- second page", 5));
+
+        PromptPacker.Packed packed = packer.pack(Site.INSIGHT, items, "\n");
+
+        assertEquals("- top page\n- second page", packed.text());
+        assertEquals(1, packed.dropped());
+        assertTrue(packed.tokens() <= packer.budget(Site.INSIGHT));
+    }
+
+    @Test
+    void testOversizedItemIsTruncatedRatherThanDropped() {
+        PromptPacker.Packed packed = packer.pack(Site.DAILY_REPORT,
+                List.of(new Item(null, "一二三四五六七八九十", 1)), "\n");
+
+        assertEquals("一二三四…", packed.text());
+        assertEquals(1, packed.items());
+    }
+
+    @Test
+    void testSplitKeepsEveryLineWithinTheBudget() {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            items.add(new Item("title " + i, "- title " + i + " abcdefgh", 1));
+        }
+
+        List<List<String>> batches = packer.split(Site.DIGEST, items);
+
+        assertTrue(batches.size() > 1);
+        assertEquals(6, batches.stream().mapToInt(List::size).sum());
+        assertTrue(batches.stream().allMatch(b -> PromptPacker.countTokens(String.join("\n", b)) <= 10));
+    }
+
+    @Test
+    void testChineseCountsOneTokenPerCharacter() {
+        assertEquals(4, PromptPacker.countTokens("向量检索"));
+        assertEquals(2, PromptPacker.countTokens("abcdefgh"));
+        assertEquals(5, PromptPacker.countTokens("向量检索 ok"));
+        assertEquals(0, PromptPacker.countTokens(null));
+    }
+
+    @Test
+    void testCallsRecordReportedTokenUsagePerSite() {
+        assertEquals("answer", packer.generate(Site.HORIZON, "prompt", 100));
+        packer.generate(Site.HORIZON, "prompt", 100);
+
+        PromptPacker.SiteStats horizon = packer.stats().sites().get(Site.HORIZON);
+        assertEquals(2, horizon.calls());
+        assertEquals(240, horizon.inputTokens());
+        assertEquals(60, horizon.outputTokens());
+        assertEquals(0, packer.stats().sites().get(Site.ASK).calls());
+        assertEquals(240, packer.stats().inputTokens());
+    }
+
+    @Test
+    void testStreamForwardsVisibleTokensWithoutThinkBlocks() {
+        List<String> forwarded = new ArrayList<>();
+
+        String answer = packer.stream(Site.ASK, "prompt", 100, forwarded::add);
+
+        assertEquals("Hello <b> world", answer);
+        assertEquals("Hello <b> world", String.join("", forwarded));
+        assertTrue(forwarded.size() > 1);
+        assertEquals(50, packer.stats().sites().get(Site.ASK).inputTokens());
+        assertEquals(10, packer.stats().sites().get(Site.ASK).outputTokens());
+    }
+
+    @Test
+    void testStreamCompletesAfterTheClientGoesAway() {
+        List<String> forwarded = new ArrayList<>();
+
+        String answer = packer.stream(Site.DAILY_REPORT, "prompt", 100, token -> {
+            forwarded.add(token);
+            throw new IllegalStateException("closed");
+        });
+
+        assertEquals("Hello <b> world", answer);
+        assertEquals(1, forwarded.size());
+    }
+
+    @Test
+    void testStalledStreamTimesOutAndReleasesItsSlot() {
+        LlmRateLimiter limiter = new LlmRateLimiter(0, 0, 4, 1, 0);
+        // The provider sends one token and then goes silent
+        PromptPacker stalled = new PromptPacker(this::generate, (messages, handler) -> handler.onNext("Hel"),
+                limiter, List.of(), 50);
+
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> stalled.stream(Site.ASK, "prompt", 100, token -> { }));
+
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        assertEquals(0, limiter.stats().inFlight());
+        assertEquals(1, limiter.stats().timeouts());
+    }
+
+    @Test
+    void testThinkBlocksAreStrippedFromCompleteAnswers() {
+        assertEquals("answer", ThinkFilter.strip("<think>a\nb</think>\n answer "));
+        assertEquals("", ThinkFilter.strip("<think>never closed"));
+        assertEquals("a < b", ThinkFilter.strip("a < b"));
+    }
+}
@@ -0,0 +1,181 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import com.touchkiss.mindme.repository.ReportJobRepository;
+import com.touchkiss.mindme.repository.ReportJobRepository.JobStatus;
+import com.touchkiss.mindme.repository.ReportJobRepository.ReportJob;
+import com.touchkiss.mindme.repository.ReportJobRepository.Submission;
+import com.touchkiss.mindme.service.ReportJobService.JobProgress;
+import com.touchkiss.mindme.service.ReportService.Period;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReportJobServiceTest {
+
+    private final LocalDate date = LocalDate.of(2024, 3, 13);
+    private final UUID jobId = UUID.randomUUID();
+
+    @Mock
+    private ReportJobRepository jobRepository;
+
+    @Mock
+    private ReportService reportService;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private ReportJobService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(reportService.findFresh(any())).thenReturn(Optional.empty());
+        when(jobRepository.start(any())).thenReturn(true);
+        when(jobRepository.finish(any(), any())).thenReturn(true);
+        // Writes the first half of the report, then waits to be released
+        when(reportService.generate(any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(1);
+            ReportService.Progress progress = invocation.getArgument(2);
+            progress.update("report", 0, 1);
+            onToken.accept("Hel");
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            onToken.accept("lo");
+            return "Hello";
+        });
+        service = new ReportJobService(jobRepository, reportService, 1, 1, 300000, 7);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void testIdenticalSubmissionsShareOneGeneration() throws Exception {
+        Period week = Period.of(ReportType.WEEKLY, date);
+        when(jobRepository.submit(ReportType.WEEKLY, week.start(), week.end(), 300000))
+                .thenReturn(new Submission(jobId, true), new Submission(jobId, false));
+
+        Submission first = service.submit(ReportType.WEEKLY, date);
+        Submission second = service.submit(ReportType.WEEKLY, date.plusDays(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+
+        assertEquals(jobId, first.id());
+        assertEquals(jobId, second.id());
+        assertFalse(second.created());
+        verify(jobRepository, timeout(5000)).finish(jobId, "Hello");
+        verify(reportService, times(1)).generate(eq(week), any(), any());
+    }
+
+    @Test
+    void testFreshStoredReportIsDoneOnArrival() {
+        Period day = Period.of(ReportType.DAILY, date);
+        when(reportService.findFresh(day)).thenReturn(Optional.of("stored"));
+        when(jobRepository.insertDone(ReportType.DAILY, date, date, "stored")).thenReturn(jobId);
+
+        Submission submission = service.submit(ReportType.DAILY, date);
+
+        assertEquals(jobId, submission.id());
+        verify(jobRepository, never()).submit(any(), any(), any(), anyLong());
+        verify(reportService, never()).generate(any(), any(), any());
+    }
+
+    @Test
+    void testLateSubscriberGetsTheReportWrittenSoFar() throws Exception {
+        when(jobRepository.submit(any(), any(), any(), anyLong())).thenReturn(new Submission(jobId, true));
+        service.submit(ReportType.DAILY, date);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<String> tokens = new ArrayList<>();
+        List<JobProgress> progress = new ArrayList<>();
+        CountDownLatch replayed = new CountDownLatch(1);
+        CompletableFuture<String> report = service.follow(jobId, token -> {
+            tokens.add(token);
+            replayed.countDown();
+        }, progress::add);
+        assertTrue(replayed.await(5, TimeUnit.SECONDS));
+        release.countDown();
+
+        assertEquals("Hello", report.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("Hel", "lo"), tokens);
+        verify(jobRepository, never()).find(jobId);
+        assertEquals(new JobProgress(JobStatus.RUNNING, "report", 0, 1), progress.get(0));
+        verify(jobRepository).progress(jobId, "report", 0, 1);
+    }
+
+    @Test
+    void testFullQueueRejectsAndFailsTheJob() throws Exception {
+        UUID queued = UUID.randomUUID();
+        UUID rejected = UUID.randomUUID();
+        when(jobRepository.submit(any(), any(), any(), anyLong())).thenReturn(
+                new Submission(jobId, true), new Submission(queued, true), new Submission(rejected, true));
+
+        service.submit(ReportType.DAILY, date);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        service.submit(ReportType.DAILY, date.plusDays(1));
+
+        assertThrows(RejectedExecutionException.class, () -> service.submit(ReportType.DAILY, date.plusDays(2)));
+        verify(jobRepository).fail(eq(rejected), any());
+    }
+
+    @Test
+    void testJobOfAnotherInstanceIsFollowedThroughItsRow() throws Exception {
+        ReportJob running = job(JobStatus.RUNNING, "digest", null);
+        ReportJob done = job(JobStatus.DONE, "report", "stored report");
+        when(jobRepository.find(jobId)).thenReturn(Optional.of(running)).thenReturn(Optional.of(done));
+        List<String> tokens = new ArrayList<>();
+        List<JobProgress> progress = new ArrayList<>();
+
+        assertEquals("stored report", service.follow(jobId, tokens::add, progress::add).get(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("stored report"), tokens);
+        assertEquals(List.of(new JobProgress(JobStatus.RUNNING, "digest", 2, 7)), progress);
+        // Staleness is judged by the database clock, on every poll
+        verify(jobRepository, times(2)).expire(jobId, 300000);
+    }
+
+    @Test
+    void testAbandonedJobOfAnotherInstanceFailsItsFollowers() {
+        ReportJob abandoned = job(JobStatus.FAILED, "digest", null);
+        when(jobRepository.find(jobId)).thenReturn(Optional.of(abandoned));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.follow(jobId, token -> { }, progress -> { }).get(5, TimeUnit.SECONDS));
+
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        verify(jobRepository).expire(jobId, 300000);
+    }
+
+    private ReportJob job(JobStatus status, String stage, String result) {
+        Instant now = Instant.now();
+        return new ReportJob(jobId, ReportType.WEEKLY, date, date.plusDays(6), status, stage, 2, 7, result, null,
+                now, now, status.finished() ? now : null, now);
+    }
+}
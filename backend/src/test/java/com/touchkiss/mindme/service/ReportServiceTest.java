@@ -0,0 +1,215 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.ActivityRecordRepository;
+import com.touchkiss.mindme.repository.ActivityRecordRepositoryCustom.ActivityLine;
+import com.touchkiss.mindme.repository.DailyReportRepository;
+import com.touchkiss.mindme.repository.DailyReportRepository.ReportType;
+import com.touchkiss.mindme.repository.DailyReportRepository.StoredReport;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReportServiceTest {
+
+    // A fully past month, so every digest may be stored
+    private final LocalDate start = LocalDate.now().minusMonths(2).withDayOfMonth(1);
+    private final LocalDate end = start.withDayOfMonth(start.lengthOfMonth());
+
+    @Mock
+    private ActivityRecordRepository activityRepository;
+
+    @Mock
+    private DailyReportRepository reportRepository;
+
+    private final List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+    private ReportService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(activityRepository.findActivityLines(any(), any())).thenAnswer(invocation -> {
+            ZonedDateTime from = invocation.getArgument(0);
+            int day = from.getDayOfMonth();
+            // Activity on the 1st, 2nd and 20th only
+            return day == 1 || day == 2 || day == 20
+                    ? List.of(new ActivityLine(from.plusHours(9), "page of day " + day, "summary"))
+                    : List.of();
+        });
+        when(reportRepository.findRange(any(), any(), any())).thenReturn(Map.of());
+
+        PromptPacker promptPacker = new PromptPacker(this::generate, this::stream, new LlmRateLimiter(0, 0, 4, 1, 0),
+                List.of("digest=50"), 300000);
+        service = new ReportService(activityRepository, reportRepository, promptPacker, 3, 31);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private Response<AiMessage> generate(List<ChatMessage> messages) {
+        String prompt = ((UserMessage) messages.get(0)).singleText();
+        prompts.add(prompt);
+        if (prompt.startsWith("Condense")) {
+            return Response.from(AiMessage.from("<think>draft</think>digest"
+                    + (prompt.contains("page of day 20") ? " of day 20" : "")));
+        }
+        return Response.from(AiMessage.from(prompt.startsWith("Merge") ? "merged" : "report"));
+    }
+
+    private void stream(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        String text = generate(messages).content().text();
+        handler.onNext("<think>outline</think>");
+        for (int i = 0; i < text.length(); i += 3) {
+            handler.onNext(text.substring(i, Math.min(text.length(), i + 3)));
+        }
+        handler.onComplete(Response.from(AiMessage.from("<think>outline</think>" + text)));
+    }
+
+    @Test
+    void testMonthlyReportIsBuiltFromDayDigestsNotRawActivity() {
+        assertEquals("report", service.generatePeriodReport(start, end, "Monthly"));
+
+        List<String> digestPrompts = prompts.stream().filter(p -> p.startsWith("Condense")).toList();
+        assertEquals(3, digestPrompts.size());
+        // Days 1 and 2 share the first group and are merged; day 20 stands alone
+        assertEquals(1, prompts.stream().filter(p -> p.startsWith("Merge")).count());
+        String report = prompts.stream().filter(p -> p.startsWith("You are")).findFirst().orElseThrow();
+        assertTrue(report.contains("merged"));
+        assertTrue(report.contains("digest of day 20"));
+        assertFalse(report.contains("draft"));
+        assertFalse(report.contains("page of day"));
+
+        // Every day is stored, idle ones with an empty digest
+        verify(reportRepository, times(end.getDayOfMonth()))
+                .save(any(), eq(ReportType.DIGEST), anyString(), anyInt(), anyLong());
+        verify(reportRepository).save(eq(start.plusDays(2)), eq(ReportType.DIGEST), eq(""), eq(0), anyLong());
+        verify(reportRepository).save(eq(start), eq(ReportType.DIGEST), eq("digest"), eq(1), anyLong());
+        verify(reportRepository).save(eq(start), eq(ReportType.GROUP_DIGEST), eq("merged"), eq(2), anyLong());
+    }
+
+    @Test
+    void testMonthlyReportReportsItsStagesAndIsStoredUntilDirty() {
+        List<String> stages = Collections.synchronizedList(new ArrayList<>());
+        ReportService.Period month = ReportService.Period.of(ReportType.MONTHLY, start.plusDays(10));
+
+        assertEquals("report", service.generate(month, null,
+                (stage, done, total) -> stages.add(stage + " " + done + "/" + total)));
+
+        // Digests complete in parallel, so only the first update and the count are ordered
+        int days = end.getDayOfMonth();
+        assertEquals("digest 0/" + days, stages.get(0));
+        assertTrue(stages.contains("digest " + days + "/" + days));
+        assertEquals(List.of("merge 0/1", "merge 1/1", "report 0/1", "report 1/1"),
+                stages.subList(days + 1, stages.size()));
+        verify(reportRepository).save(eq(start), eq(ReportType.MONTHLY), eq("report"), eq(3), anyLong());
+
+        when(reportRepository.find(start, ReportType.MONTHLY))
+                .thenReturn(Optional.of(new StoredReport(start, ReportType.MONTHLY, "stored", 3, 0L)));
+        prompts.clear();
+
+        assertEquals("stored", service.generatePeriodReport(start, end, "Monthly"));
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    void testStoredDigestsOfCleanDaysAreReused() {
+        Map<LocalDate, StoredReport> stored = new HashMap<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            String digest = day.getDayOfMonth() == 5 ? "stored" : "";
+            stored.put(day, new StoredReport(day, ReportType.DIGEST, digest, 1, 0L));
+        }
+        when(reportRepository.findRange(start, end, ReportType.DIGEST)).thenReturn(stored);
+
+        service.generatePeriodReport(start, end, "Monthly");
+
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("stored"));
+        verify(activityRepository, never()).findActivityLines(any(), any());
+    }
+
+    @Test
+    void testDailyReportIsServedFromStorageUntilItsDateIsMarkedDirty() {
+        when(reportRepository.find(start, ReportType.DAILY))
+                .thenReturn(Optional.of(new StoredReport(start, ReportType.DAILY, "stored report", 1, 5L)));
+        when(reportRepository.findMarkVersions(start, start)).thenReturn(Map.of(start, 5L));
+
+        assertEquals("stored report", service.generateDailyReport(start));
+        assertTrue(prompts.isEmpty());
+
+        when(reportRepository.findMarkVersions(start, start)).thenReturn(Map.of(start, 9L));
+
+        assertEquals("report", service.generateDailyReport(start));
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("page of day 1"));
+        verify(reportRepository).save(start, ReportType.DAILY, "report", 1, 9L);
+    }
+
+    @Test
+    void testStreamedDailyReportArrivesInPiecesAndIsStored() {
+        when(reportRepository.find(start, ReportType.DAILY)).thenReturn(Optional.empty());
+        List<String> tokens = new ArrayList<>();
+
+        assertEquals("report", service.streamDailyReport(start, tokens::add));
+
+        assertEquals(List.of("rep", "ort"), tokens);
+        verify(reportRepository).save(eq(start), eq(ReportType.DAILY), eq("report"), eq(1), anyLong());
+    }
+
+    @Test
+    void testDirtyDigestsAreRecomputed() {
+        LocalDate second = start.plusDays(1);
+        when(reportRepository.findRange(start, second, ReportType.DIGEST)).thenReturn(Map.of(
+                start, new StoredReport(start, ReportType.DIGEST, "clean", 1, 3L),
+                second, new StoredReport(second, ReportType.DIGEST, "stale", 1, 4L)));
+        when(reportRepository.findMarkVersions(start, second)).thenReturn(Map.of(start, 3L, second, 7L));
+
+        Map<LocalDate, String> digests = service.dayDigests(start, second);
+
+        assertEquals("clean", digests.get(start));
+        assertEquals("digest", digests.get(second));
+        verify(activityRepository, times(1)).findActivityLines(any(), any());
+    }
+
+    @Test
+    void testOversizedDaysAreChunked() {
+        ZonedDateTime morning = start.atStartOfDay(ZoneId.systemDefault()).plusHours(8);
+        List<ActivityLine> lines = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lines.add(new ActivityLine(morning.plusMinutes(i), "title " + i, "x".repeat(40)));
+        }
+
+        List<String> chunks = service.chunk(lines);
+
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.stream().allMatch(c -> PromptPacker.countTokens(c) <= 50));
+        assertEquals(10, chunks.stream().mapToLong(c -> c.lines().count()).sum());
+    }
+}
@@ -0,0 +1,231 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.repository.AnalysisQueueRepository;
+import com.touchkiss.mindme.repository.AnalysisQueueRepository.AnalysisTask;
+import com.touchkiss.mindme.repository.KnowledgeEntryRepository;
+import com.touchkiss.mindme.repository.ProfileCounterRepository;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ScheduledAnalysisServiceTest {
+
+    private static final String LOW_VALUE = """
+            ---SCORE---
+            Value: 2
+            Reason: 娱乐
+            ---END_SCORE---
+            """;
+
+    @Mock
+    private AnalysisQueueRepository analysisQueue;
+
+    @Mock
+    private KnowledgeEntryRepository knowledgeRepository;
+
+    @Mock
+    private ProfileCounterRepository profileCounters;
+
+    @Mock
+    private LlmResponseCache responseCache;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private DataSource dataSource;
+
+    private final List<String> prompts = new ArrayList<>();
+    private Function<String, String> model;
+    private ScheduledAnalysisService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            TransactionCallback<?> callback = invocation.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+        when(analysisQueue.complete(any(), any(), any())).thenReturn(true);
+
+        LlmRateLimiter rateLimiter = new LlmRateLimiter(0, 0, 4, 1, 0);
+        service = new ScheduledAnalysisService(analysisQueue, knowledgeRepository, profileCounters,
+                new PromptPacker(this::generate, null, rateLimiter, List.of(), 300000), rateLimiter, responseCache,
+                new PreClassifier(true, "/login", "", 5, 40, 15, 60), transactionTemplate, dataSource,
+                2, 10, 600000, 5, 60000, 0.25, 4, 3000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private synchronized Response<AiMessage> generate(List<ChatMessage> messages) {
+        String prompt = ((UserMessage) messages.get(0)).singleText();
+        prompts.add(prompt);
+        return Response.from(AiMessage.from(model.apply(prompt)));
+    }
+
+    @Test
+    void testPackedAnswersMapBackToRecordsAndDroppedOnesRetrySingly() {
+        List<AnalysisTask> tasks = List.of(task("A"), task("B"), task("C"));
+        when(analysisQueue.claim(anyInt(), anyInt())).thenReturn(tasks).thenReturn(List.of());
+        model = prompt -> prompt.contains("===RECORD") ? """
+                ===RESULT 3===
+                ---SCORE---
+                Value: 8
+                Reason: 深度技术文章
+                ---END_SCORE---
+                ---KNOWLEDGE---
+                Title: 向量索引
+                Category: Technology
+                Tags: HNSW, pgvector
+                Content: HNSW 以分层图实现近似最近邻检索。
+                InterestLevel: high
+                ---END---
+                ===END_RESULT===
+                ===RESULT 1===
+                ---SCORE---
+                Value: 2
+                ===END_RESULT===
+                """ : LOW_VALUE;
+
+        assertEquals(3, service.triggerAnalysis());
+
+        // One packed call, then record B (missing) retried alone
+        assertEquals(2, prompts.size());
+        assertTrue(prompts.get(1).contains("Page Title: B"));
+        verify(analysisQueue).complete(eq(tasks.get(0)), eq(20), isNull());
+        verify(analysisQueue).complete(eq(tasks.get(1)), eq(20), isNull());
+        verify(analysisQueue).complete(eq(tasks.get(2)), eq(80), eq("HNSW, pgvector"));
+        verify(knowledgeRepository, times(1)).save(any());
+        // Profile counters are flushed once per batch
+        verify(profileCounters).addInterestWeights(Map.of("Technology", 1.0));
+        verify(profileCounters).addTagFrequencies(Map.of("HNSW", 1, "pgvector", 1));
+
+        ScheduledAnalysisService.AnalysisStats stats = service.stats();
+        assertEquals(1, stats.packedCalls());
+        assertEquals(2, stats.packedRecords());
+        assertEquals(1, stats.singleRetries());
+    }
+
+    @Test
+    void testCachedAnswersSkipTheModelAndFreshOnesAreCachedPerRecord() {
+        List<AnalysisTask> tasks = List.of(task("cached"), task("fresh"));
+        when(analysisQueue.claim(anyInt(), anyInt())).thenReturn(tasks).thenReturn(List.of());
+        when(responseCache.isEnabled(LlmResponseCache.CallSite.ANALYSIS)).thenReturn(true);
+        when(responseCache.get(eq(LlmResponseCache.CallSite.ANALYSIS), contains("Page Title: cached")))
+                .thenReturn(LOW_VALUE);
+        model = prompt -> LOW_VALUE;
+
+        assertEquals(2, service.triggerAnalysis());
+
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("Page Title: fresh"));
+        verify(responseCache).put(eq(LlmResponseCache.CallSite.ANALYSIS), contains("Page Title: fresh"),
+                eq(LOW_VALUE), eq(-1L));
+    }
+
+    @Test
+    void testSkippedRecordsNeverReachTheModel() {
+        AnalysisTask login = new AnalysisTask(UUID.randomUUID(), "https://example.com/login", "登录", null, 3, 3, 0, 0,
+                false, false, 1, new Timestamp(0));
+        List<AnalysisTask> tasks = List.of(login, task("article"));
+        when(analysisQueue.claim(anyInt(), anyInt())).thenReturn(tasks).thenReturn(List.of());
+        model = prompt -> LOW_VALUE;
+
+        assertEquals(1, service.triggerAnalysis());
+
+        assertEquals(1, prompts.size());
+        assertFalse(prompts.get(0).contains("/login"));
+        verify(analysisQueue).skip(argThat(scores -> scores.keySet().equals(Set.of(login))));
+        verify(analysisQueue).setProvisionalScores(argThat(scores -> scores.containsKey(tasks.get(1))));
+        assertEquals(1, service.stats().skipped());
+    }
+
+    @Test
+    void testFailedRecordsBackOffAndAreDeadLetteredAfterMaxAttempts() {
+        AnalysisTask second = new AnalysisTask(UUID.randomUUID(), "https://example.com/a", "a", "summary of a", 60, 60,
+                50, 2, false, false, 2, new Timestamp(0));
+        AnalysisTask last = new AnalysisTask(UUID.randomUUID(), "https://example.com/b", "b", "summary of b", 60, 60,
+                50, 2, false, false, 5, new Timestamp(0));
+        when(analysisQueue.claim(anyInt(), anyInt())).thenReturn(List.of(second, last)).thenReturn(List.of());
+        model = prompt -> "抱歉，我无法回答";
+
+        assertEquals(0, service.triggerAnalysis());
+
+        // Batch size 10 with a 25% retry share
+        verify(analysisQueue).claim(8, 2);
+        verify(analysisQueue).retryLater(second, "Unparsable model output", 120000L);
+        verify(analysisQueue).deadLetter(eq(last), eq("Unparsable model output"));
+        verify(analysisQueue, never()).complete(any(), any(), any());
+
+        ScheduledAnalysisService.AnalysisStats stats = service.stats();
+        assertEquals(1, stats.retried());
+        assertEquals(1, stats.deadLettered());
+    }
+
+    @Test
+    void testPackRespectsRecordLimitAndTokenBudget() {
+        List<AnalysisTask> small = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            small.add(task("t" + i));
+        }
+        assertEquals(List.of(4, 2), service.pack(small).stream().map(List::size).toList());
+
+        AnalysisTask huge = new AnalysisTask(UUID.randomUUID(), "https://example.com", "huge", "x".repeat(20000), 60,
+                60, 50, 2, false, false, 1, new Timestamp(0));
+        assertEquals(List.of(1, 1, 1), service.pack(List.of(task("a"), huge, task("b"))).stream()
+                .map(List::size).toList());
+    }
+
+    @Test
+    void testGarbledBlocksAreRejected() {
+        Map<Integer, String> blocks = ScheduledAnalysisService.splitPackedResponse("""
+                ===RESULT 1===
+                ---NO_KNOWLEDGE---
+                ===RESULT 2===
+                ---SCORE---
+                Value: 7
+                ---KNOWLEDGE---
+                Title: 截断
+                """);
+
+        assertEquals(2, blocks.size());
+        assertTrue(ScheduledAnalysisService.isWellFormed(blocks.get(1)));
+        assertFalse(ScheduledAnalysisService.isWellFormed(blocks.get(2)));
+    }
+
+    private static AnalysisTask task(String title) {
+        return new AnalysisTask(UUID.randomUUID(), "https://example.com/" + title, title, "summary of " + title, 60,
+                60, 50, 2, false, false, 1, new Timestamp(0));
+    }
+}
@@ -0,0 +1,134 @@
+package com.touchkiss.mindme.service;
+
+import com.touchkiss.mindme.service.SingleFlight.Flight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    // Insight is kept fresh, horizon is stale at once, report only coalesces
+    private final SingleFlight singleFlight = new SingleFlight(List.of("insight=60", "horizon=0"),
+            List.of("horizon=60"), 100, 1);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        singleFlight.shutdown();
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneComputation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService tabs = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                answers.add(CompletableFuture.supplyAsync(() -> singleFlight.get(Flight.REPORT, "2024-03-13", () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "report";
+                }), tabs));
+            }
+            // Every tab is waiting before the one computation may finish
+            while (singleFlight.stats().flights().get(Flight.REPORT).joined() < 7) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (CompletableFuture<String> answer : answers) {
+                assertEquals("report", answer.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            tabs.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.stats().flights().get(Flight.REPORT).misses());
+    }
+
+    @Test
+    void testFreshResultIsServedWithoutRecomputing() {
+        assertEquals("v1", singleFlight.get(Flight.INSIGHT, "today", () -> "v" + calls.incrementAndGet()));
+        assertEquals("v1", singleFlight.get(Flight.INSIGHT, "today", () -> "v" + calls.incrementAndGet()));
+        assertEquals("v2", singleFlight.get(Flight.INSIGHT, "tomorrow", () -> "v" + calls.incrementAndGet()));
+
+        assertEquals(1, singleFlight.stats().flights().get(Flight.INSIGHT).hits());
+    }
+
+    @Test
+    void testStaleResultIsServedWhileOneRefreshRuns() throws Exception {
+        assertEquals("v1", singleFlight.get(Flight.HORIZON, "daily", () -> "v" + calls.incrementAndGet()));
+
+        assertEquals("v1", singleFlight.get(Flight.HORIZON, "daily", () -> "v" + calls.incrementAndGet()));
+        while (calls.get() < 2) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+
+        assertEquals("v2", singleFlight.get(Flight.HORIZON, "daily", () -> "v" + calls.incrementAndGet()));
+        assertEquals(2, singleFlight.stats().flights().get(Flight.HORIZON).staleHits());
+    }
+
+    @Test
+    void testFailuresAndUnusableResultsAreNotKept() {
+        assertThrows(IllegalStateException.class, () -> singleFlight.get(Flight.INSIGHT, "today", () -> {
+            throw new IllegalStateException("model down");
+        }));
+        assertEquals("fallback", singleFlight.get(Flight.INSIGHT, "today", () -> "fallback",
+                answer -> !answer.equals("fallback")));
+
+        assertEquals("answer", singleFlight.get(Flight.INSIGHT, "today", () -> "answer"));
+        assertEquals(1, singleFlight.stats().flights().get(Flight.INSIGHT).failures());
+        assertEquals(0, singleFlight.stats().flights().get(Flight.INSIGHT).hits());
+    }
+
+    @Test
+    void testSweepDropsResultsPastTheirStaleWindow() {
+        singleFlight.get(Flight.INSIGHT, "today", () -> "kept");
+        singleFlight.get(Flight.REPORT, "2024-03-13", () -> "coalesced only");
+
+        singleFlight.sweep();
+
+        assertEquals(1, singleFlight.stats().entries());
+        assertEquals(0, singleFlight.stats().flights().get(Flight.REPORT).ttlSeconds());
+    }
+
+    @Test
+    void testOldestResultIsEvictedBeyondMaxEntries() throws Exception {
+        SingleFlight small = new SingleFlight(List.of("insight=60"), List.of(), 2, 1);
+        try {
+            small.get(Flight.INSIGHT, "monday", () -> "v" + calls.incrementAndGet());
+            Thread.sleep(5);
+            small.get(Flight.INSIGHT, "tuesday", () -> "v" + calls.incrementAndGet());
+            Thread.sleep(5);
+            small.get(Flight.INSIGHT, "wednesday", () -> "v" + calls.incrementAndGet());
+
+            assertEquals(2, small.stats().entries());
+            // The newest results stay cached, the oldest is computed again
+            assertEquals("v3", small.get(Flight.INSIGHT, "wednesday", () -> "v" + calls.incrementAndGet()));
+            assertEquals("v2", small.get(Flight.INSIGHT, "tuesday", () -> "v" + calls.incrementAndGet()));
+            assertEquals("v4", small.get(Flight.INSIGHT, "monday", () -> "v" + calls.incrementAndGet()));
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
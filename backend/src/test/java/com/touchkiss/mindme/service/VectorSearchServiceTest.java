@@ -1,14 +1,18 @@
 package com.touchkiss.mindme.service;
 
 import com.touchkiss.mindme.domain.ActivityRecord;
+import com.touchkiss.mindme.repository.PgVectorSegmentRepository;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -18,8 +22,12 @@ import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 class VectorSearchServiceTest {
@@ -30,16 +38,29 @@ class VectorSearchServiceTest {
     @Mock
     private EmbeddingModel embeddingModel;
 
+    @Mock
+    private RedisService redisService;
+
+    @Mock
+    private PgVectorSegmentRepository segmentRepository;
+
     private VectorSearchService vectorSearchService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        vectorSearchService = new VectorSearchService(embeddingStore, embeddingModel);
-
-        // Mock embedding model behavior
-        when(embeddingModel.embed(any(TextSegment.class)))
-                .thenReturn(Response.from(new Embedding(new float[] { 0.1f, 0.2f })));
+        when(redisService.multiGet(anyList()))
+                .thenAnswer(invocation -> Collections.nCopies(((List<?>) invocation.getArgument(0)).size(), null));
+        vectorSearchService = new VectorSearchService(embeddingStore, embeddingModel,
+                new EmbeddingCache(redisService, "test-model", 100, 1), segmentRepository);
+
+        // Mock embedding model behavior: one embedding per input segment
+        when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream()
+                    .map(s -> new Embedding(new float[] { 0.1f, 0.2f }))
+                    .toList());
+        });
     }
 
     @Test
@@ -53,9 +74,10 @@ class VectorSearchServiceTest {
 
         vectorSearchService.indexActivity(record);
 
-        // Should be called once for embedding and once for storage
-        verify(embeddingModel, times(1)).embed(any(TextSegment.class));
-        verify(embeddingStore, times(1)).add(any(Embedding.class), any(TextSegment.class));
+        // Should be called once for embedding and once for storage, never per segment
+        verify(embeddingModel, times(1)).embedAll(anyList());
+        verify(embeddingStore, times(1)).addAll(anyList(), anyList());
+        verify(embeddingModel, never()).embed(any(TextSegment.class));
     }
 
     @Test
@@ -73,14 +95,134 @@ class VectorSearchServiceTest {
 
         vectorSearchService.indexActivity(record);
 
-        // Verify that split happened (more than 1 call)
-        ArgumentCaptor<TextSegment> segmentCaptor = ArgumentCaptor.forClass(TextSegment.class);
-        verify(embeddingModel, atLeast(2)).embed(segmentCaptor.capture());
+        // Verify that split happened and all segments went out in one batch
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TextSegment>> segmentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(embeddingModel, times(1)).embedAll(segmentCaptor.capture());
 
-        List<TextSegment> capturedSegments = segmentCaptor.getAllValues();
+        List<TextSegment> capturedSegments = segmentCaptor.getValue();
         assertTrue(capturedSegments.size() >= 2, "Should have split into at least 2 segments");
 
         // Verify storage calls
-        verify(embeddingStore, atLeast(2)).add(any(Embedding.class), any(TextSegment.class));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Embedding>> embeddingCaptor = ArgumentCaptor.forClass(List.class);
+        verify(embeddingStore, times(1)).addAll(embeddingCaptor.capture(), anyList());
+        assertEquals(capturedSegments.size(), embeddingCaptor.getValue().size());
+    }
+
+    @Test
+    void testIndexActivitiesBatchesAcrossRecords() {
+        List<ActivityRecord> records = new java.util.ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ActivityRecord record = new ActivityRecord();
+            record.setId(UUID.randomUUID());
+            record.setUrl("http://example.com/" + i);
+            record.setTitle("Title " + i);
+            record.setContentSummary("Summary " + i);
+            records.add(record);
+        }
+
+        vectorSearchService.indexActivities(records);
+
+        // 40 single-segment records at 32 segments per request
+        verify(embeddingModel, times(2)).embedAll(anyList());
+        verify(embeddingStore, times(2)).addAll(anyList(), anyList());
+    }
+
+    @Test
+    void testReindexingUnchangedContentHitsEmbeddingCache() {
+        ActivityRecord record = new ActivityRecord();
+        record.setId(UUID.randomUUID());
+        record.setUrl("http://example.com/chat");
+        record.setTitle("Chat");
+        record.setContentSummary("Unchanged conversation summary.");
+
+        vectorSearchService.indexActivity(record);
+        vectorSearchService.indexActivity(record);
+
+        // Second pass is served from the in-process tier
+        verify(embeddingModel, times(1)).embedAll(anyList());
+        verify(embeddingStore, times(2)).addAll(anyList(), anyList());
+    }
+
+    @Test
+    void testReindexReplacesExistingSegments() {
+        ActivityRecord record = new ActivityRecord();
+        record.setId(UUID.randomUUID());
+        record.setUrl("http://example.com/merged");
+        record.setTitle("Merged");
+        record.setContentSummary("Updated summary.");
+
+        vectorSearchService.indexActivity(record);
+
+        // New segments go in before the old ones are deleted
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TextSegment>> segments = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        InOrder inOrder = inOrder(embeddingStore);
+        inOrder.verify(embeddingStore).addAll(anyList(), segments.capture());
+        inOrder.verify(embeddingStore).removeAll(filter.capture());
+
+        Metadata added = segments.getValue().get(0).metadata();
+        Metadata previous = new Metadata().put("recordId", record.getId().toString());
+        Metadata otherRecord = new Metadata().put("recordId", UUID.randomUUID().toString());
+        assertFalse(filter.getValue().test(added));
+        assertTrue(filter.getValue().test(previous));
+        assertFalse(filter.getValue().test(otherRecord));
+    }
+
+    @Test
+    void testIndexedSegmentsCarryFilterableMetadata() {
+        ActivityRecord record = new ActivityRecord();
+        record.setId(UUID.randomUUID());
+        record.setUrl("https://GitHub.com/langchain4j/langchain4j");
+        record.setTitle("Repo");
+        record.setContentSummary("Summary.");
+        record.setVisitTime(ZonedDateTime.parse("2024-05-01T10:00:00Z"));
+
+        vectorSearchService.indexActivity(record);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TextSegment>> segmentCaptor = ArgumentCaptor.forClass(List.class);
+        verify(embeddingStore).addAll(anyList(), segmentCaptor.capture());
+        TextSegment segment = segmentCaptor.getValue().get(0);
+        assertEquals("github.com", segment.metadata().getString("host"));
+        assertEquals(1714557600L, segment.metadata().getLong("visitEpoch"));
+    }
+
+    @Test
+    void testSearchPushesFiltersAndKnobsToRepository() {
+        UUID recordId = UUID.randomUUID();
+        when(embeddingModel.embed(anyString())).thenReturn(Response.from(new Embedding(new float[] { 0.3f })));
+        when(segmentRepository.search(any())).thenReturn(List.of(
+                new PgVectorSegmentRepository.SegmentRow(recordId.toString(), "https://github.com/x", "X", "text", 0.9)));
+
+        ZonedDateTime from = ZonedDateTime.parse("2024-05-01T00:00:00Z");
+        List<VectorSearchService.SegmentMatch> matches = vectorSearchService.search(VectorSearchService.VectorQuery
+                .builder()
+                .query("vector databases")
+                .maxResults(5)
+                .minScore(0.75)
+                .efSearch(200)
+                .hosts(List.of(" GitHub.com "))
+                .from(from)
+                .recordIds(List.of(recordId))
+                .build());
+
+        ArgumentCaptor<PgVectorSegmentRepository.SegmentQuery> captor = ArgumentCaptor
+                .forClass(PgVectorSegmentRepository.SegmentQuery.class);
+        verify(segmentRepository).search(captor.capture());
+        PgVectorSegmentRepository.SegmentQuery query = captor.getValue();
+        assertEquals(5, query.maxResults());
+        assertEquals(0.75, query.minScore());
+        assertEquals(200, query.efSearch());
+        assertEquals(List.of("github.com"), query.hosts());
+        assertEquals(from.toEpochSecond(), query.fromEpoch());
+        assertNull(query.toEpoch());
+        assertEquals(List.of(recordId.toString()), query.recordIds());
+
+        assertEquals(1, matches.size());
+        assertEquals(recordId, matches.get(0).recordId());
+        assertEquals("https://github.com/x", matches.get(0).url());
     }
 }
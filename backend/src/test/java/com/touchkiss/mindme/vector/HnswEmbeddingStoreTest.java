@@ -0,0 +1,154 @@
+package com.touchkiss.mindme.vector;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswEmbeddingStoreTest {
+
+    private static final int DIM = 32;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testRecallAgainstBruteForce() throws Exception {
+        Random random = new Random(7);
+        List<float[]> data = randomVectors(random, 2000);
+        try (HnswEmbeddingStore store = open(dir)) {
+            addAll(store, data);
+
+            int hits = 0;
+            for (int q = 0; q < 20; q++) {
+                float[] query = randomVectors(random, 1).get(0);
+                Set<String> expected = bruteForceTop(data, query, 10);
+                for (EmbeddingMatch<TextSegment> match : store.search(request(query, 10), 100).matches()) {
+                    if (expected.contains(match.embedded().text())) {
+                        hits++;
+                    }
+                }
+            }
+            assertTrue(hits / 200.0 >= 0.9, "recall@10 was " + hits / 200.0);
+        }
+    }
+
+    @Test
+    void testDeleteAndFilter() throws Exception {
+        List<float[]> data = randomVectors(new Random(1), 200);
+        try (HnswEmbeddingStore store = open(dir)) {
+            addAll(store, data);
+            store.removeAll(metadataKey("host").isIn("even.example"));
+
+            EmbeddingSearchRequest all = request(data.get(0), 50);
+            assertTrue(store.search(all).matches().stream()
+                    .allMatch(m -> "odd.example".equals(m.embedded().metadata().getString("host"))));
+
+            EmbeddingSearchRequest filtered = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(data.get(0)))
+                    .maxResults(5)
+                    .filter(metadataKey("slot").isEqualTo(11L))
+                    .build();
+            List<EmbeddingMatch<TextSegment>> matches = store.search(filtered).matches();
+            assertEquals(1, matches.size());
+            assertEquals("segment-11", matches.get(0).embedded().text());
+            assertEquals(100, store.stats().liveSegments());
+        }
+    }
+
+    @Test
+    void testSurvivesRestartAndCompaction() throws Exception {
+        List<float[]> data = randomVectors(new Random(3), 300);
+        try (HnswEmbeddingStore store = open(dir)) {
+            addAll(store, data.subList(0, 150));
+            store.snapshot();
+            // Added after the snapshot: restored from the segment log on reopen
+            addAll(store, data.subList(150, 300));
+        }
+
+        try (HnswEmbeddingStore store = open(dir)) {
+            assertEquals(300, store.stats().liveSegments());
+            assertEquals("segment-42", store.search(request(data.get(42), 1)).matches().get(0).embedded().text());
+
+            store.removeAll(metadataKey("host").isIn("even.example"));
+            store.compact();
+            assertEquals(150, store.stats().liveSegments());
+            assertEquals(0, store.stats().deletedSegments());
+            assertEquals("segment-43", store.search(request(data.get(43), 1)).matches().get(0).embedded().text());
+        }
+
+        try (HnswEmbeddingStore store = open(dir)) {
+            assertEquals(150, store.stats().liveSegments());
+            assertEquals(1.0, store.search(request(data.get(43), 1)).matches().get(0).score(), 1e-4);
+        }
+    }
+
+    private HnswEmbeddingStore open(Path path) {
+        return new HnswEmbeddingStore(path, DIM, 8, 64, 32, 0);
+    }
+
+    private static void addAll(HnswEmbeddingStore store, List<float[]> vectors) {
+        int offset = store.stats().liveSegments() + store.stats().deletedSegments();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            long slot = offset + i;
+            Metadata metadata = new Metadata()
+                    .put("slot", slot)
+                    .put("host", slot % 2 == 0 ? "even.example" : "odd.example");
+            embeddings.add(Embedding.from(vectors.get(i)));
+            segments.add(TextSegment.from("segment-" + slot, metadata));
+        }
+        store.addAll(embeddings, segments);
+    }
+
+    private static EmbeddingSearchRequest request(float[] query, int k) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(query)).maxResults(k).build();
+    }
+
+    private static List<float[]> randomVectors(Random random, int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] v = new float[DIM];
+            for (int d = 0; d < DIM; d++) {
+                v[d] = (float) random.nextGaussian();
+            }
+            vectors.add(v);
+        }
+        return vectors;
+    }
+
+    private static Set<String> bruteForceTop(List<float[]> data, float[] query, int k) {
+        return new HashSet<>(IntStream.range(0, data.size()).boxed()
+                .sorted(Comparator.comparingDouble(i -> -cosine(data.get(i), query)))
+                .limit(k)
+                .map(i -> "segment-" + i)
+                .toList());
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, na = 0, nb = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return dot / Math.sqrt(na * nb);
+    }
+}